@@ -73,3 +73,5 @@ $$;
 -- Add the index on the value_array column
 CREATE INDEX IF NOT EXISTS idx_taxon_value_array ON taxon USING gin (value_array);
 
+-- The corpus postprocessing only looks at the documents of a corpus that aren't postprocessed yet, in id order.
+CREATE INDEX IF NOT EXISTS idx_document_corpus_not_postprocessed ON document (corpusid, id) WHERE postprocessed = false;
@@ -19,6 +19,12 @@ class Embedder:
         # Embedding is of dimensionality 1024
         return embeddings[0].tolist()
 
+    def embed_batch(self, texts, batch_size=32):
+        docs = ['Represent this sentence for searching relevant passages: ' + text for text in texts]
+        with torch.no_grad():
+            embeddings = self.model.encode(docs, batch_size=batch_size)
+        return [embedding.tolist() for embedding in embeddings]
+
 if __name__ == "__main__":
     # You can specify the device here, e.g., torch.device('cuda') for GPU or torch.device('cpu') for CPU
     embedder = Embedder()
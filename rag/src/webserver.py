@@ -241,9 +241,14 @@ def embed():
     }
     try:
         data = request.get_json()
-        text = data['text']
+        # Either a single text or a batch of texts, whose embeddings are returned in the same order
+        if 'texts' in data:
+            texts = data['texts']
+            result['message'] = get_embedding_model().embed_batch(texts, batch_size=len(texts))
+        else:
+            text = data['text']
+            result['message'] = get_embedding_model().embed(text)
         result['status'] = 200
-        result['message'] = get_embedding_model().embed(text)
     except Exception as ex:
         result['message'] = "There was an exception caught while trying to embed: " + str(ex)
         print("Exception while trying to get embedding: ")
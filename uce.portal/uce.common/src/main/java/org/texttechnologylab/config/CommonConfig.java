@@ -33,16 +33,80 @@ public class CommonConfig {
         return getProperty("university.collection.base.url");
     }
     public String getPostgresqlProperty(String prop) {return getProperty("postgresql." + prop);}
+    public int getPostgresqlConnectionPoolSize(){
+        // Hibernate's own default if nothing was configured.
+        var poolSize = getPostgresqlProperty("hibernate.connection.pool_size");
+        return poolSize == null ? 20 : Integer.parseInt(poolSize.trim());
+    }
     public String getGbifOccurrencesSearchUrl(){
         return getProperty("gbif.occurrences.search.url");
     }
+    public double getGbifFetchRate(){
+        var rate = getProperty("gbif.fetch.rate");
+        return rate == null ? 5 : Double.parseDouble(rate.trim());
+    }
+    public int getGbifFetchConcurrency(){
+        var concurrency = getProperty("gbif.fetch.concurrency");
+        return concurrency == null ? 4 : Integer.parseInt(concurrency.trim());
+    }
+    public int getGbifFetchMaxRetries(){
+        var retries = getProperty("gbif.fetch.max.retries");
+        return retries == null ? 3 : Integer.parseInt(retries.trim());
+    }
+    public int getGbifInsertBatchSize(){
+        var batchSize = getProperty("gbif.insert.batch.size");
+        return batchSize == null ? 500 : Integer.parseInt(batchSize.trim());
+    }
+    public long getGbifFetchDrainTimeoutMinutes(){
+        var timeout = getProperty("gbif.fetch.drain.timeout.minutes");
+        return timeout == null ? 60 : Long.parseLong(timeout.trim());
+    }
+    public int getHttpClientThreads(){
+        var threads = getProperty("http.client.threads");
+        return threads == null ? 16 : Integer.parseInt(threads.trim());
+    }
+    public int getHttpClientMaxRequestsPerHost(){
+        var maxRequests = getProperty("http.client.max.per.host");
+        return maxRequests == null ? 32 : Integer.parseInt(maxRequests.trim());
+    }
+    public long getHttpClientConnectTimeoutSeconds(){
+        var timeout = getProperty("http.client.connect.timeout");
+        return timeout == null ? 10 : Long.parseLong(timeout.trim());
+    }
+    public long getHttpClientKeepAliveSeconds(){
+        var keepAlive = getProperty("http.client.keepalive");
+        return keepAlive == null ? 300 : Long.parseLong(keepAlive.trim());
+    }
     public String getSparqlHost(){ return getProperty("sparql.host"); }
     public String getSparqlEndpoint(){ return getProperty("sparql.endpoint"); }
+    public int getSparqlBatchSize(){
+        // How many ids are resolved in one VALUES query. They end up in the url, so this can't grow too large.
+        var batchSize = getProperty("sparql.batch.size");
+        return batchSize == null ? 25 : Integer.parseInt(batchSize.trim());
+    }
+    public int getSparqlCacheMaxEntries(){
+        var maxEntries = getProperty("sparql.cache.max.entries");
+        return maxEntries == null ? 100000 : Integer.parseInt(maxEntries.trim());
+    }
+    public long getSparqlCacheTtlMinutes(){
+        var ttl = getProperty("sparql.cache.ttl.minutes");
+        return ttl == null ? 1440 : Long.parseLong(ttl.trim());
+    }
+    public long getSparqlCacheNegativeTtlMinutes(){
+        // Ids that resolved to nothing are asked for again sooner, in case the ontology was still being loaded.
+        var ttl = getProperty("sparql.cache.negative.ttl.minutes");
+        return ttl == null ? 60 : Long.parseLong(ttl.trim());
+    }
     public long getSessionJobInterval(){ return Long.parseLong(getProperty("session.job.interval")); }
     public long getSystemJobInterval(){ return Long.parseLong(getProperty("system.job.interval")); }
     public String getRAGWebserverBaseUrl(){
         return getProperty("rag.webserver.base.url");
     }
+    public int getRAGEmbedBatchSize(){
+        // How many texts are sent to the embed endpoint at once.
+        var batchSize = getProperty("rag.embed.batch.size");
+        return batchSize == null ? 32 : Integer.parseInt(batchSize.trim());
+    }
     public String getRAGModel(){
         return SystemStatus.UceConfig.getSettings().getRag().getModel();
     }
@@ -50,6 +114,26 @@ public class CommonConfig {
         return SystemStatus.UceConfig.getSettings().getRag().getApiKey();
     }
     public boolean getLogToDb(){ return Boolean.parseBoolean(getProperty("log.db")); }
+    public int getImportLogBufferSize(){
+        var bufferSize = getProperty("importlog.buffer.size");
+        return bufferSize == null ? 10000 : Integer.parseInt(bufferSize.trim());
+    }
+    public int getImportLogBatchSize(){
+        var batchSize = getProperty("importlog.batch.size");
+        return batchSize == null ? 500 : Integer.parseInt(batchSize.trim());
+    }
+    public long getImportLogFlushIntervalMillis(){
+        var interval = getProperty("importlog.flush.interval.millis");
+        return interval == null ? 1000 : Long.parseLong(interval.trim());
+    }
+    public String getImportLogSpillFile(){
+        var spillFile = getProperty("importlog.spill.file");
+        return spillFile == null ? "importlog-spill.jsonl" : spillFile.trim();
+    }
+    public boolean getAnnotationOffsetsOnly(){
+        var offsetsOnly = getProperty("annotation.offsets.only");
+        return offsetsOnly == null || Boolean.parseBoolean(offsetsOnly.trim());
+    }
     public String getTemplatesLocation(){
         return getProperty("templates.location");
     }
@@ -10,6 +10,8 @@ import org.texttechnologylab.models.biofid.BiofidTaxon;
 import org.texttechnologylab.models.corpus.*;
 import org.texttechnologylab.models.gbif.GbifOccurrence;
 import org.texttechnologylab.models.imp.ImportLog;
+import org.texttechnologylab.models.imp.ImportManifestEntry;
+import org.texttechnologylab.models.imp.ImportWorkItem;
 import org.texttechnologylab.models.imp.UCEImport;
 import org.texttechnologylab.models.test.test;
 
@@ -52,6 +54,8 @@ public class HibernateConf {
         metadataSources.addAnnotatedClass(UCELog.class);
         metadataSources.addAnnotatedClass(UCEImport.class);
         metadataSources.addAnnotatedClass(ImportLog.class);
+        metadataSources.addAnnotatedClass(ImportManifestEntry.class);
+        metadataSources.addAnnotatedClass(ImportWorkItem.class);
 
         var metadata = metadataSources.buildMetadata();
 
@@ -68,6 +72,7 @@ public class HibernateConf {
         settings.put("hibernate.connection.username", config.getPostgresqlProperty("hibernate.connection.username"));
         settings.put("hibernate.connection.password", config.getPostgresqlProperty("hibernate.connection.password"));
         settings.put("hibernate.current_session_context_class", config.getPostgresqlProperty("hibernate.current_session_context_class"));
+        settings.put("hibernate.connection.pool_size", Integer.toString(config.getPostgresqlConnectionPoolSize()));
         settings.put("hibernate.show_sql", config.getPostgresqlProperty("hibernate.show_sql"));
         settings.put("hibernate.format_sql", config.getPostgresqlProperty("hibernate.format_sql"));
         settings.put("hibernate.hbm2ddl.auto", config.getPostgresqlProperty("hibernate.hbm2ddl.auto"));
@@ -17,20 +17,36 @@ public class SpringConfig {
         return new WikiService(databaseService(), ragService(), jenaSparqlService());
     }
 
+    @Bean
+    public HttpService httpService() {return new HttpService();}
+
     @Bean
     public GoetheUniversityService goetheUniversityService(){
-        return new GoetheUniversityService();
+        return new GoetheUniversityService(httpService());
     }
 
     @Bean
     public GbifService gbifService(){
-        return new GbifService(jenaSparqlService());
+        return new GbifService(jenaSparqlService(), httpService());
+    }
+
+    @Bean
+    public GbifOccurrenceFetchQueue gbifOccurrenceFetchQueue(){
+        return new GbifOccurrenceFetchQueue(gbifService(), databaseService());
     }
 
     @Bean
-    public JenaSparqlService jenaSparqlService() {return new JenaSparqlService();}
+    public ImportLogWriter importLogWriter(){
+        return new ImportLogWriter(databaseService());
+    }
+
+    @Bean
+    public JenaSparqlService jenaSparqlService() {return new JenaSparqlService(httpService());}
+
+    @Bean
+    public BiofidTaxonResolver biofidTaxonResolver() {return new BiofidTaxonResolver(jenaSparqlService());}
 
     @Bean
-    public RAGService ragService() {return new RAGService(databaseService());}
+    public RAGService ragService() {return new RAGService(databaseService(), httpService());}
 
 }
@@ -16,20 +16,68 @@ public class UIMAAnnotation extends ModelBase {
     private int end;
     @Column(columnDefinition = "TEXT")
     private String coveredText;
+    // Only a reference to the text of the document, for offset-only annotations. Never stored or serialized.
+    private transient String documentText;
 
+    /**
+     * The covered text of this annotation. Offset-only annotations don't store it; theirs is cut out of the
+     * text of their document on demand, see {@link #setDocumentText(String)}. When loaded from the database,
+     * they don't know that text until it is bound through {@link #bindDocumentText(Collection, String)}, and
+     * their covered text is null until then.
+     */
     public String getCoveredText() {
+        if (coveredText == null && documentText != null) return sanitize(getCoveredText(documentText));
         return coveredText;
     }
 
     public String getCoveredText(String fullDocumentText) {
         var length = fullDocumentText.length();
-        return fullDocumentText.substring(getBegin(), Math.min(getEnd(), length));
+        return fullDocumentText.substring(Math.min(getBegin(), length), Math.min(getEnd(), length));
+    }
+
+    /**
+     * The covered text as it is stored in the database, which is null for offset-only annotations.
+     */
+    public String getStoredCoveredText() {
+        return coveredText;
+    }
+
+    /**
+     * Makes this an offset-only annotation: instead of a copy of its covered text, it only keeps a reference to the
+     * full text of its document and derives the covered text from its offsets when asked for it.
+     */
+    public void setDocumentText(String documentText) {
+        this.coveredText = null;
+        this.documentText = documentText;
+    }
+
+    /**
+     * Lets the offset-only annotations among the given ones derive their covered text from the text of their
+     * document. Annotations that store their covered text, or already know their document text, are left alone.
+     */
+    public static void bindDocumentText(Collection<? extends UIMAAnnotation> annotations, String documentText) {
+        if (annotations == null || documentText == null) return;
+        for (var annotation : annotations) {
+            if (annotation.coveredText == null && annotation.documentText == null) annotation.documentText = documentText;
+        }
     }
 
     public void setCoveredText(String coveredText) {
-        this.coveredText = coveredText.replaceAll("<", "")
-                .replaceAll("\n", " ")
-                .replaceAll("\r", " ");
+        this.coveredText = sanitize(coveredText);
+    }
+
+    /**
+     * Drops every "<" and turns line breaks into spaces, in a single pass without any regex, since offset-only
+     * annotations do this on every call of {@link #getCoveredText()}.
+     */
+    private static String sanitize(String coveredText) {
+        var sanitized = new StringBuilder(coveredText.length());
+        for (var i = 0; i < coveredText.length(); i++) {
+            var c = coveredText.charAt(i);
+            if (c == '<') continue;
+            sanitized.append(c == '\n' || c == '\r' ? ' ' : c);
+        }
+        return sanitized.toString();
     }
 
     public UIMAAnnotation() {
@@ -71,7 +119,7 @@ public class UIMAAnnotation extends ModelBase {
         for (var annotation : annotations) {
 
             if(annotation.getBegin() < getBegin() && annotation.getEnd() < getBegin()){
-                if(annotation.getCoveredText().isEmpty()){
+                if("".equals(annotation.getCoveredText())){
                     errorOffset += 1;
                     continue;
                 }
@@ -86,7 +134,7 @@ public class UIMAAnnotation extends ModelBase {
             // So sometimes, we have broken annotations have a supposed length of "1" but really,
             // they don't as they are empty. This screws up our begin and ends though! Hence, when we
             // meet an empty annotation, track it and substract a single value of the begins and ends!
-            if(annotation.getCoveredText().isEmpty()){
+            if("".equals(annotation.getCoveredText())){
                 errorOffset += 1;
                 continue;
             }
@@ -30,6 +30,11 @@ public class Corpus extends ModelBase {
     @Column(columnDefinition = "TEXT")
     private String corpusJsonConfig;
 
+    // The highest document id that was claimed by the corpus postprocessing. Only ever moved by the database itself,
+    // so storing an outdated corpus can't set it back.
+    @Column(insertable = false, updatable = false)
+    private Long postProcessingWatermark;
+
     public Corpus(){
         this.created = DateTime.now();
     }
@@ -64,6 +69,14 @@ public class Corpus extends ModelBase {
         this.language = language;
     }
 
+    public Long getPostProcessingWatermark() {
+        return postProcessingWatermark;
+    }
+
+    public void setPostProcessingWatermark(Long postProcessingWatermark) {
+        this.postProcessingWatermark = postProcessingWatermark;
+    }
+
     public String getCorpusJsonConfig() {
         return corpusJsonConfig;
     }
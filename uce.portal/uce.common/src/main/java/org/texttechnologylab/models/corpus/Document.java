@@ -116,7 +116,7 @@ public class Document extends ModelBase implements WikiModel {
     }
 
     public List<UCEMetadata> getUceMetadata() {
-        if (uceMetadata == null) new ArrayList<>();
+        if (uceMetadata == null) uceMetadata = new ArrayList<>();
         uceMetadata.sort(Comparator.comparing(UCEMetadata::getValueType));
         return uceMetadata;
     }
@@ -282,6 +282,7 @@ public class Document extends ModelBase implements WikiModel {
     }
 
     public List<Page> getPages() {
+        if (pages == null) return new ArrayList<>();
         return pages.stream()
                 .sorted(Comparator.comparingInt(Page::getPageNumber))
                 .toList();
@@ -20,6 +20,13 @@ public class Lemma extends UIMAAnnotation implements WikiModel {
     @Column(name = "document_id", insertable = false, updatable = false)
     private Long documentId;
 
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "page_id")
+    private Page page;
+
+    @Column(name = "page_id", insertable = false, updatable = false)
+    private Long pageId;
+
     @Presentation(name = "Value")
     private String value;
 
@@ -108,6 +115,22 @@ public class Lemma extends UIMAAnnotation implements WikiModel {
         this.documentId = documentId;
     }
 
+    public Page getPage() {
+        return page;
+    }
+
+    public void setPage(Page page) {
+        this.page = page;
+    }
+
+    public Long getPageId() {
+        return pageId;
+    }
+
+    public void setPageId(Long pageId) {
+        this.pageId = pageId;
+    }
+
     @Override
     public String getWikiId() {
         return "L" + "-" + this.getId();
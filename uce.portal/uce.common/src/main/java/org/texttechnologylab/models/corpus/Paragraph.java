@@ -2,7 +2,6 @@ package org.texttechnologylab.models.corpus;
 
 import org.texttechnologylab.models.UIMAAnnotation;
 
-import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Table;
 import java.util.*;
@@ -18,8 +17,6 @@ public class Paragraph extends UIMAAnnotation {
     private int startIndent;
     private String align;
     private int lineSpacing;
-    @Column(columnDefinition = "TEXT")
-    private String coveredText;
 
     public Paragraph(){
         super(-1, -1);
@@ -29,13 +26,6 @@ public class Paragraph extends UIMAAnnotation {
         super(begin, end);
     }
 
-    public String getCoveredText() {
-        return coveredText;
-    }
-    public void setCoveredText(String coveredText) {
-        this.coveredText = coveredText;
-    }
-
     public int getLeftIndent() {
         return leftIndent;
     }
@@ -2,12 +2,16 @@ package org.texttechnologylab.models.corpus;
 
 import org.texttechnologylab.models.UIMAAnnotation;
 
-import javax.persistence.Entity;
-import javax.persistence.Table;
+import javax.persistence.*;
 
 @Entity
 @Table(name="sentence")
 public class Sentence extends UIMAAnnotation {
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "page_id")
+    private Page page;
+    @Column(name = "page_id", insertable = false, updatable = false)
+    private Long pageId;
 
     public Sentence(){
         super(-1, -1);
@@ -20,4 +24,19 @@ public class Sentence extends UIMAAnnotation {
         setCoveredText(coveredText);
     }
 
+    public Page getPage() {
+        return page;
+    }
+
+    public void setPage(Page page) {
+        this.page = page;
+    }
+
+    public Long getPageId() {
+        return pageId;
+    }
+
+    public void setPageId(Long pageId) {
+        this.pageId = pageId;
+    }
 }
@@ -60,7 +60,7 @@ public class Time extends UIMAAnnotation implements WikiModel {
         this.date = date;
     }
 
-    public int getYear() {
+    public Integer getYear() {
         return year;
     }
 
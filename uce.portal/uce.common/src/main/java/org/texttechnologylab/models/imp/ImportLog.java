@@ -50,6 +50,10 @@ public class ImportLog extends ModelBase {
         return created;
     }
 
+    public void setCreated(Long created) {
+        this.created = created;
+    }
+
     public LogStatus getStatus() {
         return status;
     }
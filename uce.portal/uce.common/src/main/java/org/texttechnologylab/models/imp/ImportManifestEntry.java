@@ -0,0 +1,96 @@
+package org.texttechnologylab.models.imp;
+
+import org.texttechnologylab.models.ModelBase;
+
+import javax.persistence.*;
+
+/**
+ * Remembers which file of an import resulted in which document, so a re-run of the import
+ * can skip the files it already stored without parsing them again.
+ */
+@Entity
+@Table(name = "importmanifest", indexes = {@Index(columnList = "corpusId")})
+public class ImportManifestEntry extends ModelBase {
+    private long corpusId;
+    @Column(columnDefinition = "TEXT")
+    private String filePath;
+    private long fileSize;
+    private long lastModified;
+    private String contentHash;
+    private String documentId;
+    private long documentDbId;
+    private long created;
+
+    public ImportManifestEntry(long corpusId, String filePath, long fileSize, long lastModified, String contentHash) {
+        this.corpusId = corpusId;
+        this.filePath = filePath;
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.contentHash = contentHash;
+        this.created = System.currentTimeMillis();
+    }
+
+    public ImportManifestEntry() {
+        this.created = System.currentTimeMillis();
+    }
+
+    public long getCorpusId() {
+        return corpusId;
+    }
+
+    public void setCorpusId(long corpusId) {
+        this.corpusId = corpusId;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public void setFilePath(String filePath) {
+        this.filePath = filePath;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(long lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public String getDocumentId() {
+        return documentId;
+    }
+
+    public void setDocumentId(String documentId) {
+        this.documentId = documentId;
+    }
+
+    public long getDocumentDbId() {
+        return documentDbId;
+    }
+
+    public void setDocumentDbId(long documentDbId) {
+        this.documentDbId = documentDbId;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+}
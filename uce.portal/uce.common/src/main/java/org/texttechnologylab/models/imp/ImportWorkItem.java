@@ -0,0 +1,90 @@
+package org.texttechnologylab.models.imp;
+
+import org.texttechnologylab.models.ModelBase;
+
+import javax.persistence.*;
+
+/**
+ * A single file of an import that is split between several importer instances. The instances claim the
+ * files in batches and hold a lease on them, which they renew as long as they are alive.
+ */
+@Entity
+@Table(name = "importworkitem",
+        uniqueConstraints = {@UniqueConstraint(columnNames = {"importId", "filePath"})},
+        indexes = {@Index(columnList = "importId, status")})
+public class ImportWorkItem extends ModelBase {
+    private String importId;
+    @Column(columnDefinition = "TEXT")
+    private String filePath;
+    private long fileSize;
+    private ImportWorkStatus status;
+    private String claimedBy;
+    private long leaseUntil;
+    private int attempts;
+
+    public ImportWorkItem(String importId, String filePath, long fileSize) {
+        this.importId = importId;
+        this.filePath = filePath;
+        this.fileSize = fileSize;
+        this.status = ImportWorkStatus.PENDING;
+    }
+
+    public ImportWorkItem() {
+    }
+
+    public String getImportId() {
+        return importId;
+    }
+
+    public void setImportId(String importId) {
+        this.importId = importId;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public void setFilePath(String filePath) {
+        this.filePath = filePath;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    public ImportWorkStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(ImportWorkStatus status) {
+        this.status = status;
+    }
+
+    public String getClaimedBy() {
+        return claimedBy;
+    }
+
+    public void setClaimedBy(String claimedBy) {
+        this.claimedBy = claimedBy;
+    }
+
+    public long getLeaseUntil() {
+        return leaseUntil;
+    }
+
+    public void setLeaseUntil(long leaseUntil) {
+        this.leaseUntil = leaseUntil;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+}
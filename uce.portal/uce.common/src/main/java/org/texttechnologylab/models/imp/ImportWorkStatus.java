@@ -0,0 +1,8 @@
+package org.texttechnologylab.models.imp;
+
+public enum ImportWorkStatus {
+    PENDING,
+    CLAIMED,
+    DONE,
+    FAILED
+}
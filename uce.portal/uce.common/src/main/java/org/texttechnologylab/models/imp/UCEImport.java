@@ -17,6 +17,11 @@ public class UCEImport extends ModelBase {
     private ImportStatus status;
     private Long targetCorpusId;
     private String targetCorpusName;
+    // Counted up by the importers while the import runs.
+    private Long storedDocuments;
+    private Long failedDocuments;
+    private Long postProcessedDocuments;
+    private Long importedBytes;
     @Column(columnDefinition = "TEXT")
     private String comment;
     @Transient
@@ -97,6 +102,38 @@ public class UCEImport extends ModelBase {
         this.comment = comment;
     }
 
+    public Long getStoredDocuments() {
+        return storedDocuments;
+    }
+
+    public void setStoredDocuments(Long storedDocuments) {
+        this.storedDocuments = storedDocuments;
+    }
+
+    public Long getFailedDocuments() {
+        return failedDocuments;
+    }
+
+    public void setFailedDocuments(Long failedDocuments) {
+        this.failedDocuments = failedDocuments;
+    }
+
+    public Long getPostProcessedDocuments() {
+        return postProcessedDocuments;
+    }
+
+    public void setPostProcessedDocuments(Long postProcessedDocuments) {
+        this.postProcessedDocuments = postProcessedDocuments;
+    }
+
+    public Long getImportedBytes() {
+        return importedBytes;
+    }
+
+    public void setImportedBytes(Long importedBytes) {
+        this.importedBytes = importedBytes;
+    }
+
     public List<ImportLog> getLogs() {
         return logs;
     }
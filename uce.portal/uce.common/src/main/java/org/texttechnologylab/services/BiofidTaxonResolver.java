@@ -0,0 +1,203 @@
+package org.texttechnologylab.services;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.texttechnologylab.config.CommonConfig;
+import org.texttechnologylab.models.biofid.BiofidTaxon;
+import org.texttechnologylab.models.dto.rdf.RDFNodeDto;
+import org.texttechnologylab.utils.ListUtils;
+import org.texttechnologylab.utils.SystemStatus;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves biofid ids (e.g. https://www.biofid.de/bio-ontologies/gbif/10428508) to their taxon nodes and gbif
+ * taxon id. The same species shows up thousands of times within a corpus, so the results are cached across all
+ * imports, including the ids that resolved to nothing. Ids that aren't cached yet are resolved in batches through
+ * a single VALUES query, and threads asking for an id that is already being resolved wait for that request.
+ */
+public class BiofidTaxonResolver {
+    private static final Logger logger = LogManager.getLogger(BiofidTaxonResolver.class);
+    private static final String TAXON_ID_PREDICATE = "http://rs.tdwg.org/dwc/terms/taxonID";
+
+    private final JenaSparqlService jenaSparqlService;
+    private final ConcurrentHashMap<String, CacheEntry> cache = new ConcurrentHashMap<>();
+    private final int batchSize;
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+
+    public BiofidTaxonResolver(JenaSparqlService jenaSparqlService) {
+        this.jenaSparqlService = jenaSparqlService;
+        var config = new CommonConfig();
+        this.batchSize = Math.max(config.getSparqlBatchSize(), 1);
+        this.maxEntries = Math.max(config.getSparqlCacheMaxEntries(), 1);
+        this.ttlMillis = TimeUnit.MINUTES.toMillis(config.getSparqlCacheTtlMinutes());
+        this.negativeTtlMillis = TimeUnit.MINUTES.toMillis(config.getSparqlCacheNegativeTtlMinutes());
+    }
+
+    /**
+     * Resolves all the given ids. Ids that couldn't be resolved because the sparql database is down or returned an
+     * error are missing from the returned map.
+     */
+    public Map<String, ResolvedBiofidId> resolveAll(Collection<String> biofidIds) {
+        var resolved = new HashMap<String, ResolvedBiofidId>();
+        if (!SystemStatus.JenaSparqlStatus.isAlive()) return resolved;
+
+        var now = System.currentTimeMillis();
+        var pending = new HashMap<String, CompletableFuture<ResolvedBiofidId>>();
+        var owned = new LinkedHashMap<String, CompletableFuture<ResolvedBiofidId>>();
+        for (var biofidId : biofidIds) {
+            var id = biofidId.trim();
+            if (id.isEmpty() || pending.containsKey(id)) continue;
+
+            var entry = cache.compute(id, (key, existing) -> {
+                if (existing != null && !existing.isExpired(now)) return existing;
+                var created = new CacheEntry(new CompletableFuture<>());
+                owned.put(key, created.future);
+                return created;
+            });
+            pending.put(id, entry.future);
+        }
+
+        // The ids we added to the cache are ours to resolve; the others are already being resolved by someone else.
+        try {
+            for (var batch : ListUtils.partitionList(new ArrayList<>(owned.keySet()), batchSize)) {
+                resolveBatch(batch, owned);
+            }
+        } catch (RuntimeException ex) {
+            logger.error("Unexpected error while resolving biofid ids.", ex);
+        } finally {
+            // Nobody may be left waiting on an id we didn't get to.
+            owned.forEach((id, future) -> {
+                if (!future.isDone()) fail(id, future, new IllegalStateException("The biofid id " + id + " wasn't resolved."));
+            });
+        }
+        if (!owned.isEmpty()) evictIfFull();
+
+        for (var entry : pending.entrySet()) {
+            try {
+                resolved.put(entry.getKey(), entry.getValue().join());
+            } catch (CompletionException ex) {
+                // Already logged by whoever resolved it.
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * Resolves a single id, see {@link #resolveAll(Collection)}. Returns null if it couldn't be resolved.
+     */
+    public ResolvedBiofidId resolve(String biofidId) {
+        return resolveAll(List.of(biofidId)).get(biofidId.trim());
+    }
+
+    public int getCacheSize() {
+        return cache.size();
+    }
+
+    private void resolveBatch(List<String> batch, Map<String, CompletableFuture<ResolvedBiofidId>> owned) {
+        Map<String, List<RDFNodeDto>> nodesBySubject;
+        try {
+            nodesBySubject = jenaSparqlService.queryBySubjects(batch);
+        } catch (Exception ex) {
+            // A single malformed id fails the whole VALUES query, so we try them one by one before giving up.
+            if (batch.size() > 1) {
+                logger.warn("Resolving a batch of " + batch.size() + " biofid ids failed, resolving them one by one.", ex);
+                for (var id : batch) resolveBatch(List.of(id), owned);
+                return;
+            }
+            logger.error("Error resolving the biofid id " + batch.getFirst(), ex);
+            for (var id : batch) fail(id, owned.get(id), ex);
+            return;
+        }
+
+        var expiresAt = System.currentTimeMillis();
+        for (var id : batch) {
+            var nodes = nodesBySubject.getOrDefault(id, List.of());
+            var resolved = new ResolvedBiofidId(nodes, getGbifTaxonId(nodes));
+            var entry = cache.get(id);
+            if (entry != null && entry.future == owned.get(id))
+                entry.expiresAt = expiresAt + (resolved.isFound() ? ttlMillis : negativeTtlMillis);
+            owned.get(id).complete(resolved);
+        }
+    }
+
+    private void fail(String id, CompletableFuture<ResolvedBiofidId> future, Exception ex) {
+        // Errors aren't cached, the next one asking tries again.
+        cache.computeIfPresent(id, (key, entry) -> entry.future == future ? null : entry);
+        future.completeExceptionally(ex);
+    }
+
+    /**
+     * Drops the expired entries and, if that isn't enough, the ones that expire the soonest.
+     */
+    private void evictIfFull() {
+        if (cache.size() <= maxEntries) return;
+        synchronized (cache) {
+            if (cache.size() <= maxEntries) return;
+            var now = System.currentTimeMillis();
+            cache.entrySet().removeIf(e -> e.getValue().isExpired(now));
+
+            var overflow = cache.size() - maxEntries;
+            if (overflow <= 0) return;
+            // We make some room in one go, so we don't have to sort the cache for every new batch.
+            var toEvict = overflow + maxEntries / 10;
+            cache.entrySet().stream()
+                    .filter(e -> e.getValue().future.isDone())
+                    .sorted(Comparator.comparingLong(e -> e.getValue().expiresAt))
+                    .limit(toEvict)
+                    .map(Map.Entry::getKey)
+                    .toList()
+                    .forEach(cache::remove);
+        }
+    }
+
+    private static long getGbifTaxonId(List<RDFNodeDto> nodes) {
+        for (var node : nodes) {
+            if (!TAXON_ID_PREDICATE.equals(node.getPredicate().getValue())) continue;
+            var gbifTaxonUrl = node.getObject().getValue();
+            try {
+                return Long.parseLong(Arrays.stream(gbifTaxonUrl.split("/")).toList().getLast());
+            } catch (NumberFormatException ex) {
+                logger.warn("Couldn't parse the gbif taxon id of " + gbifTaxonUrl);
+            }
+        }
+        return -1;
+    }
+
+    private static class CacheEntry {
+        private final CompletableFuture<ResolvedBiofidId> future;
+        // Entries that are still being resolved never expire.
+        private volatile long expiresAt = Long.MAX_VALUE;
+
+        private CacheEntry(CompletableFuture<ResolvedBiofidId> future) {
+            this.future = future;
+        }
+
+        private boolean isExpired(long now) {
+            return expiresAt < now;
+        }
+    }
+
+    /**
+     * The taxon nodes of a biofid id and the gbif taxon id among them, -1 if there is none.
+     */
+    public record ResolvedBiofidId(List<RDFNodeDto> nodes, long gbifTaxonId) {
+
+        public boolean isFound() {
+            return !nodes.isEmpty();
+        }
+
+        /**
+         * Creates new BiofidTaxon objects from the nodes, which the caller may then change as it likes.
+         */
+        public List<BiofidTaxon> createBiofidTaxons() throws CloneNotSupportedException {
+            return BiofidTaxon.createFromRdfNodes(nodes);
+        }
+    }
+}
@@ -6,10 +6,14 @@ import org.texttechnologylab.models.dto.UCEMetadataFilterDto;
 import org.texttechnologylab.models.gbif.GbifOccurrence;
 import org.texttechnologylab.models.globe.GlobeTaxon;
 import org.texttechnologylab.models.imp.ImportLog;
+import org.texttechnologylab.models.imp.ImportManifestEntry;
+import org.texttechnologylab.models.imp.ImportWorkItem;
+import org.texttechnologylab.models.imp.ImportWorkStatus;
 import org.texttechnologylab.models.imp.UCEImport;
 import org.texttechnologylab.models.search.*;
 
 import java.util.List;
+import java.util.Map;
 
 public interface DataInterface {
 
@@ -87,6 +91,23 @@ public interface DataInterface {
      */
     public List<Document> getNonePostprocessedDocumentsByCorpusId(long corpusId) throws DatabaseOperationException;
 
+    /**
+     * Claims the ids of up to limit documents of a corpus for the corpus postprocessing. Only documents after the
+     * persisted watermark of the corpus whose document embedding is stored already are considered and the watermark
+     * is moved past the claimed ones, so two concurrent runs never get the same documents.
+     */
+    public List<Long> claimDocumentIdsForCorpusPostProcessing(long corpusId, int limit) throws DatabaseOperationException;
+
+    /**
+     * Gets the ids of the documents of a corpus that have a document embedding and aren't postprocessed, although the
+     * watermark already passed them, e.g. because they were committed after a document with a higher id was claimed
+     * or their postprocessing failed. Returns the lowest ids after afterId, at most limit of them or all if limit
+     * isn't positive.
+     */
+    public List<Long> getSkippedNonePostprocessedDocumentIds(long corpusId, long afterId, int limit) throws DatabaseOperationException;
+
+    public void markDocumentsAsPostProcessed(List<Long> documentIds) throws DatabaseOperationException;
+
     /**
      * Returns a corpus tsne plot by the given corpusId
      *
@@ -237,6 +258,12 @@ public interface DataInterface {
 
     public boolean checkIfGbifOccurrencesExist(long gbifTaxonId) throws DatabaseOperationException;
 
+    /**
+     * Stores the occurrences of several gbif taxa in one transaction. Taxa that already have occurrences stored,
+     * e.g. by another importer instance, are skipped. Returns the amount of stored occurrences.
+     */
+    public int saveGbifOccurrencesOfNewTaxa(Map<Long, List<GbifOccurrence>> occurrencesByTaxonId) throws DatabaseOperationException;
+
     /**
      * Gets a complete document, alongside its lists, from the database.
      */
@@ -247,17 +274,67 @@ public interface DataInterface {
      */
     public void saveOrUpdateImportLog(ImportLog importLog) throws DatabaseOperationException;
 
+    /**
+     * Inserts new ImportLogs through a single batched statement.
+     */
+    public void saveImportLogs(List<ImportLog> importLogs) throws DatabaseOperationException;
+
     /**
      * Saves or updates a UCEImport object.
      */
     public void saveOrUpdateUceImport(UCEImport uceImport) throws DatabaseOperationException;
 
+    /**
+     * Adds the given amounts to the document and byte counters of a UCEImport.
+     */
+    public void addUceImportCounters(String importId, long storedDocuments, long failedDocuments,
+                                     long postProcessedDocuments, long importedBytes) throws DatabaseOperationException;
+
+    /**
+     * Gets all entries of the import manifest of a corpus, that is, the files that were already imported into it.
+     */
+    public List<ImportManifestEntry> getImportManifestEntriesByCorpusId(long corpusId) throws DatabaseOperationException;
+
+    /**
+     * Saves or updates an entry of the import manifest.
+     */
+    public void saveOrUpdateImportManifestEntry(ImportManifestEntry entry) throws DatabaseOperationException;
+
+    /**
+     * Stores the discovered files of a distributed import as pending work. Files that are already known are skipped.
+     */
+    public void insertImportWorkItems(List<ImportWorkItem> workItems) throws DatabaseOperationException;
+
+    /**
+     * Claims up to limit pending files (or files whose lease expired) of an import for the given instance,
+     * largest first. Files whose lease already expired maxAttempts times are marked as failed instead.
+     * Leases are set and compared with the clock of the database, not the one of the calling instance.
+     */
+    public List<ImportWorkItem> claimImportWorkItems(String importId, String claimedBy, int limit, long leaseMillis, int maxAttempts) throws DatabaseOperationException;
+
+    /**
+     * Extends the lease of all files the given instance currently holds.
+     */
+    public void renewImportWorkItemLeases(String importId, String claimedBy, long leaseMillis) throws DatabaseOperationException;
+
+    public void updateImportWorkItemStatus(long id, ImportWorkStatus status) throws DatabaseOperationException;
+
+    /**
+     * Counts the files of an import that are either pending or claimed by some instance.
+     */
+    public int countOpenImportWorkItems(String importId) throws DatabaseOperationException;
+
     /**
      * Saves and updates a filter.
      *
      */
     public void saveOrUpdateUCEMetadataFilter(UCEMetadataFilter filter) throws DatabaseOperationException;
 
+    /**
+     * Saves and updates the given filters within a single transaction.
+     */
+    public void saveOrUpdateUCEMetadataFilters(List<UCEMetadataFilter> filters) throws DatabaseOperationException;
+
     /**
      * Stores a new UCEMetadataFilter
      *
@@ -270,6 +347,12 @@ public interface DataInterface {
      */
     public void saveDocument(Document document) throws DatabaseOperationException;
 
+    /**
+     * Stores the document like saveDocument, but writes all its annotations through postgres' COPY
+     * instead of single inserts. Meant for the corpus import.
+     */
+    public void saveDocumentBulk(Document document) throws DatabaseOperationException;
+
     /**
      * Updates a document
      */
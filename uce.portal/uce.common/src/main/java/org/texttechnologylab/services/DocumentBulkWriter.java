@@ -0,0 +1,280 @@
+package org.texttechnologylab.services;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.texttechnologylab.models.ModelBase;
+import org.texttechnologylab.models.biofid.BiofidTaxon;
+import org.texttechnologylab.models.corpus.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Writes all annotations of an already inserted document in bulk. Instead of letting hibernate cascade one INSERT
+ * per annotation, the ids are taken from the table sequences in one block per table and the rows are streamed
+ * into the tables through postgres' COPY. The ids are set on the objects, so they can be used afterwards just like
+ * after a hibernate save.
+ */
+public class DocumentBulkWriter {
+    // We don't want to buffer the CSV of a whole 50k lemma document in one go.
+    private static final int COPY_CHUNK_SIZE = 10000;
+
+    private final Connection connection;
+    private final CopyManager copyManager;
+
+    public DocumentBulkWriter(Connection connection) throws SQLException {
+        this.connection = connection;
+        this.copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+    }
+
+    /**
+     * Writes the pages (with their OCR paragraphs, blocks and lines) and every annotation of the document.
+     * The document itself must already be stored, i.e. have an id.
+     */
+    public void writeAnnotations(Document document) throws SQLException, IOException {
+        var documentId = document.getId();
+        var pages = document.getPages();
+
+        // Pages first, since most annotations reference them.
+        assignIds("page", pages);
+        try (var copy = new CopyWriter("page", "id", "\"beginn\"", "\"endd\"", "coveredText", "pageNumber", "pageId", "document_id")) {
+            for (var page : pages)
+                copy.addRow(page.getId(), page.getBegin(), page.getEnd(), page.getCoveredText(), page.getPageNumber(), page.getPageId(), documentId);
+        }
+        writeOcrAnnotations(pages);
+
+        var sentences = orEmpty(document.getSentences());
+        assignIds("sentence", sentences);
+        try (var copy = new CopyWriter("sentence", "id", "\"beginn\"", "\"endd\"", "coveredText", "document_id", "page_id")) {
+            for (var sentence : sentences)
+                copy.addRow(sentence.getId(), sentence.getBegin(), sentence.getEnd(), sentence.getStoredCoveredText(), documentId, pageIdOf(sentence.getPage()));
+        }
+
+        var namedEntities = orEmpty(document.getNamedEntities());
+        assignIds("namedentity", namedEntities);
+        try (var copy = new CopyWriter("namedentity", "id", "\"beginn\"", "\"endd\"", "coveredText", "\"typee\"", "document_id", "page_id")) {
+            for (var ne : namedEntities)
+                copy.addRow(ne.getId(), ne.getBegin(), ne.getEnd(), ne.getCoveredText(), ne.getType(), documentId, pageIdOf(ne.getPage()));
+        }
+
+        var lemmas = orEmpty(document.getLemmas());
+        assignIds("lemma", lemmas);
+        try (var copy = new CopyWriter("lemma", "id", "\"beginn\"", "\"endd\"", "coveredText", "value", "posValue", "coarseValue",
+                "animacy", "aspect", "casee", "definiteness", "degree", "gender", "mood", "negative", "number", "numberType",
+                "person", "possessive", "pronType", "reflex", "tense", "verbForm", "voice", "document_id", "page_id")) {
+            for (var l : lemmas)
+                copy.addRow(l.getId(), l.getBegin(), l.getEnd(), l.getCoveredText(), l.getValue(), l.getPosValue(), l.getCoarseValue(),
+                        l.getAnimacy(), l.getAspect(), l.getCasee(), l.getDefiniteness(), l.getDegree(), l.getGender(), l.getMood(),
+                        l.getNegative(), l.getNumber(), l.getNumberType(), l.getPerson(), l.getPossessive(), l.getPronType(),
+                        l.getReflex(), l.getTense(), l.getVerbForm(), l.getVoice(), documentId, pageIdOf(l.getPage()));
+        }
+
+        var srLinks = orEmpty(document.getSrLinks());
+        assignIds("srlink", srLinks);
+        try (var copy = new CopyWriter("srlink", "id", "figureBegin", "figureEnd", "figureCoveredText",
+                "groundBegin", "groundEnd", "groundCoveredText", "relationType", "document_id")) {
+            for (var sr : srLinks)
+                copy.addRow(sr.getId(), sr.getFigureBegin(), sr.getFigureEnd(), sr.getFigureCoveredText(),
+                        sr.getGroundBegin(), sr.getGroundEnd(), sr.getGroundCoveredText(), sr.getRelationType(), documentId);
+        }
+
+        var times = orEmpty(document.getTimes());
+        assignIds("time", times);
+        try (var copy = new CopyWriter("time", "id", "\"beginn\"", "\"endd\"", "coveredText", "\"valuee\"",
+                "year", "month", "day", "date", "season", "document_id", "page_id")) {
+            for (var t : times)
+                copy.addRow(t.getId(), t.getBegin(), t.getEnd(), t.getCoveredText(), t.getValue(),
+                        t.getYear(), t.getMonth(), t.getDay(), t.getDate(), t.getSeason(), documentId, pageIdOf(t.getPage()));
+        }
+
+        var taxons = orEmpty(document.getTaxons());
+        assignIds("taxon", taxons);
+        try (var copy = new CopyWriter("taxon", "id", "\"beginn\"", "\"endd\"", "coveredText", "\"valuee\"", "identifier",
+                "gbiftaxonid", "primaryBiofidOntologyIdentifier", "document_id", "page_id")) {
+            for (var t : taxons)
+                copy.addRow(t.getId(), t.getBegin(), t.getEnd(), t.getCoveredText(), t.getValue(), t.getIdentifier(),
+                        t.getGbifTaxonId(), t.getPrimaryBiofidOntologyIdentifier(), documentId, pageIdOf(t.getPage()));
+        }
+
+        var biofidTaxons = orEmpty(document.getBiofidTaxons());
+        assignIds("biofidtaxon", biofidTaxons);
+        try (var copy = new CopyWriter("biofidtaxon", "id", "\"beginn\"", "\"endd\"", "coveredText", "biofidUrl", "primaryName",
+                "vernacularName", "scientificName", "cleanedScientificName", "kingdom", "phylum", "clazz", "orderr",
+                "family", "genus", "taxonRank", "author", "isVernacular", "document_id", "page_id")) {
+            for (var b : biofidTaxons)
+                copy.addRow(b.getId(), b.getBegin(), b.getEnd(), b.getCoveredText(), b.getBiofidUrl(), b.getPrimaryName(),
+                        b.getVernacularName(), b.getScientificName(), b.getCleanedScientificName(), b.getKingdom(), b.getPhylum(),
+                        b.getClazz(), b.getOrder(), b.getFamily(), b.getGenus(), b.getTaxonRank(), b.getAuthor(), b.isVernacular(),
+                        documentId, pageIdOf(b.getPage()));
+        }
+
+        var uceMetadata = orEmpty(document.getUceMetadata());
+        assignIds("ucemetadata", uceMetadata);
+        try (var copy = new CopyWriter("ucemetadata", "id", "key", "value", "valueType", "comment", "document_id")) {
+            for (var m : uceMetadata)
+                copy.addRow(m.getId(), m.getKey(), m.getValue(), m.getValueType(), m.getComment(), documentId);
+        }
+
+        writeWikipediaLinks(orEmpty(document.getWikipediaLinks()), documentId);
+    }
+
+    private void writeOcrAnnotations(List<Page> pages) throws SQLException, IOException {
+        var paragraphs = new ArrayList<Paragraph>();
+        var paragraphPageIds = new ArrayList<Long>();
+        var blocks = new ArrayList<Block>();
+        var blockPageIds = new ArrayList<Long>();
+        var lines = new ArrayList<Line>();
+        var linePageIds = new ArrayList<Long>();
+        for (var page : pages) {
+            for (var paragraph : orEmpty(page.getParagraphs())) {
+                paragraphs.add(paragraph);
+                paragraphPageIds.add(page.getId());
+            }
+            for (var block : orEmpty(page.getBlocks())) {
+                blocks.add(block);
+                blockPageIds.add(page.getId());
+            }
+            for (var line : orEmpty(page.getLines())) {
+                lines.add(line);
+                linePageIds.add(page.getId());
+            }
+        }
+
+        assignIds("paragraph", paragraphs);
+        try (var copy = new CopyWriter("paragraph", "id", "\"beginn\"", "\"endd\"", "coveredText", "leftIndent", "rightIndent",
+                "startIndent", "align", "lineSpacing", "page_id")) {
+            for (var i = 0; i < paragraphs.size(); i++) {
+                var p = paragraphs.get(i);
+                copy.addRow(p.getId(), p.getBegin(), p.getEnd(), p.getStoredCoveredText(), p.getLeftIndent(), p.getRightIndent(),
+                        p.getStartIndent(), p.getAlign(), p.getLineSpacing(), paragraphPageIds.get(i));
+            }
+        }
+
+        assignIds("block", blocks);
+        try (var copy = new CopyWriter("block", "id", "\"beginn\"", "\"endd\"", "coveredText", "blockType", "page_id")) {
+            for (var i = 0; i < blocks.size(); i++) {
+                var b = blocks.get(i);
+                copy.addRow(b.getId(), b.getBegin(), b.getEnd(), b.getStoredCoveredText(), b.getBlockType(), blockPageIds.get(i));
+            }
+        }
+
+        assignIds("line", lines);
+        try (var copy = new CopyWriter("line", "id", "\"beginn\"", "\"endd\"", "coveredText", "baseline", "top", "bottom",
+                "\"leftt\"", "\"rightt\"", "page_id")) {
+            for (var i = 0; i < lines.size(); i++) {
+                var l = lines.get(i);
+                copy.addRow(l.getId(), l.getBegin(), l.getEnd(), l.getStoredCoveredText(), l.getBaseline(), l.getTop(), l.getBottom(),
+                        l.getLeft(), l.getRight(), linePageIds.get(i));
+            }
+        }
+    }
+
+    private void writeWikipediaLinks(List<WikipediaLink> wikipediaLinks, long documentId) throws SQLException, IOException {
+        assignIds("wikipedialink", wikipediaLinks);
+        var hyponyms = new ArrayList<WikiDataHyponym>();
+        var hyponymLinkIds = new ArrayList<Long>();
+        try (var copy = new CopyWriter("wikipedialink", "id", "\"beginn\"", "\"endd\"", "coveredText", "target", "wikiData",
+                "linkType", "document_id")) {
+            for (var w : wikipediaLinks) {
+                copy.addRow(w.getId(), w.getBegin(), w.getEnd(), w.getCoveredText(), w.getTarget(), w.getWikiData(),
+                        w.getLinkType(), documentId);
+                for (var hyponym : orEmpty(w.getWikiDataHyponyms())) {
+                    hyponyms.add(hyponym);
+                    hyponymLinkIds.add(w.getId());
+                }
+            }
+        }
+
+        assignIds("wikidatahyponym", hyponyms);
+        try (var copy = new CopyWriter("wikidatahyponym", "id", "\"valuee\"", "wikipediaLink_id")) {
+            for (var i = 0; i < hyponyms.size(); i++)
+                copy.addRow(hyponyms.get(i).getId(), hyponyms.get(i).getValue(), hyponymLinkIds.get(i));
+        }
+    }
+
+    /**
+     * Fetches a whole block of ids from the sequence of the given table in one round trip and assigns them.
+     */
+    private void assignIds(String table, List<? extends ModelBase> entities) throws SQLException {
+        if (entities.isEmpty()) return;
+        try (var stmt = connection.prepareStatement(
+                "SELECT nextval(pg_get_serial_sequence(?, 'id')) FROM generate_series(1, ?)")) {
+            stmt.setString(1, table);
+            stmt.setInt(2, entities.size());
+            try (var result = stmt.executeQuery()) {
+                var i = 0;
+                while (result.next()) entities.get(i++).setId(result.getLong(1));
+            }
+        }
+    }
+
+    private static Long pageIdOf(Page page) {
+        return page == null ? null : page.getId();
+    }
+
+    private static <T> List<T> orEmpty(List<T> list) {
+        return list == null ? List.of() : list;
+    }
+
+    /**
+     * Appends the values as one line in the CSV format of postgres' COPY.
+     */
+    static void appendCsvRow(StringBuilder buffer, Object... values) {
+        for (var i = 0; i < values.length; i++) {
+            if (i > 0) buffer.append(',');
+            appendCsvValue(buffer, values[i]);
+        }
+        buffer.append('\n');
+    }
+
+    private static void appendCsvValue(StringBuilder buffer, Object value) {
+        // In the CSV format, an unquoted empty value is NULL while a quoted one is an empty string.
+        if (value == null) return;
+        if (value instanceof String s) {
+            buffer.append('"').append(s.replace("\"", "\"\"")).append('"');
+        } else if (value instanceof Date d) {
+            buffer.append('"').append(new Timestamp(d.getTime())).append('"');
+        } else if (value instanceof Enum<?> e) {
+            // Hibernate stores our enums by their ordinal.
+            buffer.append(e.ordinal());
+        } else {
+            buffer.append(value);
+        }
+    }
+
+    /**
+     * Buffers rows as CSV and streams them into a table through COPY, chunk by chunk.
+     */
+    private class CopyWriter implements AutoCloseable {
+        private final String copySql;
+        private final StringBuilder buffer = new StringBuilder();
+        private int bufferedRows = 0;
+
+        CopyWriter(String table, String... columns) {
+            this.copySql = "COPY " + table + " (" + String.join(", ", columns) + ") FROM STDIN WITH (FORMAT csv)";
+        }
+
+        void addRow(Object... values) throws SQLException, IOException {
+            appendCsvRow(buffer, values);
+            if (++bufferedRows >= COPY_CHUNK_SIZE) flush();
+        }
+
+        private void flush() throws SQLException, IOException {
+            if (bufferedRows == 0) return;
+            copyManager.copyIn(copySql, new StringReader(buffer.toString()));
+            buffer.setLength(0);
+            bufferedRows = 0;
+        }
+
+        @Override
+        public void close() throws SQLException, IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package org.texttechnologylab.services;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.texttechnologylab.config.CommonConfig;
+import org.texttechnologylab.exceptions.ExceptionUtils;
+import org.texttechnologylab.models.gbif.GbifOccurrence;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fetches the gbif occurrences of taxa in the background, so importing a document never waits on gbif. Every taxon
+ * is fetched at most once per process; taxa that already have occurrences in the database are skipped. The fetches
+ * are rate limited and retried with a backoff, and the fetched occurrences are stored in batches. The background
+ * threads only start with the first queued taxon, so processes that never import, like the web portal, have none.
+ */
+public class GbifOccurrenceFetchQueue {
+    private static final Logger logger = LogManager.getLogger(GbifOccurrenceFetchQueue.class);
+    private static final long FLUSH_INTERVAL_MILLIS = 2000;
+
+    private final GbifService gbifService;
+    private final PostgresqlDataInterface_Impl db;
+    private final Set<Long> requestedTaxonIds = ConcurrentHashMap.newKeySet();
+    private final BlockingQueue<FetchTask> queue = new LinkedBlockingQueue<>();
+    // Taxa that were enqueued, but aren't stored or given up on yet.
+    private final AtomicInteger openTaxa = new AtomicInteger(0);
+    private final Map<Long, List<GbifOccurrence>> fetched = new HashMap<>();
+    private int fetchedCount = 0;
+    private final Semaphore concurrency;
+    private final long intervalNanos;
+    private final int maxRetries;
+    private final int insertBatchSize;
+    private final long drainTimeoutMinutes;
+    private final ExecutorService fetchExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1, runnable -> {
+        var thread = new Thread(runnable, "uce-gbif-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Thread dispatcher;
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    public GbifOccurrenceFetchQueue(GbifService gbifService, PostgresqlDataInterface_Impl db) {
+        this.gbifService = gbifService;
+        this.db = db;
+        var config = new CommonConfig();
+        this.concurrency = new Semaphore(Math.max(config.getGbifFetchConcurrency(), 1));
+        this.intervalNanos = config.getGbifFetchRate() > 0 ? (long) (1_000_000_000L / config.getGbifFetchRate()) : 0;
+        this.maxRetries = Math.max(config.getGbifFetchMaxRetries(), 0);
+        this.insertBatchSize = Math.max(config.getGbifInsertBatchSize(), 1);
+        this.drainTimeoutMinutes = config.getGbifFetchDrainTimeoutMinutes();
+
+        this.dispatcher = new Thread(this::dispatch, "uce-gbif-dispatcher");
+        this.dispatcher.setDaemon(true);
+    }
+
+    /**
+     * Queues the occurrences of the taxon to be fetched and returns right away. Taxa that were queued before are ignored.
+     */
+    public void enqueue(long gbifTaxonId) {
+        if (gbifTaxonId <= 0 || !requestedTaxonIds.add(gbifTaxonId)) return;
+        openTaxa.incrementAndGet();
+        queue.add(new FetchTask(gbifTaxonId, 0));
+        start();
+    }
+
+    /**
+     * Waits until all queued taxa are fetched and stored, but at most gbif.fetch.drain.timeout.minutes. Returns
+     * whether everything got done.
+     */
+    public boolean awaitIdle() throws InterruptedException {
+        var deadline = System.nanoTime() + Duration.ofMinutes(drainTimeoutMinutes).toNanos();
+        var lastLog = 0L;
+        while (openTaxa.get() > 0) {
+            if (System.nanoTime() > deadline) return false;
+            if (System.nanoTime() - lastLog > TimeUnit.MINUTES.toNanos(1)) {
+                logger.info("Waiting for the gbif occurrences of " + openTaxa.get() + " taxa to be fetched.");
+                lastLog = System.nanoTime();
+            }
+            ExceptionUtils.tryCatchLog(this::flush, (ex) -> logger.error("Error storing the fetched gbif occurrences.", ex));
+            Thread.sleep(200);
+        }
+        return true;
+    }
+
+    /**
+     * The taxa that are queued, being fetched or waiting to be stored.
+     */
+    public int getOpenCount() {
+        return openTaxa.get();
+    }
+
+    public void shutdown() {
+        // Once shut down, it must not start anymore.
+        started.set(true);
+        dispatcher.interrupt();
+        scheduler.shutdown();
+        fetchExecutor.shutdown();
+        ExceptionUtils.tryCatchLog(this::flush, (ex) -> logger.error("Error storing the fetched gbif occurrences.", ex));
+    }
+
+    private void start() {
+        if (!started.compareAndSet(false, true)) return;
+        dispatcher.start();
+        scheduler.scheduleWithFixedDelay(() -> ExceptionUtils.tryCatchLog(this::flush,
+                        (ex) -> logger.error("Error storing the fetched gbif occurrences.", ex)),
+                FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void dispatch() {
+        var nextStart = System.nanoTime();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                var task = queue.take();
+                var wait = nextStart - System.nanoTime();
+                if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+                nextStart = Math.max(nextStart, System.nanoTime()) + intervalNanos;
+
+                concurrency.acquire();
+                fetchExecutor.execute(() -> {
+                    try {
+                        fetch(task);
+                    } finally {
+                        concurrency.release();
+                    }
+                });
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (RejectedExecutionException ex) {
+            logger.info("The gbif occurrence queue was shut down with " + openTaxa.get() + " open taxa.");
+        }
+    }
+
+    private void fetch(FetchTask task) {
+        var taxonId = task.gbifTaxonId();
+        // Taxa of earlier imports are already stored. Another instance may store it in the meantime, which the insert catches.
+        if (task.attempt() == 0) {
+            var exists = ExceptionUtils.tryCatchLog(() -> db.checkIfGbifOccurrencesExist(taxonId),
+                    (ex) -> logger.warn("Couldn't check if the gbif occurrences of " + taxonId + " exist, fetching them anyways.", ex));
+            if (exists != null && exists) {
+                openTaxa.decrementAndGet();
+                return;
+            }
+        }
+
+        try {
+            var occurrences = gbifService.scrapeGbifOccurrence(taxonId);
+            if (occurrences == null || occurrences.isEmpty()) {
+                openTaxa.decrementAndGet();
+                return;
+            }
+            buffer(taxonId, occurrences);
+        } catch (Exception ex) {
+            if (task.attempt() < maxRetries) {
+                var backoff = 1000L << task.attempt();
+                logger.warn("Fetching the gbif occurrences of " + taxonId + " failed, retrying in " + backoff + "ms.", ex);
+                scheduler.schedule(() -> queue.add(new FetchTask(taxonId, task.attempt() + 1)), backoff, TimeUnit.MILLISECONDS);
+                return;
+            }
+            logger.error("Giving up on the gbif occurrences of " + taxonId + " after " + (task.attempt() + 1) + " attempts.", ex);
+            // A later import may try again.
+            requestedTaxonIds.remove(taxonId);
+            openTaxa.decrementAndGet();
+        }
+    }
+
+    private void buffer(long taxonId, List<GbifOccurrence> occurrences) {
+        boolean isFull;
+        synchronized (fetched) {
+            fetched.put(taxonId, occurrences);
+            fetchedCount += occurrences.size();
+            isFull = fetchedCount >= insertBatchSize;
+        }
+        if (!isFull) return;
+
+        // The insert runs on the scheduler, a virtual fetch thread shouldn't hold its carrier for it.
+        Runnable flushTask = () -> ExceptionUtils.tryCatchLog(this::flush,
+                (ex) -> logger.error("Error storing the fetched gbif occurrences.", ex));
+        try {
+            scheduler.execute(flushTask);
+        } catch (RejectedExecutionException ex) {
+            // Already shut down, the fetches that were still running store their occurrences themselves.
+            flushTask.run();
+        }
+    }
+
+    private void flush() {
+        // A lock instead of synchronized, which would pin a virtual thread to its carrier during the insert.
+        flushLock.lock();
+        try {
+            Map<Long, List<GbifOccurrence>> batch;
+            synchronized (fetched) {
+                if (fetched.isEmpty()) return;
+                batch = new HashMap<>(fetched);
+                fetched.clear();
+                fetchedCount = 0;
+            }
+
+            try {
+                var saved = db.saveGbifOccurrencesOfNewTaxa(batch);
+                logger.info("Stored " + saved + " gbif occurrences of " + batch.size() + " taxa.");
+            } catch (Exception ex) {
+                logger.error("Error storing the gbif occurrences of " + batch.size() + " taxa, they are fetched again by a later import.", ex);
+                batch.keySet().forEach(requestedTaxonIds::remove);
+            } finally {
+                openTaxa.addAndGet(-batch.size());
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private record FetchTask(long gbifTaxonId, int attempt) {
+    }
+}
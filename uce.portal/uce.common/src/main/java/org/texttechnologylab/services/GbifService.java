@@ -4,7 +4,7 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import org.bson.Document;
 import org.joda.time.DateTime;
-import org.jsoup.Jsoup;
+import org.jsoup.HttpStatusException;
 import org.texttechnologylab.config.CommonConfig;
 import org.texttechnologylab.models.corpus.MetadataTitleInfo;
 import org.texttechnologylab.models.gbif.GbifOccurrence;
@@ -12,16 +12,20 @@ import org.texttechnologylab.models.util.HealthStatus;
 import org.texttechnologylab.utils.SystemStatus;
 
 import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.time.Duration;
 import java.util.*;
 
 public class GbifService {
     private CommonConfig config;
     private JenaSparqlService jenaSparqlService;
+    private HttpService httpService;
 
-    public GbifService(JenaSparqlService jenaSparqlService) {
+    public GbifService(JenaSparqlService jenaSparqlService, HttpService httpService) {
         try{
             config = new CommonConfig();
             this.jenaSparqlService = jenaSparqlService;
+            this.httpService = httpService;
 
             SystemStatus.GbifServiceStatus = new HealthStatus(true, "", null);
         } catch (Exception ex){
@@ -38,7 +42,17 @@ public class GbifService {
         var baseUrl = config.getGbifOccurrencesSearchUrl();
         var url = baseUrl.replace("{TAXON_ID}", Long.toString(taxonId));
 
-        var data = Jsoup.connect(url).ignoreContentType(true).execute().body();
+        HttpResponse<String> response;
+        try {
+            response = httpService.get(url, "application/json", Duration.ofSeconds(30));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching the gbif occurrences of " + taxonId, ex);
+        }
+        if (response.statusCode() != 200)
+            throw new HttpStatusException("Gbif returned an invalid status code: " + response.statusCode(), response.statusCode(), url);
+
+        var data = response.body();
         var jsonData = Document.parse(data);
         var occurrences = new ArrayList<GbifOccurrence>();
 
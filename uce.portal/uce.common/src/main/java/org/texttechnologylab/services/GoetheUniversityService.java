@@ -1,5 +1,6 @@
 package org.texttechnologylab.services;
 
+import org.jsoup.HttpStatusException;
 import org.jsoup.Jsoup;
 import org.springframework.stereotype.Service;
 import org.texttechnologylab.config.CommonConfig;
@@ -8,13 +9,17 @@ import org.texttechnologylab.models.util.HealthStatus;
 import org.texttechnologylab.utils.SystemStatus;
 
 import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.time.Duration;
 
 @Service
 public class GoetheUniversityService {
     private CommonConfig config;
-    public GoetheUniversityService() {
+    private HttpService httpService;
+    public GoetheUniversityService(HttpService httpService) {
         try{
             config = new CommonConfig();
+            this.httpService = httpService;
             SystemStatus.GoetheUniversityServiceStatus = new HealthStatus(true, "", null);
         } catch (Exception ex){
             SystemStatus.GoetheUniversityServiceStatus = new HealthStatus(false, "Couldn't init the GoetheUniversityService", ex);
@@ -33,7 +38,17 @@ public class GoetheUniversityService {
         var url = baseUrl.replace("{ID}", documentId);
         metadataTitleInfo.setScrapedUrl(url);
 
-        var doc = Jsoup.connect(url).get();
+        HttpResponse<String> response;
+        try {
+            response = httpService.get(url, "text/html", Duration.ofSeconds(30));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while scraping the title info of " + documentId, ex);
+        }
+        if (response.statusCode() != 200)
+            throw new HttpStatusException("The title info returned an invalid status code: " + response.statusCode(), response.statusCode(), url);
+
+        var doc = Jsoup.parse(response.body(), url);
         var titleInfo = doc.select("table[id='titleInfoMetadata']");
 
         var title = titleInfo.select(".value, .title").select(".valueDiv").html();
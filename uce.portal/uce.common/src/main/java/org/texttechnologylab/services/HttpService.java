@@ -0,0 +1,186 @@
+package org.texttechnologylab.services;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.texttechnologylab.config.CommonConfig;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The one HTTP client that all outbound calls of the services go through (RAG webserver, Fuseki, Gbif, ...).
+ * Building a new client per request throws away the connection pool, TLS sessions and HTTP/2 multiplexing and
+ * leaks selector threads under load, so there is only this single, long living one.
+ * <p>
+ * Every host may only have http.client.max.per.host requests in flight, so e.g. thousands of postprocessing
+ * tasks can't overrun the RAG webserver. The latency of every call is recorded per host.
+ */
+public class HttpService {
+    private static final Logger logger = LogManager.getLogger(HttpService.class);
+
+    private final HttpClient httpClient;
+    private final ExecutorService executor;
+    // Async calls wait for their host slot here, since blocking the client's own threads could deadlock it.
+    private final ExecutorService limitExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final int maxRequestsPerHost;
+    private final ConcurrentHashMap<String, Semaphore> hostLimits = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, HostStats> hostStats = new ConcurrentHashMap<>();
+
+    public HttpService() {
+        var config = new CommonConfig();
+        this.maxRequestsPerHost = Math.max(config.getHttpClientMaxRequestsPerHost(), 1);
+
+        // The JDK client only reads this once, so it has to be set before the first client is built.
+        if (System.getProperty("jdk.httpclient.keepalive.timeout") == null)
+            System.setProperty("jdk.httpclient.keepalive.timeout", Long.toString(config.getHttpClientKeepAliveSeconds()));
+
+        var threadCounter = new AtomicInteger(0);
+        this.executor = Executors.newFixedThreadPool(Math.max(config.getHttpClientThreads(), 1), runnable -> {
+            var thread = new Thread(runnable, "uce-http-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofSeconds(config.getHttpClientConnectTimeoutSeconds()))
+                .executor(executor)
+                .build();
+    }
+
+    /**
+     * Sends the request and blocks until the response is there, or until the host has a free slot to begin with.
+     */
+    public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) throws IOException, InterruptedException {
+        var host = getHost(request.uri());
+        var limit = getHostLimit(host);
+        limit.acquire();
+        var start = System.nanoTime();
+        var failed = true;
+        try {
+            var response = httpClient.send(request, bodyHandler);
+            failed = response.statusCode() >= 400;
+            return response;
+        } finally {
+            limit.release();
+            record(host, start, failed);
+        }
+    }
+
+    /**
+     * Like {@link #send(HttpRequest, HttpResponse.BodyHandler)}, but doesn't block the caller. The request is only
+     * sent once the host has a free slot.
+     */
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) {
+        var host = getHost(request.uri());
+        var limit = getHostLimit(host);
+        return CompletableFuture.runAsync(() -> {
+            try {
+                limit.acquire();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(ex);
+            }
+        }, limitExecutor).thenCompose(ignored -> {
+            var start = System.nanoTime();
+            try {
+                return httpClient.sendAsync(request, bodyHandler).whenComplete((response, ex) -> {
+                    limit.release();
+                    record(host, start, ex != null || response.statusCode() >= 400);
+                });
+            } catch (RuntimeException ex) {
+                limit.release();
+                throw ex;
+            }
+        });
+    }
+
+    /**
+     * GETs the given url as a string, e.g. for scraping or simple REST APIs.
+     */
+    public HttpResponse<String> get(String url, String accept, Duration timeout) throws IOException, InterruptedException {
+        var request = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .header("Accept", accept)
+                .timeout(timeout)
+                .GET()
+                .build();
+        return send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * The latency statistics of all hosts that were called so far.
+     */
+    public Map<String, HostStats> getHostStats() {
+        return Map.copyOf(hostStats);
+    }
+
+    public void shutdown() {
+        limitExecutor.shutdown();
+        executor.shutdown();
+    }
+
+    private Semaphore getHostLimit(String host) {
+        return hostLimits.computeIfAbsent(host, h -> new Semaphore(maxRequestsPerHost, true));
+    }
+
+    private void record(String host, long startNanos, boolean failed) {
+        var durationNanos = System.nanoTime() - startNanos;
+        hostStats.computeIfAbsent(host, h -> new HostStats()).record(durationNanos, failed);
+        if (logger.isDebugEnabled())
+            logger.debug("HTTP call to " + host + " took " + TimeUnit.NANOSECONDS.toMillis(durationNanos) + "ms" + (failed ? " and failed." : "."));
+    }
+
+    private static String getHost(URI uri) {
+        return uri.getPort() == -1 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+    }
+
+    /**
+     * The calls, failures and latencies of a single host.
+     */
+    public static class HostStats {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        private void record(long durationNanos, boolean failed) {
+            calls.increment();
+            if (failed) failures.increment();
+            totalNanos.add(durationNanos);
+            maxNanos.accumulate(durationNanos);
+        }
+
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        public double getAverageMillis() {
+            var count = calls.sum();
+            return count == 0 ? 0 : totalNanos.sum() / (count * 1_000_000.0);
+        }
+
+        public double getMaxMillis() {
+            return maxNanos.get() / 1_000_000.0;
+        }
+
+        @Override
+        public String toString() {
+            return "calls=" + getCalls() + ", failures=" + getFailures()
+                    + ", avg=" + String.format("%.1f", getAverageMillis()) + "ms, max=" + String.format("%.1f", getMaxMillis()) + "ms";
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package org.texttechnologylab.services;
+
+import com.google.gson.Gson;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.texttechnologylab.config.CommonConfig;
+import org.texttechnologylab.models.imp.ImportLog;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Stores the ImportLogs of the imports in batches. Appending a log never waits on the database: the logs are buffered
+ * and a background thread stores them once a batch is full or the flush interval passed. If the buffer is full
+ * because the database can't keep up, or a batch couldn't be stored, the logs are appended to a local spill file
+ * instead, which is stored later on once the database is idle again.
+ */
+public class ImportLogWriter {
+    private static final Logger logger = LogManager.getLogger(ImportLogWriter.class);
+    private static final Gson gson = new Gson();
+    private static final long REPLAY_RETRY_MILLIS = 30_000;
+
+    private final PostgresqlDataInterface_Impl db;
+    private final BlockingQueue<ImportLog> buffer;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final Path spillFile;
+    private final Path replayFile;
+    private final Object writeLock = new Object();
+    private final Object spillLock = new Object();
+    private final AtomicBoolean running = new AtomicBoolean(true);
+    private final Thread writer;
+    private long nextReplayAt = 0;
+
+    public ImportLogWriter(PostgresqlDataInterface_Impl db) {
+        this.db = db;
+        var config = new CommonConfig();
+        this.buffer = new ArrayBlockingQueue<>(Math.max(config.getImportLogBufferSize(), 1));
+        this.batchSize = Math.max(config.getImportLogBatchSize(), 1);
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(config.getImportLogFlushIntervalMillis(), 1));
+        this.spillFile = Path.of(config.getImportLogSpillFile());
+        this.replayFile = Path.of(config.getImportLogSpillFile() + ".replay");
+
+        this.writer = new Thread(this::run, "uce-importlog-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+        // The writer is a daemon, so we store what's left ourselves when the process ends.
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "uce-importlog-shutdown"));
+    }
+
+    /**
+     * Buffers the log to be stored and returns right away.
+     */
+    public void append(ImportLog importLog) {
+        if (running.get() && buffer.offer(importLog)) return;
+        // The database doesn't keep up, so this one goes to the spill file.
+        spill(List.of(importLog));
+    }
+
+    /**
+     * Stores all logs that are buffered right now, e.g. once an import is done.
+     */
+    public void flush() {
+        var batch = new ArrayList<ImportLog>(batchSize);
+        while (buffer.drainTo(batch, batchSize) > 0) {
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Stops the writer and stores what's left. Logs that are appended afterwards go straight to the spill file.
+     */
+    public void shutdown() {
+        if (!running.compareAndSet(true, false)) return;
+        try {
+            writer.join(TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos) + 10_000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    public int getBufferedCount() {
+        return buffer.size();
+    }
+
+    private void run() {
+        var batch = new ArrayList<ImportLog>(batchSize);
+        while (running.get()) {
+            try {
+                var deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < batchSize) {
+                    var remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) break;
+                    var importLog = buffer.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (importLog == null) break;
+                    batch.add(importLog);
+                    buffer.drainTo(batch, batchSize - batch.size());
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            if (!batch.isEmpty()) {
+                write(batch);
+                batch.clear();
+            } else {
+                // Nothing to do right now, a good time to store what was spilled earlier.
+                replaySpilled();
+            }
+        }
+        if (!batch.isEmpty()) write(batch);
+    }
+
+    private void write(List<ImportLog> batch) {
+        synchronized (writeLock) {
+            try {
+                db.saveImportLogs(batch);
+            } catch (Exception ex) {
+                logger.warn("Couldn't store " + batch.size() + " import logs, appending them to " + spillFile + " instead.", ex);
+                spill(batch);
+            }
+        }
+    }
+
+    private void spill(List<ImportLog> importLogs) {
+        synchronized (spillLock) {
+            try (var out = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (var importLog : importLogs) {
+                    out.write(gson.toJson(importLog));
+                    out.newLine();
+                }
+            } catch (IOException ex) {
+                logger.error("Couldn't spill " + importLogs.size() + " import logs to " + spillFile + ", they are lost.", ex);
+            }
+        }
+    }
+
+    /**
+     * Stores the spilled logs. They are moved aside first, so logs spilled in the meantime don't get mixed up with
+     * them. If storing them fails, we try again later; a batch may then be stored twice.
+     */
+    private void replaySpilled() {
+        if (System.currentTimeMillis() < nextReplayAt) return;
+        synchronized (writeLock) {
+            try {
+                synchronized (spillLock) {
+                    if (!Files.exists(replayFile)) {
+                        if (!Files.exists(spillFile)) return;
+                        Files.move(spillFile, replayFile, StandardCopyOption.ATOMIC_MOVE);
+                    }
+                }
+
+                var batch = new ArrayList<ImportLog>(batchSize);
+                var replayed = 0;
+                try (var lines = Files.newBufferedReader(replayFile, StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = lines.readLine()) != null) {
+                        if (line.isBlank()) continue;
+                        batch.add(gson.fromJson(line, ImportLog.class));
+                        if (batch.size() >= batchSize) {
+                            db.saveImportLogs(batch);
+                            replayed += batch.size();
+                            batch.clear();
+                        }
+                    }
+                }
+                if (!batch.isEmpty()) db.saveImportLogs(batch);
+                replayed += batch.size();
+                Files.delete(replayFile);
+                logger.info("Stored " + replayed + " spilled import logs.");
+            } catch (Exception ex) {
+                logger.warn("Couldn't store the spilled import logs of " + replayFile + ", trying again later.", ex);
+                nextReplayAt = System.currentTimeMillis() + REPLAY_RETRY_MILLIS;
+            }
+        }
+    }
+}
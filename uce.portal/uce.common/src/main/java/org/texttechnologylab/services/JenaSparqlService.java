@@ -14,14 +14,17 @@ import org.texttechnologylab.utils.RDFNodeDtoJsonDeserializer;
 import org.texttechnologylab.utils.StringUtils;
 import org.texttechnologylab.utils.SystemStatus;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.*;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 /**
  * UPDATE 12-2024: I completely replaced the org.apache.jena.rdfconnection imports and libraries as they were
@@ -32,13 +35,15 @@ import java.util.List;
 public class JenaSparqlService {
 
     private final CommonConfig config = new CommonConfig();
+    private final HttpService httpService;
 
     /**
      * Initializes the service like setting the default connection url. Service has to be initialized before it can be used.
      *
      * @return
      */
-    public JenaSparqlService() {
+    public JenaSparqlService(HttpService httpService) {
+        this.httpService = httpService;
         TestConnection();
     }
 
@@ -90,6 +95,33 @@ public class JenaSparqlService {
                 .toList();
     }
 
+    /**
+     * Like {@link #queryBySubject(String)}, but for many subjects in one VALUES query. Returns the triplets grouped
+     * by their subject; subjects without any triplets are missing from the map.
+     */
+    public Map<String, List<RDFNodeDto>> queryBySubjects(Collection<String> subs) throws IOException {
+        var nodesBySubject = new HashMap<String, List<RDFNodeDto>>();
+        if (!SystemStatus.JenaSparqlStatus.isAlive() || subs.isEmpty()) {
+            return nodesBySubject;
+        }
+
+        var command = "SELECT ?subject ?predicate ?object " +
+                "WHERE { " +
+                "  VALUES ?subject { {SUBS} } " +
+                "  ?subject ?predicate ?object . " +
+                "}";
+        command = command.replace("{SUBS}", String.join("\n", subs.stream().map(s -> "<" + s.trim() + ">").distinct().toList()));
+        var result = executeCommand(command, RDFSelectQueryDto.class);
+        if (result == null || result.getResults() == null || result.getResults().getBindings() == null)
+            return nodesBySubject;
+
+        for (var node : result.getResults().getBindings()) {
+            if (node.getSubject() == null || node.getPredicate().getValue().contains("www.w3.org")) continue;
+            nodesBySubject.computeIfAbsent(node.getSubject().getValue(), s -> new ArrayList<>()).add(node);
+        }
+        return nodesBySubject;
+    }
+
     /**
      * Given an upper taxonomic rank such as class, genus, phylum etc., fetches all species of that and returns their names.
      */
@@ -189,33 +221,21 @@ public class JenaSparqlService {
                 + config.getSparqlEndpoint()
                 + "?query="
                 + URLEncoder.encode(command, StandardCharsets.UTF_8);
-        var url = new URL(endPoint);
-        var conn = (HttpURLConnection) url.openConnection();
+        HttpResponse<String> response;
         try {
-            conn.setRequestMethod("GET");
-            conn.setRequestProperty("Accept", "application/json");
-
-            int responseCode = conn.getResponseCode();
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                // Parse the returned json
-                try (var reader = new BufferedReader(new InputStreamReader(conn.getInputStream()))) {
-                    StringBuilder response = new StringBuilder();
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        response.append(line);
-                    }
-
-                    var gson = new GsonBuilder()
-                            .registerTypeAdapter(RDFNodeDto.class, new RDFNodeDtoJsonDeserializer())
-                            .create();
-                    return gson.fromJson(response.toString(), clazz);
-                }
-            } else {
-                throw new HttpStatusException("Fuseki server returned error status: ", responseCode, endPoint);
-            }
-        } finally {
-            conn.disconnect();
+            response = httpService.get(endPoint, "application/json", Duration.ofSeconds(60));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while querying the Fuseki server.", ex);
         }
+        if (response.statusCode() != 200)
+            throw new HttpStatusException("Fuseki server returned error status: ", response.statusCode(), endPoint);
+
+        // Parse the returned json
+        var gson = new GsonBuilder()
+                .registerTypeAdapter(RDFNodeDto.class, new RDFNodeDtoJsonDeserializer())
+                .create();
+        return gson.fromJson(response.body(), clazz);
     }
 
     /**
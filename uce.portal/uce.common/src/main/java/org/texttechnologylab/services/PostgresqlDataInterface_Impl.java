@@ -9,11 +9,15 @@ import org.springframework.stereotype.Service;
 import org.texttechnologylab.annotations.Searchable;
 import org.texttechnologylab.config.HibernateConf;
 import org.texttechnologylab.exceptions.DatabaseOperationException;
+import org.texttechnologylab.models.UIMAAnnotation;
 import org.texttechnologylab.models.corpus.*;
 import org.texttechnologylab.models.dto.UCEMetadataFilterDto;
 import org.texttechnologylab.models.gbif.GbifOccurrence;
 import org.texttechnologylab.models.globe.GlobeTaxon;
 import org.texttechnologylab.models.imp.ImportLog;
+import org.texttechnologylab.models.imp.ImportManifestEntry;
+import org.texttechnologylab.models.imp.ImportWorkItem;
+import org.texttechnologylab.models.imp.ImportWorkStatus;
 import org.texttechnologylab.models.imp.UCEImport;
 import org.texttechnologylab.models.search.*;
 import org.texttechnologylab.models.util.HealthStatus;
@@ -27,6 +31,7 @@ import java.nio.file.Paths;
 import java.sql.Array;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.util.*;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -34,6 +39,10 @@ import java.util.stream.Collectors;
 @Service
 public class PostgresqlDataInterface_Impl implements DataInterface {
 
+    // The instances of a distributed import may run on machines whose clocks differ, so the leases go by the clock
+    // of the database, in epoch millis.
+    private static final String DB_NOW_MILLIS = "(extract(epoch from clock_timestamp()) * 1000)::bigint";
+
     private final SessionFactory sessionFactory;
 
     private final Gson gson = new Gson();
@@ -208,6 +217,71 @@ public class PostgresqlDataInterface_Impl implements DataInterface {
         });
     }
 
+    public List<Long> claimDocumentIdsForCorpusPostProcessing(long corpusId, int limit) throws DatabaseOperationException {
+        return executeOperationSafely((session) -> session.doReturningWork((connection) -> {
+            // Locking the corpus row serializes the claims of concurrent runs.
+            long watermark;
+            try (var stmt = connection.prepareStatement("SELECT postprocessingwatermark FROM corpus WHERE id = ? FOR UPDATE")) {
+                stmt.setLong(1, corpusId);
+                try (var result = stmt.executeQuery()) {
+                    watermark = result.next() ? result.getLong(1) : 0;
+                }
+            }
+
+            var documentIds = new ArrayList<Long>();
+            try (var stmt = connection.prepareStatement(
+                    "SELECT id FROM document WHERE corpusid = ? AND postprocessed = false AND id > ? " +
+                            "AND EXISTS (SELECT 1 FROM documentembeddings e WHERE e.document_id = document.id) ORDER BY id LIMIT ?")) {
+                stmt.setLong(1, corpusId);
+                stmt.setLong(2, watermark);
+                stmt.setInt(3, limit);
+                try (var result = stmt.executeQuery()) {
+                    while (result.next()) documentIds.add(result.getLong(1));
+                }
+            }
+            if (documentIds.isEmpty()) return documentIds;
+
+            try (var stmt = connection.prepareStatement("UPDATE corpus SET postprocessingwatermark = ? WHERE id = ?")) {
+                stmt.setLong(1, documentIds.getLast());
+                stmt.setLong(2, corpusId);
+                stmt.executeUpdate();
+            }
+            return documentIds;
+        }));
+    }
+
+    public List<Long> getSkippedNonePostprocessedDocumentIds(long corpusId, long afterId, int limit) throws DatabaseOperationException {
+        return executeOperationSafely((session) -> session.doReturningWork((connection) -> {
+            var documentIds = new ArrayList<Long>();
+            // A NULL limit is no limit at all.
+            try (var stmt = connection.prepareStatement(
+                    "SELECT d.id FROM document d JOIN corpus c ON c.id = d.corpusid " +
+                            "WHERE d.corpusid = ? AND d.id > ? AND d.postprocessed = false AND d.id <= COALESCE(c.postprocessingwatermark, 0) " +
+                            "AND EXISTS (SELECT 1 FROM documentembeddings e WHERE e.document_id = d.id) ORDER BY d.id LIMIT ?")) {
+                stmt.setLong(1, corpusId);
+                stmt.setLong(2, afterId);
+                stmt.setObject(3, limit > 0 ? limit : null, Types.INTEGER);
+                try (var result = stmt.executeQuery()) {
+                    while (result.next()) documentIds.add(result.getLong(1));
+                }
+            }
+            return documentIds;
+        }));
+    }
+
+    public void markDocumentsAsPostProcessed(List<Long> documentIds) throws DatabaseOperationException {
+        if (documentIds.isEmpty()) return;
+        executeOperationSafely((session) -> {
+            session.doWork(connection -> {
+                try (var stmt = connection.prepareStatement("UPDATE document SET postprocessed = true WHERE id = ANY(?)")) {
+                    stmt.setArray(1, connection.createArrayOf("bigint", documentIds.toArray()));
+                    stmt.executeUpdate();
+                }
+            });
+            return null;
+        });
+    }
+
     public Corpus getCorpusById(long id) throws DatabaseOperationException {
         return executeOperationSafely((session) -> {
             return session.get(Corpus.class, id);
@@ -677,6 +751,33 @@ public class PostgresqlDataInterface_Impl implements DataInterface {
         });
     }
 
+    public int saveGbifOccurrencesOfNewTaxa(Map<Long, List<GbifOccurrence>> occurrencesByTaxonId) throws DatabaseOperationException {
+        return executeOperationSafely((session) -> {
+            var saved = 0;
+            // Locking the taxa in order, so two transactions can't deadlock on each other's locks.
+            for (var entry : new TreeMap<>(occurrencesByTaxonId).entrySet()) {
+                var isNew = session.doReturningWork((connection) -> {
+                    // Concurrent writers of the same taxon wait here until this transaction is done, so the check below
+                    // can't race, not even between importer instances.
+                    try (var stmt = connection.prepareStatement("SELECT pg_advisory_xact_lock(?)")) {
+                        stmt.setLong(1, entry.getKey());
+                        stmt.execute();
+                    }
+                    try (var stmt = connection.prepareStatement("SELECT EXISTS (SELECT 1 FROM gbifoccurrence WHERE gbiftaxonid = ?)")) {
+                        stmt.setLong(1, entry.getKey());
+                        try (var result = stmt.executeQuery()) {
+                            return !(result.next() && result.getBoolean(1));
+                        }
+                    }
+                });
+                if (!isNew) continue;
+                for (var occurrence : entry.getValue()) session.save(occurrence);
+                saved += entry.getValue().size();
+            }
+            return saved;
+        });
+    }
+
     public Document getCompleteDocumentById(long id, int skipPages, int pageLimit) throws DatabaseOperationException {
         return executeOperationSafely((session) -> {
             var doc = session.get(Document.class, id);
@@ -703,6 +804,156 @@ public class PostgresqlDataInterface_Impl implements DataInterface {
         });
     }
 
+    public void addUceImportCounters(String importId, long storedDocuments, long failedDocuments,
+                                     long postProcessedDocuments, long importedBytes) throws DatabaseOperationException {
+        executeOperationSafely((session) -> {
+            session.doWork(connection -> {
+                try (var stmt = connection.prepareStatement(
+                        "UPDATE uceimport SET storeddocuments = COALESCE(storeddocuments, 0) + ?, " +
+                                "faileddocuments = COALESCE(faileddocuments, 0) + ?, " +
+                                "postprocesseddocuments = COALESCE(postprocesseddocuments, 0) + ?, " +
+                                "importedbytes = COALESCE(importedbytes, 0) + ? " +
+                                "WHERE importid = ?")) {
+                    stmt.setLong(1, storedDocuments);
+                    stmt.setLong(2, failedDocuments);
+                    stmt.setLong(3, postProcessedDocuments);
+                    stmt.setLong(4, importedBytes);
+                    stmt.setString(5, importId);
+                    stmt.executeUpdate();
+                }
+            });
+            return null;
+        });
+    }
+
+    public List<ImportManifestEntry> getImportManifestEntriesByCorpusId(long corpusId) throws DatabaseOperationException {
+        return executeOperationSafely((session) -> {
+            var criteria = session.createCriteria(ImportManifestEntry.class);
+            criteria.add(Restrictions.eq("corpusId", corpusId));
+            return (List<ImportManifestEntry>) criteria.list();
+        });
+    }
+
+    public void saveOrUpdateImportManifestEntry(ImportManifestEntry entry) throws DatabaseOperationException {
+        executeOperationSafely((session) -> {
+            session.saveOrUpdate(entry);
+            return null;
+        });
+    }
+
+    public void insertImportWorkItems(List<ImportWorkItem> workItems) throws DatabaseOperationException {
+        executeOperationSafely((session) -> {
+            session.doWork(connection -> {
+                // Several instances may discover the same files, so existing ones are simply skipped.
+                try (var stmt = connection.prepareStatement(
+                        "INSERT INTO importworkitem (importid, filepath, filesize, status, leaseuntil, attempts) " +
+                                "VALUES (?, ?, ?, ?, 0, 0) ON CONFLICT (importid, filepath) DO NOTHING")) {
+                    var batched = 0;
+                    for (var item : workItems) {
+                        stmt.setString(1, item.getImportId());
+                        stmt.setString(2, item.getFilePath());
+                        stmt.setLong(3, item.getFileSize());
+                        stmt.setInt(4, ImportWorkStatus.PENDING.ordinal());
+                        stmt.addBatch();
+                        if (++batched % 1000 == 0) stmt.executeBatch();
+                    }
+                    stmt.executeBatch();
+                }
+            });
+            return null;
+        });
+    }
+
+    public List<ImportWorkItem> claimImportWorkItems(String importId, String claimedBy, int limit, long leaseMillis, int maxAttempts) throws DatabaseOperationException {
+        return executeOperationSafely((session) -> session.doReturningWork((connection) -> {
+            // Files whose lease expired too often likely crash the importers, so we give up on them.
+            try (var stmt = connection.prepareStatement(
+                    "UPDATE importworkitem SET status = ? " +
+                            "WHERE importid = ? AND status = ? AND leaseuntil < " + DB_NOW_MILLIS + " AND attempts >= ?")) {
+                stmt.setInt(1, ImportWorkStatus.FAILED.ordinal());
+                stmt.setString(2, importId);
+                stmt.setInt(3, ImportWorkStatus.CLAIMED.ordinal());
+                stmt.setInt(4, maxAttempts);
+                stmt.executeUpdate();
+            }
+
+            // SKIP LOCKED lets every instance claim its own batch without waiting on the others.
+            try (var stmt = connection.prepareStatement(
+                    "UPDATE importworkitem SET status = ?, claimedby = ?, leaseuntil = " + DB_NOW_MILLIS + " + ?, attempts = attempts + 1 " +
+                            "WHERE id IN (SELECT id FROM importworkitem " +
+                            "WHERE importid = ? AND (status = ? OR (status = ? AND leaseuntil < " + DB_NOW_MILLIS + ")) " +
+                            "ORDER BY filesize DESC LIMIT ? FOR UPDATE SKIP LOCKED) " +
+                            "RETURNING id, filepath, filesize, leaseuntil, attempts")) {
+                stmt.setInt(1, ImportWorkStatus.CLAIMED.ordinal());
+                stmt.setString(2, claimedBy);
+                stmt.setLong(3, leaseMillis);
+                stmt.setString(4, importId);
+                stmt.setInt(5, ImportWorkStatus.PENDING.ordinal());
+                stmt.setInt(6, ImportWorkStatus.CLAIMED.ordinal());
+                stmt.setInt(7, limit);
+
+                var claimed = new ArrayList<ImportWorkItem>();
+                try (var result = stmt.executeQuery()) {
+                    while (result.next()) {
+                        var item = new ImportWorkItem(importId, result.getString("filepath"), result.getLong("filesize"));
+                        item.setId(result.getLong("id"));
+                        item.setStatus(ImportWorkStatus.CLAIMED);
+                        item.setClaimedBy(claimedBy);
+                        item.setLeaseUntil(result.getLong("leaseuntil"));
+                        item.setAttempts(result.getInt("attempts"));
+                        claimed.add(item);
+                    }
+                }
+                claimed.sort(Comparator.comparingLong(ImportWorkItem::getFileSize).reversed());
+                return claimed;
+            }
+        }));
+    }
+
+    public void renewImportWorkItemLeases(String importId, String claimedBy, long leaseMillis) throws DatabaseOperationException {
+        executeOperationSafely((session) -> {
+            session.doWork(connection -> {
+                try (var stmt = connection.prepareStatement(
+                        "UPDATE importworkitem SET leaseuntil = " + DB_NOW_MILLIS + " + ? WHERE importid = ? AND claimedby = ? AND status = ?")) {
+                    stmt.setLong(1, leaseMillis);
+                    stmt.setString(2, importId);
+                    stmt.setString(3, claimedBy);
+                    stmt.setInt(4, ImportWorkStatus.CLAIMED.ordinal());
+                    stmt.executeUpdate();
+                }
+            });
+            return null;
+        });
+    }
+
+    public void updateImportWorkItemStatus(long id, ImportWorkStatus status) throws DatabaseOperationException {
+        executeOperationSafely((session) -> {
+            session.doWork(connection -> {
+                try (var stmt = connection.prepareStatement("UPDATE importworkitem SET status = ? WHERE id = ?")) {
+                    stmt.setInt(1, status.ordinal());
+                    stmt.setLong(2, id);
+                    stmt.executeUpdate();
+                }
+            });
+            return null;
+        });
+    }
+
+    public int countOpenImportWorkItems(String importId) throws DatabaseOperationException {
+        return executeOperationSafely((session) -> session.doReturningWork((connection) -> {
+            try (var stmt = connection.prepareStatement(
+                    "SELECT count(*) FROM importworkitem WHERE importid = ? AND status IN (?, ?)")) {
+                stmt.setString(1, importId);
+                stmt.setInt(2, ImportWorkStatus.PENDING.ordinal());
+                stmt.setInt(3, ImportWorkStatus.CLAIMED.ordinal());
+                try (var result = stmt.executeQuery()) {
+                    result.next();
+                    return result.getInt(1);
+                }
+            }
+        }));
+    }
+
     public void saveOrUpdateImportLog(ImportLog importLog) throws DatabaseOperationException {
         executeOperationSafely((session) -> {
             session.saveOrUpdate(importLog);
@@ -710,6 +961,31 @@ public class PostgresqlDataInterface_Impl implements DataInterface {
         });
     }
 
+    public void saveImportLogs(List<ImportLog> importLogs) throws DatabaseOperationException {
+        executeOperationSafely((session) -> {
+            session.doWork(connection -> {
+                try (var stmt = connection.prepareStatement(
+                        "INSERT INTO importlog (sender, message, created, status, duration, file, importid) " +
+                                "VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+                    var batched = 0;
+                    for (var importLog : importLogs) {
+                        stmt.setString(1, importLog.getSender());
+                        stmt.setString(2, importLog.getMessage());
+                        stmt.setObject(3, importLog.getCreated(), Types.BIGINT);
+                        stmt.setObject(4, importLog.getStatus() == null ? null : importLog.getStatus().ordinal(), Types.INTEGER);
+                        stmt.setLong(5, importLog.getDuration());
+                        stmt.setString(6, importLog.getFile());
+                        stmt.setString(7, importLog.getImportId());
+                        stmt.addBatch();
+                        if (++batched % 1000 == 0) stmt.executeBatch();
+                    }
+                    stmt.executeBatch();
+                }
+            });
+            return null;
+        });
+    }
+
     public void saveOrUpdateUCEMetadataFilter(UCEMetadataFilter filter) throws DatabaseOperationException {
         executeOperationSafely((session) -> {
             session.saveOrUpdate(filter);
@@ -717,6 +993,13 @@ public class PostgresqlDataInterface_Impl implements DataInterface {
         });
     }
 
+    public void saveOrUpdateUCEMetadataFilters(List<UCEMetadataFilter> filters) throws DatabaseOperationException {
+        executeOperationSafely((session) -> {
+            for (var filter : filters) session.saveOrUpdate(filter);
+            return null;
+        });
+    }
+
     public void saveUCEMetadataFilter(UCEMetadataFilter filter) throws DatabaseOperationException {
         executeOperationSafely((session) -> {
             session.save(filter);
@@ -731,6 +1014,57 @@ public class PostgresqlDataInterface_Impl implements DataInterface {
         });
     }
 
+    public void saveDocumentBulk(Document document) throws DatabaseOperationException {
+        executeOperationSafely((session) -> {
+            // Let hibernate only store the document and its metadata title info, the rest is written by us.
+            var pages = document.getPages();
+            var sentences = document.getSentences();
+            var namedEntities = document.getNamedEntities();
+            var lemmas = document.getLemmas();
+            var srLinks = document.getSrLinks();
+            var times = document.getTimes();
+            var taxons = document.getTaxons();
+            var biofidTaxons = document.getBiofidTaxons();
+            var uceMetadata = document.getUceMetadata();
+            var wikipediaLinks = document.getWikipediaLinks();
+            document.setPages(null);
+            document.setSentences(null);
+            document.setNamedEntities(null);
+            document.setLemmas(null);
+            document.setSrLinks(null);
+            document.setTimes(null);
+            document.setTaxons(null);
+            document.setBiofidTaxons(null);
+            document.setUceMetadata(null);
+            document.setWikipediaLinks(null);
+            try {
+                session.save(document);
+                session.flush();
+                session.evict(document);
+            } finally {
+                document.setPages(new ArrayList<>(pages));
+                document.setSentences(sentences);
+                document.setNamedEntities(namedEntities);
+                document.setLemmas(lemmas);
+                document.setSrLinks(srLinks);
+                document.setTimes(times);
+                document.setTaxons(taxons);
+                document.setBiofidTaxons(biofidTaxons);
+                document.setUceMetadata(uceMetadata);
+                document.setWikipediaLinks(wikipediaLinks);
+            }
+
+            session.doWork(connection -> {
+                try {
+                    new DocumentBulkWriter(connection).writeAnnotations(document);
+                } catch (IOException ex) {
+                    throw new SQLException("Couldn't copy the annotations of document " + document.getDocumentId(), ex);
+                }
+            });
+            return null;
+        });
+    }
+
     public void updateDocument(Document document) throws DatabaseOperationException {
         executeOperationSafely((session) -> {
             session.update(document);
@@ -819,10 +1153,15 @@ public class PostgresqlDataInterface_Impl implements DataInterface {
             Hibernate.initialize(page.getParagraphs());
             Hibernate.initialize(page.getLines());
             Hibernate.initialize(page.getPageTopicDistribution());
+            // Offset-only annotations don't store their covered text, they cut it out of the document's text.
+            UIMAAnnotation.bindDocumentText(page.getBlocks(), doc.getFullText());
+            UIMAAnnotation.bindDocumentText(page.getParagraphs(), doc.getFullText());
+            UIMAAnnotation.bindDocumentText(page.getLines(), doc.getFullText());
         }
 
         Hibernate.initialize(doc.getDocumentTopicDistribution());
         Hibernate.initialize(doc.getSentences());
+        UIMAAnnotation.bindDocumentText(doc.getSentences(), doc.getFullText());
         Hibernate.initialize(doc.getNamedEntities());
         Hibernate.initialize(doc.getTaxons());
         Hibernate.initialize(doc.getTimes());
@@ -3,12 +3,12 @@ package org.texttechnologylab.services;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.net.*;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.sql.*;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.google.gson.Gson;
 import com.pgvector.PGvector;
@@ -29,12 +29,18 @@ import org.texttechnologylab.utils.SystemStatus;
  * Service class for RAG: Retrieval Augmented Generation
  */
 public class RAGService {
+    private static final int BATCH_SIZE = 1000;
     private PostgresqlDataInterface_Impl postgresqlDataInterfaceImpl = null;
     private Connection vectorDbConnection = null;
+    // Guards the tsne staging table of the vector connection. A lock rather than a monitor, so the virtual
+    // threads of the postprocessing don't pin their carrier thread while they wait on the database.
+    private final ReentrantLock stagingLock = new ReentrantLock();
     private CommonConfig config;
+    private HttpService httpService;
 
-    public RAGService(PostgresqlDataInterface_Impl postgresqlDataInterfaceImpl) {
+    public RAGService(PostgresqlDataInterface_Impl postgresqlDataInterfaceImpl, HttpService httpService) {
         this.postgresqlDataInterfaceImpl = postgresqlDataInterfaceImpl;
+        this.httpService = httpService;
         TestConnection();
     }
 
@@ -63,10 +69,6 @@ public class RAGService {
             InvocationTargetException,
             InstantiationException,
             IllegalAccessException {
-        var httpClient = HttpClient.newBuilder()
-                .version(HttpClient.Version.HTTP_2)
-                .build();
-
         var url = config.getRAGWebserverBaseUrl() + "topic-modelling";
 
         // Prepare workload
@@ -83,7 +85,7 @@ public class RAGService {
                 .build();
 
         // Send request and get response
-        var response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        var response = httpService.send(request, HttpResponse.BodyHandlers.ofString());
         var statusCode = response.statusCode();
         if (statusCode != 200) throw new HttpStatusException("Request returned invalid status code: " + statusCode, statusCode, url);
 
@@ -120,10 +122,6 @@ public class RAGService {
      * @return
      */
     public String getCorpusTsnePlot(long corpusId) throws DatabaseOperationException, URISyntaxException, IOException, InterruptedException, SQLException {
-        var httpClient = HttpClient.newBuilder()
-                .version(HttpClient.Version.HTTP_2)
-                .build();
-
         var url = config.getRAGWebserverBaseUrl() + "plot/tsne";
 
         // Prepare workload
@@ -165,7 +163,7 @@ public class RAGService {
                 .build();
 
         // Send request and get response
-        var response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        var response = httpService.send(request, HttpResponse.BodyHandlers.ofString());
         var statusCode = response.statusCode();
         if (statusCode != 200) throw new HttpStatusException("Request returned invalid status code: " + statusCode, statusCode, url);
 
@@ -183,10 +181,6 @@ public class RAGService {
      * @return
      */
     public Integer postRAGContextNeeded(String userInput) throws URISyntaxException, IOException, InterruptedException {
-        var httpClient = HttpClient.newBuilder()
-                .version(HttpClient.Version.HTTP_2)
-                .build();
-
         var url = config.getRAGWebserverBaseUrl() + "rag/context";
 
         // Prepare workload
@@ -205,7 +199,7 @@ public class RAGService {
                 .POST(HttpRequest.BodyPublishers.ofString(jsonData))
                 .build();
         // Send request and get response
-        var response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        var response = httpService.send(request, HttpResponse.BodyHandlers.ofString());
         var statusCode = response.statusCode();
         if (statusCode != 200) throw new HttpStatusException("Request returned invalid status code: " + statusCode, statusCode, url);
 
@@ -223,10 +217,6 @@ public class RAGService {
      * @return
      */
     public String postNewRAGPrompt(List<RAGChatMessage> chatHistory) throws URISyntaxException, IOException, InterruptedException {
-        var httpClient = HttpClient.newBuilder()
-                .version(HttpClient.Version.HTTP_2)
-                .build();
-
         var url = config.getRAGWebserverBaseUrl() + "rag/complete";
         var config = new CommonConfig();
 
@@ -255,7 +245,7 @@ public class RAGService {
                 .POST(HttpRequest.BodyPublishers.ofString(jsonData))
                 .build();
         // Send request and get response
-        var response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        var response = httpService.send(request, HttpResponse.BodyHandlers.ofString());
         var statusCode = response.statusCode();
         if (statusCode != 200) throw new HttpStatusException("Request returned invalid status code: " + statusCode, statusCode, url);
 
@@ -279,12 +269,14 @@ public class RAGService {
                 + "WHERE d.corpusid = ? "
                 + "ORDER BY e.tsne3d <-> ? "
                 + "LIMIT ?";
-        var statement = vectorDbConnection.prepareStatement(query);
-        statement.setObject(1, corpusId);
-        statement.setObject(2, new PGvector(tsne3d));
-        statement.setInt(3, range);
-        var resultSet = statement.executeQuery();
-        return buildDocumentEmbeddingsFromResultSet(resultSet);
+        try (var statement = vectorDbConnection.prepareStatement(query)) {
+            statement.setObject(1, corpusId);
+            statement.setObject(2, new PGvector(tsne3d));
+            statement.setInt(3, range);
+            try (var resultSet = statement.executeQuery()) {
+                return buildDocumentEmbeddingsFromResultSet(resultSet);
+            }
+        }
     }
 
     /**
@@ -294,13 +286,15 @@ public class RAGService {
      */
     public DocumentEmbedding getDocumentEmbeddingOfDocument(long documentId) throws SQLException {
         var query = "SELECT * FROM documentembeddings WHERE document_id = ?";
-        var statement = vectorDbConnection.prepareStatement(query);
-        statement.setLong(1, documentId);
-        var resultSet = statement.executeQuery();
-        // We return the first found docucment embedding as there should be only one.
-        var embeddings = buildDocumentEmbeddingsFromResultSet(resultSet);
-        if (!embeddings.isEmpty()) return embeddings.stream().findFirst().get();
-        return null;
+        try (var statement = vectorDbConnection.prepareStatement(query)) {
+            statement.setLong(1, documentId);
+            try (var resultSet = statement.executeQuery()) {
+                // We return the first found docucment embedding as there should be only one.
+                var embeddings = buildDocumentEmbeddingsFromResultSet(resultSet);
+                if (!embeddings.isEmpty()) return embeddings.stream().findFirst().get();
+                return null;
+            }
+        }
     }
 
     /**
@@ -322,15 +316,16 @@ public class RAGService {
         queryBuilder.append(placeholders).append(")");
 
         var query = queryBuilder.toString();
-        var statement = vectorDbConnection.prepareStatement(query);
+        try (var statement = vectorDbConnection.prepareStatement(query)) {
+            // Set the document IDs in the prepared statement
+            for (int i = 0; i < documentIds.size(); i++) {
+                statement.setLong(i + 1, documentIds.get(i));
+            }
 
-        // Set the document IDs in the prepared statement
-        for (int i = 0; i < documentIds.size(); i++) {
-            statement.setLong(i + 1, documentIds.get(i));
+            try (var resultSet = statement.executeQuery()) {
+                embeddings = buildDocumentEmbeddingsFromResultSet(resultSet);
+            }
         }
-
-        var resultSet = statement.executeQuery();
-        embeddings = buildDocumentEmbeddingsFromResultSet(resultSet);
         return embeddings;
     }
 
@@ -356,10 +351,27 @@ public class RAGService {
      */
     public ArrayList<DocumentChunkEmbedding> getDocumentChunkEmbeddingsOfDocument(long documentId) throws SQLException {
         var query = "SELECT * FROM documentchunkembeddings WHERE document_id = ?";
-        var statement = vectorDbConnection.prepareStatement(query);
-        statement.setLong(1, documentId);
-        var resultSet = statement.executeQuery();
-        return buildDocumentChunkEmbeddingsFromResultSet(resultSet);
+        try (var statement = vectorDbConnection.prepareStatement(query)) {
+            statement.setLong(1, documentId);
+            try (var resultSet = statement.executeQuery()) {
+                return buildDocumentChunkEmbeddingsFromResultSet(resultSet);
+            }
+        }
+    }
+
+    /**
+     * Gets all embedding chunks of the given documents in a single query
+     */
+    public ArrayList<DocumentChunkEmbedding> getDocumentChunkEmbeddingsOfDocuments(List<Long> documentIds) throws SQLException {
+        if (documentIds == null || documentIds.isEmpty()) return new ArrayList<>();
+
+        var query = "SELECT * FROM documentchunkembeddings WHERE document_id = ANY(?)";
+        try (var statement = vectorDbConnection.prepareStatement(query)) {
+            statement.setArray(1, vectorDbConnection.createArrayOf("bigint", documentIds.toArray()));
+            try (var resultSet = statement.executeQuery()) {
+                return buildDocumentChunkEmbeddingsFromResultSet(resultSet);
+            }
+        }
     }
 
     /**
@@ -387,17 +399,20 @@ public class RAGService {
                     + "ORDER BY e.embedding <-> ? "
                     + "LIMIT ?";
         }
-        var statement = vectorDbConnection.prepareStatement(query);
-        if (corpusId == -1) {
-            statement.setObject(1, new PGvector(getEmbeddingForText(text)));
-            statement.setInt(2, range);
-        } else {
-            statement.setLong(1, corpusId);
-            statement.setObject(2, new PGvector(getEmbeddingForText(text)));
-            statement.setInt(3, range);
+        var embedding = new PGvector(getEmbeddingForText(text));
+        try (var statement = vectorDbConnection.prepareStatement(query)) {
+            if (corpusId == -1) {
+                statement.setObject(1, embedding);
+                statement.setInt(2, range);
+            } else {
+                statement.setLong(1, corpusId);
+                statement.setObject(2, embedding);
+                statement.setInt(3, range);
+            }
+            try (var resultSet = statement.executeQuery()) {
+                return buildDocumentChunkEmbeddingsFromResultSet(resultSet);
+            }
         }
-        var resultSet = statement.executeQuery();
-        return buildDocumentChunkEmbeddingsFromResultSet(resultSet);
     }
 
     private ArrayList<DocumentChunkEmbedding> buildDocumentChunkEmbeddingsFromResultSet(ResultSet resultSet) throws SQLException {
@@ -489,6 +504,85 @@ public class RAGService {
                 new PGvector(documentChunkEmbedding.getTsne3D()));
     }
 
+    /**
+     * Saves many document chunk embeddings through a single batched statement.
+     */
+    public void saveDocumentChunkEmbeddings(List<DocumentChunkEmbedding> documentChunkEmbeddings) throws SQLException {
+        if (documentChunkEmbeddings.isEmpty()) return;
+        String query = "INSERT INTO documentchunkembeddings (document_id, embedding, coveredtext, beginn, endd, tsne2d, tsne3d) VALUES (?, ?, ?, ?, ?, ?, ?)";
+        try (var statement = vectorDbConnection.prepareStatement(query)) {
+            var batched = 0;
+            for (var chunkEmbedding : documentChunkEmbeddings) {
+                statement.setLong(1, chunkEmbedding.getDocument_id());
+                statement.setObject(2, new PGvector(chunkEmbedding.getEmbedding()));
+                statement.setString(3, chunkEmbedding.getCoveredText());
+                statement.setInt(4, chunkEmbedding.getBegin());
+                statement.setInt(5, chunkEmbedding.getEnd());
+                statement.setObject(6, new PGvector(chunkEmbedding.getTsne2D()));
+                statement.setObject(7, new PGvector(chunkEmbedding.getTsne3D()));
+                statement.addBatch();
+                if (++batched % BATCH_SIZE == 0) statement.executeBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    /**
+     * Updates the tsne coordinates of many document chunk embeddings at once.
+     */
+    public void updateDocumentChunkEmbeddingsTsne(List<DocumentChunkEmbedding> documentChunkEmbeddings) throws SQLException {
+        var rows = documentChunkEmbeddings.stream()
+                .map(e -> new TsneRow(e.getId(), e.getTsne2D(), e.getTsne3D()))
+                .toList();
+        updateTsneThroughStaging("documentchunkembeddings", "id", rows);
+    }
+
+    /**
+     * Updates the tsne coordinates of many document embeddings at once.
+     */
+    public void updateDocumentEmbeddingsTsne(List<DocumentEmbedding> documentEmbeddings) throws SQLException {
+        var rows = documentEmbeddings.stream()
+                .map(e -> new TsneRow(e.getDocument_id(), e.getTsne2d(), e.getTsne3d()))
+                .toList();
+        updateTsneThroughStaging("documentembeddings", "document_id", rows);
+    }
+
+    /**
+     * Writes the coordinates into a temporary staging table with a batched insert and applies them with a single
+     * UPDATE ... FROM, instead of one UPDATE per row. The staging table lives in the session of the shared
+     * vector connection, so only one of these may run on it at a time. Other statements on the connection
+     * keep running in autocommit, so we don't open a transaction around it.
+     */
+    private void updateTsneThroughStaging(String table, String keyColumn, List<TsneRow> rows) throws SQLException {
+        if (rows.isEmpty()) return;
+        stagingLock.lock();
+        try (var setupStatement = vectorDbConnection.createStatement()) {
+            setupStatement.execute("CREATE TEMP TABLE IF NOT EXISTS tsne_staging (target_id bigint, tsne2d vector, tsne3d vector)");
+            setupStatement.execute("TRUNCATE tsne_staging");
+
+            try (var insertStatement = vectorDbConnection.prepareStatement("INSERT INTO tsne_staging (target_id, tsne2d, tsne3d) VALUES (?, ?, ?)")) {
+                var batched = 0;
+                for (var row : rows) {
+                    insertStatement.setLong(1, row.key());
+                    insertStatement.setObject(2, new PGvector(row.tsne2d()));
+                    insertStatement.setObject(3, new PGvector(row.tsne3d()));
+                    insertStatement.addBatch();
+                    if (++batched % BATCH_SIZE == 0) insertStatement.executeBatch();
+                }
+                insertStatement.executeBatch();
+            }
+
+            setupStatement.executeUpdate("UPDATE " + table + " t SET tsne2d = s.tsne2d, tsne3d = s.tsne3d " +
+                    "FROM tsne_staging s WHERE t." + keyColumn + " = s.target_id");
+            setupStatement.execute("TRUNCATE tsne_staging");
+        } finally {
+            stagingLock.unlock();
+        }
+    }
+
+    private record TsneRow(long key, float[] tsne2d, float[] tsne3d) {
+    }
+
     /**
      * Updates a document chunk embedding.
      */
@@ -509,20 +603,21 @@ public class RAGService {
      *
      */
     private void executeUpdate(String query, Object... params) throws SQLException {
-        var statement = vectorDbConnection.prepareStatement(query);
-        for (int i = 0; i < params.length; i++) {
-            if (params[i] instanceof PGvector) {
-                statement.setObject(i + 1, params[i]);
-            } else if (params[i] instanceof String) {
-                statement.setString(i + 1, (String) params[i]);
-            } else if (params[i] instanceof Integer) {
-                statement.setInt(i + 1, (Integer) params[i]);
-            } else if (params[i] instanceof Long) {
-                statement.setLong(i + 1, (Long) params[i]);
+        try (var statement = vectorDbConnection.prepareStatement(query)) {
+            for (int i = 0; i < params.length; i++) {
+                if (params[i] instanceof PGvector) {
+                    statement.setObject(i + 1, params[i]);
+                } else if (params[i] instanceof String) {
+                    statement.setString(i + 1, (String) params[i]);
+                } else if (params[i] instanceof Integer) {
+                    statement.setInt(i + 1, (Integer) params[i]);
+                } else if (params[i] instanceof Long) {
+                    statement.setLong(i + 1, (Long) params[i]);
+                }
+                // Add other types as needed
             }
-            // Add other types as needed
+            statement.executeUpdate();
         }
-        statement.executeUpdate();
     }
 
     /**
@@ -544,10 +639,10 @@ public class RAGService {
     public List<DocumentChunkEmbedding> getCompleteEmbeddingChunksFromDocument(Document document) throws IOException, URISyntaxException, InterruptedException {
         // We also make an embedding from the title
         var emptyEmbeddings = getEmptyEmbeddingChunksFromText(document.getDocumentTitle() + " " + document.getFullText(), 900);
-        for (var empty : emptyEmbeddings) {
-            var embeddings = getEmbeddingForText(empty.getCoveredText());
-            empty.setEmbedding(embeddings);
-            empty.setDocument_id(document.getId());
+        var embeddings = getEmbeddingsForTexts(emptyEmbeddings.stream().map(DocumentChunkEmbedding::getCoveredText).toList());
+        for (var i = 0; i < emptyEmbeddings.size(); i++) {
+            emptyEmbeddings.get(i).setEmbedding(embeddings.get(i));
+            emptyEmbeddings.get(i).setDocument_id(document.getId());
         }
         return emptyEmbeddings;
     }
@@ -556,10 +651,6 @@ public class RAGService {
      * A function that reduces the vector embeddings into 2D and 3D embeddings through tsne on our webserver.
      */
     public EmbeddingReduceDto getEmbeddingDimensionReductions(List<float[]> embeddings) throws IOException, InterruptedException, URISyntaxException {
-        var httpClient = HttpClient.newBuilder()
-                .version(HttpClient.Version.HTTP_2)
-                .build();
-
         var url = config.getRAGWebserverBaseUrl() + "embed/reduce";
 
         // Prepare workload
@@ -575,7 +666,7 @@ public class RAGService {
                 .POST(HttpRequest.BodyPublishers.ofString(jsonData))
                 .build();
         // Send request and get response
-        var response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        var response = httpService.send(request, HttpResponse.BodyHandlers.ofString());
         var statusCode = response.statusCode();
         if (statusCode != 200) throw new HttpStatusException("Request returned invalid status code: " + statusCode, statusCode, url);
 
@@ -591,10 +682,6 @@ public class RAGService {
      * A function that fetches the vector embeddings of a given text through our python webserver
      */
     public float[] getEmbeddingForText(String text) throws IOException, InterruptedException, URISyntaxException {
-        var httpClient = HttpClient.newBuilder()
-                .version(HttpClient.Version.HTTP_2)
-                .build();
-
         var url = config.getRAGWebserverBaseUrl() + "embed";
 
         // Prepare workload
@@ -613,7 +700,7 @@ public class RAGService {
                 .build();
 
         // Send request and get response
-        var response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        var response = httpService.send(request, HttpResponse.BodyHandlers.ofString());
         var statusCode = response.statusCode();
         if (statusCode != 200) throw new HttpStatusException("Request returned invalid status code: " + statusCode, statusCode, url);
 
@@ -625,6 +712,53 @@ public class RAGService {
         return ragEmbedDto.getMessage();
     }
 
+    /**
+     * Fetches the vector embeddings of many texts through our python webserver. The texts are sent in batches of
+     * rag.embed.batch.size, so a large document doesn't cost a round trip per chunk. The embeddings are returned
+     * in the order of the texts.
+     */
+    public List<float[]> getEmbeddingsForTexts(List<String> texts) throws IOException, InterruptedException, URISyntaxException {
+        var embeddings = new ArrayList<float[]>(texts.size());
+        if (texts.isEmpty()) return embeddings;
+
+        var url = config.getRAGWebserverBaseUrl() + "embed";
+        var batchSize = Math.max(config.getRAGEmbedBatchSize(), 1);
+        var gson = new Gson();
+
+        for (var start = 0; start < texts.size(); start += batchSize) {
+            var batch = texts.subList(start, Math.min(start + batchSize, texts.size()));
+
+            // Prepare workload
+            var params = new HashMap<String, Object>();
+            params.put("texts", batch);
+            var jsonData = gson.toJson(params);
+
+            // Create request. A batch takes longer than a single text, so the timeout grows with it.
+            var request = HttpRequest
+                    .newBuilder()
+                    .uri(new URI(url))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(jsonData))
+                    .timeout(Duration.ofSeconds(2 + batch.size()))
+                    .build();
+
+            // Send request and get response
+            var response = httpService.send(request, HttpResponse.BodyHandlers.ofString());
+            var statusCode = response.statusCode();
+            if (statusCode != 200) throw new HttpStatusException("Request returned invalid status code: " + statusCode, statusCode, url);
+
+            var ragBatchEmbedDto = gson.fromJson(response.body(), RAGBatchEmbedDto.class);
+            if (ragBatchEmbedDto.getStatus() != 200) throw new HttpStatusException(
+                    "Webservice replied with an internally wrong status code, something went wrong there: " + ragBatchEmbedDto.getStatus(), statusCode, url);
+            if (ragBatchEmbedDto.getMessage() == null || ragBatchEmbedDto.getMessage().length != batch.size())
+                throw new IOException("The webservice returned " + (ragBatchEmbedDto.getMessage() == null ? 0 : ragBatchEmbedDto.getMessage().length)
+                        + " embeddings for a batch of " + batch.size() + " texts.");
+
+            embeddings.addAll(Arrays.asList(ragBatchEmbedDto.getMessage()));
+        }
+        return embeddings;
+    }
+
     /**
      * Gets a list of empty DocumentChunkEmbeddings with proper text splitting
      *
@@ -660,8 +794,9 @@ public class RAGService {
                 config.getPostgresqlProperty("hibernate.connection.password"));
 
         // After we have the connection, we set up some vector extension requirements.
-        var setupStmt = connection.createStatement();
-        setupStmt.executeUpdate("CREATE EXTENSION IF NOT EXISTS vector");
+        try (var setupStmt = connection.createStatement()) {
+            setupStmt.executeUpdate("CREATE EXTENSION IF NOT EXISTS vector");
+        }
         PGvector.addVectorType(connection);
 
         return connection;
@@ -16,7 +16,6 @@ import org.apache.uima.jcas.cas.AnnotationBase;
 import org.apache.uima.util.CasLoadMode;
 import org.texttechnologylab.annotation.DocumentAnnotation;
 import org.texttechnologylab.annotation.semaf.semafsr.SrLink;
-import org.apache.uima.fit.factory.JCasFactory;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.util.CasIOUtils;
@@ -30,6 +29,7 @@ import org.texttechnologylab.models.gbif.GbifOccurrence;
 import org.texttechnologylab.models.rag.DocumentChunkEmbedding;
 import org.texttechnologylab.models.util.HealthStatus;
 import org.texttechnologylab.utils.EmbeddingUtils;
+import org.texttechnologylab.utils.JCasPool;
 import org.texttechnologylab.utils.ListUtils;
 import org.texttechnologylab.utils.SystemStatus;
 
@@ -57,6 +57,7 @@ public class UIMAService {
     private GbifService gbifService;
     private RAGService ragService;
     private JenaSparqlService jenaSparqlService;
+    private JCasPool jCasPool;
 
     public UIMAService(GoetheUniversityService goetheUniversityService,
                        PostgresqlDataInterface_Impl db,
@@ -69,6 +70,7 @@ public class UIMAService {
             this.ragService = ragService;
             this.jenaSparqlService = jenaSparqlService;
             this.gbifService = gbifService;
+            this.jCasPool = new JCasPool(Runtime.getRuntime().availableProcessors());
             SystemStatus.UIMAService = new HealthStatus(true, "", null);
         } catch (Exception ex) {
             SystemStatus.UIMAService = new HealthStatus(false, "Error initing the service", ex);
@@ -185,11 +187,11 @@ public class UIMAService {
      *
      */
     public Document XMIToDocument(String filename, Corpus corpus) {
-        try {
-            var jCas = JCasFactory.createJCas();
-            // Read in the contents of a single xmi cas
-            //var file = new GZIPInputStream(new FileInputStream(filename));
-            var file = new FileInputStream(filename);
+        JCas jCas = null;
+        // Read in the contents of a single xmi cas
+        //var file = new GZIPInputStream(new FileInputStream(filename));
+        try (var file = new FileInputStream(filename)) {
+            jCas = jCasPool.acquire();
             // https://uima.apache.org/d/uimaj-current/api/org/apache/uima/util/CasIOUtils.html
             // tsiInputStream: Optional stream for typesystem - only used if not null. (which it currently is)
             CasIOUtils.load(file, null, jCas.getCas(), CasLoadMode.LENIENT);
@@ -198,6 +200,8 @@ public class UIMAService {
         } catch (Exception ex) {
             logger.error("Error while reading an annotated xmi file to a cas and transforming it into a document:", ex);
             return null;
+        } finally {
+            jCasPool.release(jCas);
         }
     }
 
@@ -647,10 +651,10 @@ public class UIMAService {
                     docChunkEmbeddings.get(i).setTsne2D(reducedEmbeddingDto.getTsne2D()[i]);
                     docChunkEmbeddings.get(i).setTsne3D(reducedEmbeddingDto.getTsne3D()[i]);
                 }
-                // Update the changes (Could be a bulk Update... let's see :-)
-                docChunkEmbeddings.forEach(de -> ExceptionUtils.tryCatchLog(
-                        () -> ragService.updateDocumentChunkEmbedding(de),
-                        (ex) -> logger.error("Error updating and saving a document chunk embedding.", ex)));
+                // Update the changes in bulk
+                ExceptionUtils.tryCatchLog(
+                        () -> ragService.updateDocumentChunkEmbeddingsTsne(docChunkEmbeddings),
+                        (ex) -> logger.error("Error updating the tsne reductions of the document chunk embeddings.", ex));
 
                 // And calculate a reduced embedding for the whole document as well!
                 for (var document : documents) {
@@ -736,12 +740,9 @@ public class UIMAService {
 
                 // Store the chunks
                 if (documentChunkEmbeddings != null)
-                    for (var docEmbedding : documentChunkEmbeddings) {
-                        ExceptionUtils.tryCatchLog(
-                                () -> ragService.saveDocumentChunkEmbedding(docEmbedding),
-                                (ex) -> logger.error("Error saving a document chunk embeddings.", ex)
-                        );
-                    }
+                    ExceptionUtils.tryCatchLog(
+                            () -> ragService.saveDocumentChunkEmbeddings(documentChunkEmbeddings),
+                            (ex) -> logger.error("Error saving the document chunk embeddings.", ex));
             }
 
             // Document Embedding
@@ -0,0 +1,94 @@
+package org.texttechnologylab.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.fit.factory.TypeSystemDescriptionFactory;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.util.CasCreationUtils;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of reusable JCas instances. Creating a JCas means resolving the type system and allocating
+ * a new CAS heap, which for small files costs about as much as parsing them. Instead, we create at most
+ * {@code size} CASes from a type system that is resolved once and reset them between documents.
+ */
+public class JCasPool {
+    private static final Logger logger = LogManager.getLogger(JCasPool.class);
+
+    private final TypeSystemDescription typeSystemDescription;
+    private final BlockingQueue<JCas> idle;
+    private final AtomicInteger created = new AtomicInteger(0);
+    private final int size;
+
+    public JCasPool(int size) throws ResourceInitializationException {
+        this(size, TypeSystemDescriptionFactory.createTypeSystemDescription());
+    }
+
+    /**
+     * Creates a pool whose CASes use the merge of all given type systems, e.g. the default ones found on the
+     * classpath and the typesystem.xml of a corpus.
+     */
+    public JCasPool(int size, TypeSystemDescription... typeSystemDescriptions) throws ResourceInitializationException {
+        if (size < 1) throw new IllegalArgumentException("The JCasPool needs a size of at least 1.");
+        this.size = size;
+        this.idle = new ArrayBlockingQueue<>(size);
+        // Resolve the type system once. Every CAS of this pool is then built from the same description.
+        this.typeSystemDescription = CasCreationUtils.mergeTypeSystems(List.of(typeSystemDescriptions));
+        logger.info("Created a JCasPool with a maximum of " + size + " CAS instances.");
+    }
+
+    /**
+     * Takes a JCas out of the pool. If none is idle and the pool hasn't reached its size yet, a new one is created.
+     * Otherwise, this blocks until another thread releases its JCas. Always pair this with {@link #release(JCas)}.
+     */
+    public JCas acquire() throws ResourceInitializationException, InterruptedException {
+        var jCas = idle.poll();
+        if (jCas != null) return jCas;
+
+        // Lazily grow the pool up to its size.
+        while (true) {
+            var current = created.get();
+            if (current >= size) break;
+            if (created.compareAndSet(current, current + 1)) {
+                try {
+                    return JCasFactory.createJCas(typeSystemDescription);
+                } catch (Exception ex) {
+                    created.decrementAndGet();
+                    throw ex;
+                }
+            }
+        }
+        return idle.take();
+    }
+
+    /**
+     * Resets the given JCas and returns it to the pool so the next document can reuse its heap.
+     */
+    public void release(JCas jCas) {
+        if (jCas == null) return;
+        try {
+            jCas.reset();
+        } catch (Exception ex) {
+            // A CAS that can't be reset is of no use anymore. Drop it and allow the pool to create a new one.
+            logger.warn("Couldn't reset a pooled JCas - it will be discarded.", ex);
+            created.decrementAndGet();
+            return;
+        }
+        if (!idle.offer(jCas)) created.decrementAndGet();
+    }
+
+    public TypeSystemDescription getTypeSystemDescription() {
+        return typeSystemDescription;
+    }
+
+    public int getSize() {
+        return size;
+    }
+}
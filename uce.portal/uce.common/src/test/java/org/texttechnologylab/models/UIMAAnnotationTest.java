@@ -0,0 +1,54 @@
+package org.texttechnologylab.models;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+
+public class UIMAAnnotationTest extends TestCase {
+    private static final String DOCUMENT_TEXT = "Die <b>Buche\nwächst\r\nhier.";
+
+    public void testDerivedTextIsSanitizedLikeTheStoredOne() {
+        var offsetOnly = new UIMAAnnotation(4, 19);
+        offsetOnly.setDocumentText(DOCUMENT_TEXT);
+        var stored = new UIMAAnnotation(4, 19);
+        stored.setCoveredText(DOCUMENT_TEXT.substring(4, 19));
+
+        assertEquals("b>Buche wächst", offsetOnly.getCoveredText());
+        assertEquals(stored.getCoveredText(), offsetOnly.getCoveredText());
+        assertNull(offsetOnly.getStoredCoveredText());
+    }
+
+    public void testOffsetsBeyondTheTextAreClamped() {
+        var annotation = new UIMAAnnotation(21, 100);
+        annotation.setDocumentText(DOCUMENT_TEXT);
+        assertEquals("hier.", annotation.getCoveredText());
+
+        var behindTheText = new UIMAAnnotation(100, 120);
+        behindTheText.setDocumentText(DOCUMENT_TEXT);
+        assertEquals("", behindTheText.getCoveredText());
+    }
+
+    public void testLoadedOffsetOnlyAnnotationsNeedTheDocumentText() {
+        // Like loaded from the database: neither a stored covered text nor a document text.
+        var loaded = new UIMAAnnotation(0, 3);
+        var stored = new UIMAAnnotation(0, 3);
+        stored.setCoveredText("Das");
+        var bound = new UIMAAnnotation(0, 3);
+        bound.setDocumentText("Der Baum");
+        assertNull(loaded.getCoveredText());
+
+        UIMAAnnotation.bindDocumentText(List.of(loaded, stored, bound), DOCUMENT_TEXT);
+
+        assertEquals("Die", loaded.getCoveredText());
+        assertNull(loaded.getStoredCoveredText());
+        assertEquals("Das", stored.getCoveredText());
+        assertEquals("Der", bound.getCoveredText());
+    }
+
+    public void testBindingNothingIsFine() {
+        UIMAAnnotation.bindDocumentText(null, DOCUMENT_TEXT);
+        var loaded = new UIMAAnnotation(0, 3);
+        UIMAAnnotation.bindDocumentText(List.of(loaded), null);
+        assertNull(loaded.getCoveredText());
+    }
+}
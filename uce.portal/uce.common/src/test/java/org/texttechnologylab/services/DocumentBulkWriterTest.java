@@ -0,0 +1,102 @@
+package org.texttechnologylab.services;
+
+import junit.framework.TestCase;
+import org.texttechnologylab.models.imp.ImportWorkStatus;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The rows that are streamed through COPY have to come out of postgres' CSV parsing exactly as they went in.
+ */
+public class DocumentBulkWriterTest extends TestCase {
+
+    public void testNullAndEmptyStringDiffer() {
+        assertEquals(",\"\",\n", toCsv(null, "", null));
+        assertEquals(Arrays.asList(null, "", null), parseCsvRow(toCsv(null, "", null)));
+    }
+
+    public void testStringsAreQuoted() {
+        assertEquals("\"Goethe\",\"a, b\"\n", toCsv("Goethe", "a, b"));
+        assertEquals("\"say \"\"hi\"\"\"\n", toCsv("say \"hi\""));
+    }
+
+    public void testCoveredTextsSurviveTheRoundTrip() {
+        var texts = new String[]{
+                "Ein Satz, mit Komma.",
+                "\"Zitat\" am Anfang und am \"Ende\"",
+                "über\nzwei Zeilen\r\nund Windows",
+                "C:\\Pfad\\mit\\Backslashes",
+                "\"",
+                "\"\"",
+                ",",
+                " führende und folgende Leerzeichen ",
+                "NULL",
+                "\\N"};
+
+        for (var text : texts) {
+            assertEquals(text, parseCsvRow(toCsv(text)).getFirst());
+            assertEquals(Arrays.asList("1", text, null), parseCsvRow(toCsv(1L, text, null)));
+        }
+    }
+
+    public void testNumbersEnumsAndDates() {
+        var date = new Date(1_700_000_000_123L);
+        var row = parseCsvRow(toCsv(42L, 7, 0.5, true, ImportWorkStatus.DONE, date));
+
+        assertEquals(List.of("42", "7", "0.5", "true", String.valueOf(ImportWorkStatus.DONE.ordinal())), row.subList(0, 5));
+        assertEquals(date.getTime(), Timestamp.valueOf(row.get(5)).getTime());
+    }
+
+    public void testEveryRowEndsWithANewline() {
+        var buffer = new StringBuilder();
+        DocumentBulkWriter.appendCsvRow(buffer, 1L, "a");
+        DocumentBulkWriter.appendCsvRow(buffer, 2L, "b\nc");
+        assertEquals("1,\"a\"\n2,\"b\nc\"\n", buffer.toString());
+    }
+
+    private static String toCsv(Object... values) {
+        var buffer = new StringBuilder();
+        DocumentBulkWriter.appendCsvRow(buffer, values);
+        return buffer.toString();
+    }
+
+    /**
+     * Reads a single row the way COPY ... WITH (FORMAT csv) does with its defaults: values in quotes may hold
+     * anything, a doubled quote is a quote and an unquoted empty value is NULL.
+     */
+    private static List<String> parseCsvRow(String csv) {
+        var values = new ArrayList<String>();
+        var position = 0;
+        while (true) {
+            String value;
+            if (position < csv.length() && csv.charAt(position) == '"') {
+                var builder = new StringBuilder();
+                position++;
+                while (true) {
+                    var c = csv.charAt(position++);
+                    if (c != '"') builder.append(c);
+                    else if (csv.charAt(position) == '"') builder.append(csv.charAt(position++));
+                    else break;
+                }
+                value = builder.toString();
+            } else {
+                var end = position;
+                while (csv.charAt(end) != ',' && csv.charAt(end) != '\n') end++;
+                value = end == position ? null : csv.substring(position, end);
+                position = end;
+            }
+            values.add(value);
+
+            var separator = csv.charAt(position++);
+            if (separator == '\n') {
+                assertEquals("More than one row", csv.length(), position);
+                return values;
+            }
+            assertEquals(',', separator);
+        }
+    }
+}
@@ -11,9 +11,13 @@ import org.texttechnologylab.config.SpringConfig;
 import org.texttechnologylab.config.UceConfig;
 import org.texttechnologylab.exceptions.DatabaseOperationException;
 import org.texttechnologylab.exceptions.ExceptionUtils;
-import org.texttechnologylab.models.imp.ImportStatus;
-import org.texttechnologylab.models.imp.UCEImport;
+import org.texttechnologylab.importer.BinaryCasConverter;
+import org.texttechnologylab.importer.CorpusImportScheduler;
+import org.texttechnologylab.importer.ImportBenchmark;
+import org.texttechnologylab.importer.ImportMetricsServer;
+import org.texttechnologylab.importer.ImportPipelineConfig;
 
+import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.DefaultParser;
 import org.apache.commons.cli.MissingOptionException;
 import org.apache.commons.cli.Options;
@@ -25,10 +29,11 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.nio.file.Path;
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
 import java.util.Objects;
-import java.util.UUID;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Level;
 
@@ -42,6 +47,22 @@ public class App {
         // Disable the warning and other junk logs from the UIMA project.
         DisableLogging.enableLogging(Level.SEVERE);
 
+        // Read the import path from the CLI
+        var options = getOptions();
+        var parser = new DefaultParser();
+        var cmd = parser.parse(options, args);
+
+        // Converting a corpus to binary CAS doesn't need any of the services, so we do that right away.
+        if (cmd.hasOption("convertToBinary")) {
+            convertToBinary(cmd);
+            return;
+        }
+        // Neither does the dry run, which only measures the parsing and extraction.
+        if (cmd.hasOption("dryRun")) {
+            dryRun(cmd);
+            return;
+        }
+
         // Init DI
         var context = new AnnotationConfigApplicationContext(SpringConfig.class);
 
@@ -53,21 +74,19 @@ public class App {
                 (ex) -> logger.warn("Couldn't read the db scripts in the external database scripts folder; path wasn't found or other IO problems. ", ex));
         logger.info("Finished with executing external database scripts.");
 
-        // Read the import path from the CLI
-        var options = getOptions();
-        var parser = new DefaultParser();
-        var cmd = parser.parse(options, args);
-
         var importSrcPath = cmd.getOptionValue("importSrc");
         var importDirPath = cmd.getOptionValue("importDir");
-        var importId = UUID.randomUUID().toString();
         var importerNumber = Integer.parseInt(cmd.getOptionValue("importerNumber"));
         var numThreadsStr = cmd.getOptionValue("numThreads");
         var numThreads = 1;
         if (numThreadsStr != null) numThreads = Integer.parseInt(numThreadsStr);
+        var pipelineConfig = getPipelineConfig(cmd, numThreads, commonConfig);
 
-        if (importerNumber != 1) {
-            throw new InvalidParameterException("For now, the -importerNumber must always be 1, since this will be the only instance. Canceling.");
+        // Several instances with the same -importId split the import between them; the number 1 importer leads it.
+        var distributedImportId = cmd.getOptionValue("importId");
+        if (distributedImportId != null) pipelineConfig.setInstanceId(getInstanceId(importerNumber));
+        else if (importerNumber != 1) {
+            throw new InvalidParameterException("Without a shared -importId, this is the only instance, so the -importerNumber must be 1. Canceling.");
         }
 
         var importablePaths = new ArrayList<String>();
@@ -81,34 +100,136 @@ public class App {
             }
         }
 
-        for (var path : importablePaths) {
-            var importer = new Importer(context, path, importerNumber, importId);
-
-            // If this is the number 1 importer, he will create a Database entry for this import. The other importers will wait for that db entry.
-            if (importerNumber == 1) {
-                var uceImport = new UCEImport(importId, path, ImportStatus.STARTING);
-                var fileCount = ExceptionUtils.tryCatchLog(importer::getXMICountInPath,
-                        (ex) -> logger.warn("There was an IO error counting the importable UIMA files - the import will probably fail at some point.", ex));
-                uceImport.setTotalDocuments(fileCount == null ? -1 : fileCount);
-                context.getBean(PostgresqlDataInterface_Impl.class).saveOrUpdateUceImport(uceImport);
-            } else {
-                // TODO: This was meant to be prepared for the incorporation into DUUI, but this isn't decided yet.
-                ;
-            }
-
-            importer.start(numThreads);
+        // Several corpora are imported at once, sharing the threads of the pipeline.
+        var concurrentCorporaStr = cmd.getOptionValue("concurrentCorpora");
+        var concurrentCorpora = concurrentCorporaStr == null ? numThreads : Integer.parseInt(concurrentCorporaStr);
+        var scheduler = new CorpusImportScheduler(context, pipelineConfig, concurrentCorpora, importerNumber, distributedImportId);
+
+        var metricsPortStr = cmd.getOptionValue("metricsPort");
+        var metricsServer = metricsPortStr == null ? null : ExceptionUtils.tryCatchLog(
+                () -> new ImportMetricsServer(Integer.parseInt(metricsPortStr)),
+                (ex) -> logger.error("Couldn't start the import metrics server on port " + metricsPortStr + " - importing without it.", ex));
+        if (metricsServer != null) metricsServer.start();
+        try {
+            scheduler.importAll(importablePaths);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            logger.error("The import was interrupted.", ex);
+        } finally {
+            if (metricsServer != null) metricsServer.stop();
         }
 
     }
 
+    /**
+     * Identifies this instance in the work table of a distributed import, e.g. importer-2@node04:31337.
+     */
+    private static String getInstanceId(int importerNumber) {
+        var host = ExceptionUtils.tryCatchLog(() -> InetAddress.getLocalHost().getHostName(),
+                (ex) -> logger.warn("Couldn't determine the host name of this instance.", ex));
+        return "importer-" + importerNumber + "@" + (host == null ? "unknown" : host) + ":" + ProcessHandle.current().pid();
+    }
+
+    /**
+     * Converts the corpus of -importSrc into binary CASes within the target folder of -convertToBinary.
+     */
+    private static void convertToBinary(CommandLine cmd) {
+        var importSrcPath = cmd.getOptionValue("importSrc");
+        var targetPath = cmd.getOptionValue("convertToBinary");
+        if (importSrcPath == null)
+            throw new InvalidParameterException("Converting to binary CAS requires the -importSrc corpus that should be converted.");
+
+        var numThreadsStr = cmd.getOptionValue("numThreads");
+        var numThreads = numThreadsStr == null ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(numThreadsStr);
+        var readBufferSize = getPipelineConfig(cmd, numThreads, null).getReadBufferSize();
+
+        logger.info("Converting the corpus at " + importSrcPath + " to binary CAS into " + targetPath);
+        ExceptionUtils.tryCatchLog(
+                () -> new BinaryCasConverter(numThreads, readBufferSize).convert(Path.of(importSrcPath), Path.of(targetPath)),
+                (ex) -> logger.error("Error converting the corpus to binary CAS.", ex));
+    }
+
+    /**
+     * Parses and extracts the corpus of -importSrc without storing anything, and reports the throughput.
+     */
+    private static void dryRun(CommandLine cmd) {
+        var importSrcPath = cmd.getOptionValue("importSrc");
+        if (importSrcPath == null)
+            throw new InvalidParameterException("The dry run requires the -importSrc corpus that should be parsed.");
+
+        var numThreadsStr = cmd.getOptionValue("numThreads");
+        var numThreads = numThreadsStr == null ? 1 : Integer.parseInt(numThreadsStr);
+        var pipelineConfig = getPipelineConfig(cmd, numThreads, null);
+        ExceptionUtils.tryCatchLog(
+                () -> new ImportBenchmark(pipelineConfig).run(Path.of(importSrcPath)),
+                (ex) -> logger.error("Error in the dry run of the corpus at " + importSrcPath, ex));
+    }
+
+    /**
+     * Sizes the import stages. Without any stage specific flags, -numThreads is used for parsing and
+     * persisting (the latter capped by the DB connection pool) and the postprocessing runs on virtual threads.
+     */
+    @NotNull
+    private static ImportPipelineConfig getPipelineConfig(CommandLine cmd, int numThreads, CommonConfig commonConfig) {
+        var pipelineConfig = new ImportPipelineConfig(numThreads);
+        if (commonConfig != null)
+            pipelineConfig.setPersistThreads(Math.min(numThreads, commonConfig.getPostgresqlConnectionPoolSize()));
+
+        var parseThreadsStr = cmd.getOptionValue("parseThreads");
+        if (parseThreadsStr != null) pipelineConfig.setParseThreads(Integer.parseInt(parseThreadsStr));
+        var persistThreadsStr = cmd.getOptionValue("persistThreads");
+        if (persistThreadsStr != null) pipelineConfig.setPersistThreads(Integer.parseInt(persistThreadsStr));
+        var postProcessThreadsStr = cmd.getOptionValue("postProcessThreads");
+        if (postProcessThreadsStr != null) pipelineConfig.setPostProcessThreads(Integer.parseInt(postProcessThreadsStr));
+        var maxInFlightStr = cmd.getOptionValue("maxInFlight");
+        if (maxInFlightStr != null) pipelineConfig.setMaxInFlight(Integer.parseInt(maxInFlightStr));
+        var readBufferKbStr = cmd.getOptionValue("readBufferKb");
+        if (readBufferKbStr != null) pipelineConfig.setReadBufferSize(Integer.parseInt(readBufferKbStr) * 1024);
+        if (cmd.hasOption("walkOrder")) pipelineConfig.setLargestFirst(false);
+        var memoryBudgetMbStr = cmd.getOptionValue("memoryBudgetMb");
+        if (memoryBudgetMbStr != null) pipelineConfig.setMemoryBudget(Long.parseLong(memoryBudgetMbStr) * 1024 * 1024);
+        var expansionFactorStr = cmd.getOptionValue("expansionFactor");
+        if (expansionFactorStr != null) pipelineConfig.setExpansionFactor(Double.parseDouble(expansionFactorStr));
+        var claimBatchSizeStr = cmd.getOptionValue("claimBatchSize");
+        if (claimBatchSizeStr != null) pipelineConfig.setClaimBatchSize(Integer.parseInt(claimBatchSizeStr));
+        var leaseSecondsStr = cmd.getOptionValue("leaseSeconds");
+        if (leaseSecondsStr != null) pipelineConfig.setLeaseMillis(Long.parseLong(leaseSecondsStr) * 1000);
+        var parallelExtractionStr = cmd.getOptionValue("parallelExtraction");
+        if (parallelExtractionStr != null) pipelineConfig.setParallelExtractionThreshold(Integer.parseInt(parallelExtractionStr));
+        var metricsIntervalStr = cmd.getOptionValue("metricsInterval");
+        if (metricsIntervalStr != null) pipelineConfig.setMetricsReportIntervalMillis(Long.parseLong(metricsIntervalStr) * 1000);
+
+        return pipelineConfig;
+    }
+
     @NotNull
     private static Options getOptions() {
         var options = new Options();
         options.addOption("srcDir", "importDir", true, "Unlike '-src', '-srcDir' is the path to a directory that holds multiple importable 'src' paths. " +
                 "The importer will check for folders within this directory, where each folder should be an importable corpus with a corpusConfig.json and its input UIMA-files. Those are then imported.");
         options.addOption("src", "importSrc", true, "The path to the import source where the UIMA-annotated files are stored.");
-        options.addOption("num", "importerNumber", true, "When starting multiple importers, assign an id to each instance by counting up from 1 to n.");
+        options.addOption("num", "importerNumber", true, "When starting multiple importers, assign an id to each instance by counting up from 1 to n. The number 1 importer sets up the corpora and the UCEImport.");
+        options.addOption("id", "importId", true, "A shared id of an import that is split between multiple importers, on one or several machines. Every instance started with the same id and sources claims its files from a work table in the database.");
+        options.addOption("cb", "claimBatchSize", true, "When importing with an '-importId', how many files an instance claims at once. By default, this is 8.");
+        options.addOption("ls", "leaseSeconds", true, "When importing with an '-importId', after how many seconds without a heartbeat the files of an instance are handed to another one. By default, this is 300.");
         options.addOption("t", "numThreads", true, "We do the import asynchronous. Decide with how many threads, e.g. 4-8. By default, this is single threaded.");
+        options.addOption("f", "maxInFlight", true, "The maximum amount of files that are queued or being imported at the same time. Keeps the memory flat for large corpora. By default, this is 4 times the numThreads.");
+        options.addOption("tParse", "parseThreads", true, "The threads used for reading the UIMA files and extracting their annotations. This is CPU bound, so size it to the cores. By default, this is numThreads.");
+        options.addOption("tPersist", "persistThreads", true, "The threads used for storing the documents in the database. By default, this is numThreads, but at most the size of the DB connection pool.");
+        options.addOption("tPost", "postProcessThreads", true, "The threads used for postprocessing documents (embeddings, topics, ...). This mostly waits on remote services. By default, or when set to 0, virtual threads are used.");
+        options.addOption("wo", "walkOrder", false, "Dispatch the files in the order they are found instead of largest-first. Starts importing right away instead of listing the input folder first.");
+        options.addOption("mem", "memoryBudgetMb", true, "The estimated memory in MB that all files in flight may take up together. Files that don't fit wait for others to finish. By default, this is 60% of the max heap.");
+        options.addOption("xf", "expansionFactor", true, "How much heap a file takes up while importing, relative to its uncompressed size. Used for the memory budget. By default, this is 3.");
+        options.addOption("c", "concurrentCorpora", true, "When importing a '-srcDir', how many corpora are imported at the same time. They share the threads of '-t', so this doesn't add load. By default, this is numThreads.");
+        options.addOption("cvt", "convertToBinary", true, "Instead of importing, convert the corpus of '-src' into compressed binary CASes, which import several times faster. " +
+                "The value is the target folder, which is then again an importable corpus. Uses '-t' threads, by default all cores.");
+        options.addOption("pe", "parallelExtraction", true, "Documents with at least this many annotations are extracted with several threads at once, which speeds up giant documents. " +
+                "Smaller ones are extracted by a single thread. 0 disables it. By default, this is 250000.");
+        options.addOption("mi", "metricsInterval", true, "Every how many seconds a summary of the import metrics (throughput, queue depths and stage latencies) is logged and added to the UCEImport. 0 only reports at the end. By default, this is 30.");
+        options.addOption("mp", "metricsPort", true, "Serves the import metrics at http://localhost:<port>/metrics in the Prometheus text format while importing. Off by default.");
+        options.addOption("dryRun", "benchmark", false, "Instead of importing, parse the corpus of '-src' and extract all of its annotations into in-memory documents, " +
+                "without a database or any remote service. Reports docs/sec, annotations/sec, GC time and peak heap for the given '-t', to size import nodes.");
+        options.addOption("rb", "readBufferKb", true, "The buffer size in KB used for reading and decompressing the UIMA files. By default, this is 1024.");
         return options;
     }
 }
@@ -12,28 +12,44 @@ import org.apache.commons.logging.Log;
 import org.apache.http.annotation.Obsolete;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.fit.factory.TypeSystemDescriptionFactory;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.jcas.cas.AnnotationBase;
+import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.util.CasIOUtils;
 import org.apache.uima.util.CasLoadMode;
 import org.springframework.context.ApplicationContext;
 import org.texttechnologylab.annotation.DocumentAnnotation;
 import org.texttechnologylab.annotation.ocr.*;
+import org.texttechnologylab.config.CommonConfig;
 import org.texttechnologylab.config.CorpusConfig;
 import org.texttechnologylab.exceptions.DatabaseOperationException;
 import org.texttechnologylab.exceptions.ExceptionUtils;
+import org.texttechnologylab.importer.DistributedWorkQueue;
+import org.texttechnologylab.importer.ImportFile;
+import org.texttechnologylab.importer.ImportFiles;
+import org.texttechnologylab.importer.ImportManifest;
+import org.texttechnologylab.importer.ImportMetrics;
+import org.texttechnologylab.importer.ImportPipeline;
+import org.texttechnologylab.importer.ImportPipelineConfig;
+import org.texttechnologylab.importer.ImportStage;
+import org.texttechnologylab.importer.ImportStringPool;
+import org.texttechnologylab.importer.ImportWorkers;
+import org.texttechnologylab.importer.PageAssigner;
+import org.texttechnologylab.importer.UCEMetadataFilterRegistry;
+import org.texttechnologylab.importer.XmiHeaderScanner;
 import org.texttechnologylab.models.biofid.BiofidTaxon;
 import org.texttechnologylab.models.corpus.*;
-import org.texttechnologylab.models.gbif.GbifOccurrence;
 import org.texttechnologylab.models.imp.ImportLog;
 import org.texttechnologylab.models.imp.ImportStatus;
 import org.texttechnologylab.models.imp.LogStatus;
 import org.texttechnologylab.models.imp.UCEImport;
 import org.texttechnologylab.models.rag.DocumentChunkEmbedding;
+import org.texttechnologylab.models.rag.DocumentEmbedding;
 import org.texttechnologylab.services.*;
 import org.texttechnologylab.utils.EmbeddingUtils;
+import org.texttechnologylab.utils.JCasPool;
 import org.texttechnologylab.utils.ListUtils;
 import org.texttechnologylab.utils.RegexUtils;
 import org.texttechnologylab.utils.SystemStatus;
@@ -42,28 +58,55 @@ import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 public class Importer {
 
     private static final Gson gson = new Gson();
     private static final Logger logger = LogManager.getLogger(Importer.class);
+    public static final String TYPESYSTEM_FILE_NAME = "typesystem.xml";
+    // How many documents a single tsne reduction of the corpus postprocessing covers.
+    private static final int POSTPROCESSING_CHUNK_SIZE = 100;
+    private static final long METADATA_FILTER_FLUSH_INTERVAL_MILLIS = 5000;
+    private static final int DEFAULT_READ_BUFFER_SIZE = new ImportPipelineConfig().getReadBufferSize();
+    // Whether sentences and paragraphs only keep their offsets instead of a copy of their covered text.
+    private static final boolean ANNOTATION_OFFSETS_ONLY = new CommonConfig().getAnnotationOffsetsOnly();
     private static final Set<String> WANTED_NE_TYPES = Set.of(
             "LOCATION", "MISC", "PERSON", "ORGANIZATION"
     );
     private GoetheUniversityService goetheUniversityService;
     private PostgresqlDataInterface_Impl db;
-    private GbifService gbifService;
+    private GbifOccurrenceFetchQueue gbifOccurrenceFetchQueue;
+    private ImportLogWriter importLogWriter;
     private RAGService ragService;
     private JenaSparqlService jenaSparqlService;
+    private BiofidTaxonResolver biofidTaxonResolver;
     private String path;
     private String importId;
     private Integer importerNumber;
-    private List<UCEMetadataFilter> uceMetadataFilters = new CopyOnWriteArrayList<>(); // need thread safety.
+    private UCEMetadataFilterRegistry uceMetadataFilterRegistry;
+    private JCasPool jCasPool;
+    private ImportManifest importManifest;
+    // Only set while importing a folder; single uploads always extract sequentially.
+    private Executor extractionExecutor;
+    private int parallelExtractionThreshold;
+    // Replaced by registered metrics once a folder is imported; uploads only record into this one.
+    private ImportMetrics metrics = new ImportMetrics(null);
+    private long reportedStored, reportedFailed, reportedPostProcessed, reportedBytes;
+    // The categorical annotation values of this import, so equal values share one instance across all documents.
+    private final ImportStringPool stringPool = new ImportStringPool();
+    // The id after which the next postprocessing run retries the skipped documents, so every one gets its turn.
+    private final AtomicLong skippedRetryCursor = new AtomicLong(0);
+    // Only converts the files into documents, without any database or remote service. See the -dryRun benchmark.
+    private boolean dryRun = false;
 
     public Importer(ApplicationContext serviceContext,
                     String foldername,
@@ -75,28 +118,61 @@ public class Importer {
         this.path = foldername;
     }
 
+    /**
+     * An importer that uses the given JCasPool, e.g. one that is shared by several corpora that are imported at once.
+     */
+    public Importer(ApplicationContext serviceContext,
+                    String foldername,
+                    int importerNumber,
+                    String importId,
+                    JCasPool jCasPool) {
+        this(serviceContext, foldername, importerNumber, importId);
+        this.jCasPool = jCasPool;
+    }
+
     public Importer(ApplicationContext serviceContext) {
         initServices(serviceContext);
     }
 
+    /**
+     * An importer without any services for the -dryRun benchmark. It only converts files into in-memory documents
+     * through {@link #XMIToDocument(ImportFile, Corpus)}; nothing is stored and no remote service is asked.
+     */
+    public Importer(JCasPool jCasPool, Executor extractionExecutor, int parallelExtractionThreshold, ImportMetrics metrics) {
+        this.dryRun = true;
+        this.importerNumber = 0;
+        this.importId = metrics.getImportId();
+        this.jCasPool = jCasPool;
+        this.extractionExecutor = extractionExecutor;
+        this.parallelExtractionThreshold = parallelExtractionThreshold;
+        this.metrics = metrics;
+        // The filters are collected, but never flushed.
+        this.uceMetadataFilterRegistry = new UCEMetadataFilterRegistry(null);
+    }
+
+    public Importer(ApplicationContext serviceContext, JCasPool jCasPool) {
+        initServices(serviceContext);
+        this.jCasPool = jCasPool;
+    }
+
     private void initServices(ApplicationContext serviceContext) {
         this.goetheUniversityService = serviceContext.getBean(GoetheUniversityService.class);
         this.db = serviceContext.getBean(PostgresqlDataInterface_Impl.class);
         this.ragService = serviceContext.getBean(RAGService.class);
         this.jenaSparqlService = serviceContext.getBean(JenaSparqlService.class);
-        this.gbifService = serviceContext.getBean(GbifService.class);
+        this.biofidTaxonResolver = serviceContext.getBean(BiofidTaxonResolver.class);
+        this.gbifOccurrenceFetchQueue = serviceContext.getBean(GbifOccurrenceFetchQueue.class);
+        this.importLogWriter = serviceContext.getBean(ImportLogWriter.class);
+        this.uceMetadataFilterRegistry = new UCEMetadataFilterRegistry(this.db);
     }
 
     /**
-     * Counts the importable UIMA files in the importer path.
+     * Counts the importable UIMA files in the importer path, including compressed ones and those within archives.
      */
     public int getXMICountInPath() {
         if (this.path.isEmpty()) return -1;
-        try (var fileStream = Files.walk(Path.of(path))) {
-            return (int) fileStream
-                    .filter(Files::isRegularFile)
-                    .filter(path -> path.toString().toLowerCase().endsWith(".xmi"))
-                    .count();
+        try {
+            return ImportFiles.count(Path.of(path), DEFAULT_READ_BUFFER_SIZE);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -108,6 +184,23 @@ public class Importer {
      * @throws DatabaseOperationException
      */
     public void start(int numThreads) throws DatabaseOperationException {
+        start(new ImportPipelineConfig(numThreads));
+    }
+
+    /**
+     * Starts the importing processing of this instance with the given sizing of the import stages.
+     *
+     * @throws DatabaseOperationException
+     */
+    public void start(ImportPipelineConfig pipelineConfig) throws DatabaseOperationException {
+        start(pipelineConfig, null, pipelineConfig.getMaxInFlight());
+    }
+
+    /**
+     * Starts the import on the given workers, which may be shared with the imports of other corpora. This
+     * corpus then has at most maxInFlight files in the pipeline at a time. Without workers, the import creates its own.
+     */
+    public void start(ImportPipelineConfig pipelineConfig, ImportWorkers sharedWorkers, int maxInFlight) throws DatabaseOperationException {
         logger.info(
                 "\n _   _ _____  _____   _____                           _   \n" +
                         "| | | /  __ \\|  ___| |_   _|                         | |  \n" +
@@ -120,10 +213,18 @@ public class Importer {
         );
         logger.info("===========> Global Import Id: " + importId);
         logger.info("===========> Importer Number: " + importerNumber);
-        logger.info("===========> Used Threads: " + numThreads);
+        logger.info("===========> Import Stages: " + pipelineConfig);
         logger.info("===========> Importing from path: " + path + "\n\n");
 
-        storeCorpusFromFolderAsync(path, numThreads);
+        // Each parsing thread needs at most one CAS at a time, so we never need more than that.
+        if (this.jCasPool == null || this.jCasPool.getSize() < pipelineConfig.getParseThreads() || hasCorpusTypeSystem()) {
+            final var poolSize = pipelineConfig.getParseThreads();
+            this.jCasPool = ExceptionUtils.tryCatchLog(
+                    () -> createJCasPool(poolSize),
+                    (ex) -> logger.error("Couldn't create the JCasPool - CASes will be created per document instead.", ex));
+        }
+
+        storeCorpusFromFolderAsync(path, pipelineConfig, sharedWorkers, maxInFlight);
     }
 
     /**
@@ -134,8 +235,8 @@ public class Importer {
 
         // Before we try to parse the document, we need to check if we have UCEMetadata filters for this corpus.
         if (CorpusConfig.fromJson(corpus.getCorpusJsonConfig()).getAnnotations().isUceMetadata())
-            this.uceMetadataFilters = ExceptionUtils.tryCatchLog(
-                    () -> new CopyOnWriteArrayList<>(db.getUCEMetadataFiltersByCorpusId(corpus.getId())),
+            ExceptionUtils.tryCatchLog(
+                    () -> this.uceMetadataFilterRegistry.load(db.getUCEMetadataFiltersByCorpusId(corpus.getId())),
                     (ex) -> logger.error("Couldn't fetch UCEMetadataFilters to a corpus - this shouldn't happen. The process continues without filters.", ex));
 
         // We don't catch exceptions here, we let them be raised.
@@ -143,6 +244,7 @@ public class Importer {
         if (doc == null)
             throw new DatabaseOperationException("The document was already imported into the corpus according to its documentId.");
         db.saveDocument(doc);
+        this.uceMetadataFilterRegistry.flush();
         postProccessDocument(doc, CorpusConfig.fromJson(corpus.getCorpusJsonConfig()), "TODO: CHANGE THIS FILEPATH");
 
         logger.info("Finished storing and uploaded UIMA file.");
@@ -151,10 +253,10 @@ public class Importer {
     /**
      * Imports all UIMA xmi files in a folder
      */
-    public void storeCorpusFromFolderAsync(String folderName, int numThreads) throws DatabaseOperationException {
-        var executor = Executors.newFixedThreadPool(numThreads);
-        List<CompletableFuture<Void>> futures = new ArrayList<>();
-
+    public void storeCorpusFromFolderAsync(String folderName,
+                                           ImportPipelineConfig pipelineConfig,
+                                           ImportWorkers sharedWorkers,
+                                           int maxInFlight) throws DatabaseOperationException {
         var corpus = new Corpus();
         CorpusConfig corpusConfig = null;
 
@@ -170,9 +272,15 @@ public class Importer {
             corpus.setAuthor(corpusConfig.getAuthor());
             corpus.setCorpusJsonConfig(gson.toJson(corpusConfig));
 
+            // When several instances split the import, only the number 1 importer sets up the corpus; the others import into it.
+            if (pipelineConfig.isDistributed() && this.importerNumber != 1) {
+                corpus = awaitDistributedImportCorpus();
+                if (corpusConfig.getAnnotations().isUceMetadata())
+                    this.uceMetadataFilterRegistry.load(db.getUCEMetadataFiltersByCorpusId(corpus.getId()));
+            }
             // Let's check if we already have a corpus with that name and
             // if we want to add to that in the config.
-            if (corpusConfig.isAddToExistingCorpus()) {
+            else if (corpusConfig.isAddToExistingCorpus()) {
                 final var corpusConfig1 = corpusConfig; // This sucks so hard - why doesn't java just do this itself if needed?
                 var existingCorpus = ExceptionUtils.tryCatchLog(() -> db.getCorpusByName(corpusConfig1.getName()),
                         (ex) -> logger.error("Error getting an existing corpus by name. The corpus config should probably be changed " +
@@ -182,7 +290,7 @@ public class Importer {
                     corpus = existingCorpus;
                     // In case that we have a corpus already, we load the existing filters if they exist.
                     if (corpusConfig.getAnnotations().isUceMetadata())
-                        this.uceMetadataFilters = new CopyOnWriteArrayList<>(db.getUCEMetadataFiltersByCorpusId(corpus.getId()));
+                        this.uceMetadataFilterRegistry.load(db.getUCEMetadataFiltersByCorpusId(corpus.getId()));
                 } else {
                     final var corpus1 = corpus;
                     ExceptionUtils.tryCatchLog(() -> db.saveCorpus(corpus1),
@@ -192,8 +300,14 @@ public class Importer {
         } catch (JsonIOException | JsonSyntaxException | IOException e) {
             throw new MissingResourceException(
                     "The corpus folder did not contain a properly formatted corpusConfig.json", CorpusConfig.class.toString(), "");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseOperationException("Interrupted while waiting for the number 1 importer to set up the corpus.", ex);
         }
 
+        // The other instances of a distributed import wait for a stored corpus to import into.
+        if (pipelineConfig.isDistributed() && corpus.getId() == 0) db.saveCorpus(corpus);
+
         // Store some corpus information in the UCEImport logging if this is the main importer
         if (this.importerNumber == 1) {
             var uceImport = db.getUceImportByImportId(this.importId);
@@ -207,64 +321,174 @@ public class Importer {
         final var corpusConfigFinal = corpusConfig;
         final var counter = new AtomicInteger(0); // To handle mutation in lambdas
         final var corpus1 = corpus;
+        final var skippedCounter = new AtomicInteger(0);
+
+        // The files we already stored in an earlier run of this import are skipped without parsing them.
+        this.importManifest = ExceptionUtils.tryCatchLog(() -> new ImportManifest(db, corpus1.getId()),
+                (ex) -> logger.warn("Couldn't load the import manifest of the corpus - every file will be parsed again.", ex));
+
+        // The walk is lazy: files are only pulled from it once the pipeline has a free slot again. When dispatching
+        // largest-first, the files are listed up front, but still only read once they are admitted.
+        var pipeline = sharedWorkers == null
+                ? new ImportPipeline(pipelineConfig)
+                : new ImportPipeline(sharedWorkers, maxInFlight);
+        // Every file a distributed import hands out has to be reported back, so it's marked as done in the work table.
+        final var workQueue = pipelineConfig.isDistributed() ? new DistributedWorkQueue(db, this.importId, pipelineConfig) : null;
+        this.extractionExecutor = pipeline.getExecutor(ImportStage.EXTRACT);
+        this.parallelExtractionThreshold = pipelineConfig.getParallelExtractionThreshold();
+        this.metrics = new ImportMetrics(this.importId).register();
+        this.metrics.setCorpusName(corpus.getName());
+        this.metrics.registerGauge("in_flight", pipeline::getInFlightCount);
+        for (var stage : ImportStage.values())
+            this.metrics.registerGauge("queue_" + stage.name().toLowerCase(), () -> pipeline.getQueueDepth(stage));
+        this.metrics.registerGauge("gbif_open_taxa", gbifOccurrenceFetchQueue::getOpenCount);
+        this.metrics.registerGauge("importlog_buffered", importLogWriter::getBufferedCount);
+        this.metrics.registerGauge("string_pool", stringPool::size);
+        var metricsReporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "uce-import-metrics-" + this.importerNumber);
+            thread.setDaemon(true);
+            return thread;
+        });
+        var reportInterval = pipelineConfig.getMetricsReportIntervalMillis();
+        if (reportInterval > 0)
+            metricsReporter.scheduleWithFixedDelay(this::reportImportMetrics, reportInterval, reportInterval, TimeUnit.MILLISECONDS);
+        // New metadata filters and categories are stored in batches while the import runs.
+        this.uceMetadataFilterRegistry.startPeriodicFlush(METADATA_FILTER_FLUSH_INTERVAL_MILLIS);
+        try {
+            ImportFiles.ImportFileVisitor visitor = importFile -> {
+                if (isAlreadyImported(importFile)) {
+                    skippedCounter.incrementAndGet();
+                    if (workQueue != null) workQueue.complete(importFile, true);
+                    return;
+                }
 
-        try (var fileStream = Files.walk(inputFolderName)) {
-            fileStream.filter(Files::isRegularFile)
-                    .filter(path -> path.toString().toLowerCase().endsWith(".xmi"))
-                    .forEach(filePath -> {
-                        var docFuture = CompletableFuture.supplyAsync(
-                                        () -> XMIToDocument(filePath.toString(), corpus1), executor) // Convert the XMI to a Document
-                                .thenApply(doc -> {
-                                    if (doc == null) return null;
-
-                                    logger.info("Trying to store document with document id " + doc.getDocumentId() + "...");
-                                    ExceptionUtils.tryCatchLog(
-                                            () -> db.saveDocument(doc),
-                                            (ex) -> logImportError("Error saving document with id " + doc.getId(), ex, filePath.toString()));
-                                    return doc;
-                                })
-                                .thenAcceptAsync(doc -> {
-                                    if (doc != null) {
-                                        // Log and try to postprocess the document
-                                        logImportInfo("Stored document " + filePath.getFileName(), LogStatus.SAVED, filePath.toString(), 0);
-                                        logger.info("Finished with the UIMA annotations - postprocessing the doc now.");
-
-                                        // Postprocess the document
-                                        ExceptionUtils.tryCatchLog(
-                                                () -> postProccessDocument(doc, corpusConfigFinal, filePath.toString()),
-                                                (ex) -> logImportError("Error postprocessing a saved document with id " + doc.getId(), (ex), filePath.toString()));
-                                        logImportInfo("Finished with import.", LogStatus.FINISHED, filePath.toString(), 0);
-                                    }
-                                });
-
-                        futures.add(docFuture);
-
-                        int currentCount = counter.incrementAndGet();
-
-                        // Periodic corpus postprocessing
-                        if (currentCount % 100 == 0) {
-                            CompletableFuture.runAsync(() -> {
+                // Parse, persist and postprocess each run on the pool of their stage. Files that don't fit into
+                // the memory budget right now wait here until enough other files are done.
+                var estimatedMemory = importFile.estimateMemory(pipelineConfig.getExpansionFactor());
+                pipeline.submit(estimatedMemory, p -> CompletableFuture.supplyAsync(
+                                () -> convertImportFile(importFile, corpus1), p.getExecutor(ImportStage.PARSE)) // Convert the XMI to a Document
+                        .thenApplyAsync(conversion -> {
+                            if (conversion.document() == null) return conversion;
+                            var doc = conversion.document();
+
+                            logger.info("Trying to store document with document id " + doc.getDocumentId() + "...");
+                            var persistStart = System.nanoTime();
+                            var stored = ExceptionUtils.tryCatchLog(
+                                    () -> {
+                                        db.saveDocumentBulk(doc);
+                                        return true;
+                                    },
+                                    (ex) -> logImportError("Error saving document with id " + doc.getId(), ex, importFile.toString()));
+                            metrics.record("persist", persistStart);
+                            if (stored == null) {
+                                // The transaction was rolled back, so there is nothing to postprocess.
+                                metrics.addDocumentFailed();
+                                return CasConversion.failure();
+                            }
+                            metrics.addDocumentStored();
+                            recordInImportManifest(importFile, doc, conversion.contentHash());
+                            return conversion;
+                        }, p.getExecutor(ImportStage.PERSIST))
+                        .thenApplyAsync(conversion -> {
+                            var doc = conversion.document();
+                            if (doc != null) {
+                                // Log and try to postprocess the document
+                                logImportInfo("Stored document " + importFile.getFileName(), LogStatus.SAVED, importFile.toString(), 0);
+                                logger.info("Finished with the UIMA annotations - postprocessing the doc now.");
+
+                                // Postprocess the document
+                                var postProcessStart = System.nanoTime();
                                 ExceptionUtils.tryCatchLog(
-                                        () -> postProccessCorpus(corpus1, corpusConfigFinal),
-                                        (ex) -> logger.error("Error postprocessing the current corpus with id " + corpus1.getId()));
-                            }, executor);
-                        }
-                    });
-
-        } catch (IOException ex) {
+                                        () -> postProccessDocument(doc, corpusConfigFinal, importFile.toString()),
+                                        (ex) -> logImportError("Error postprocessing a saved document with id " + doc.getId(), (ex), importFile.toString()));
+                                metrics.record("postprocess", postProcessStart);
+                                metrics.addDocumentPostProcessed();
+                                logImportInfo("Finished with import.", LogStatus.FINISHED, importFile.toString(), 0);
+                            }
+                            // A stored document counts as imported, even if its postprocessing failed; that's redone later on.
+                            return !conversion.failed();
+                        }, p.getExecutor(ImportStage.POSTPROCESS))
+                        .whenComplete((imported, ex) -> {
+                            if (workQueue != null) workQueue.complete(importFile, ex == null && Boolean.TRUE.equals(imported));
+                        }));
+
+                int currentCount = counter.incrementAndGet();
+
+                // Periodic corpus postprocessing. The pipeline makes sure that only one of those runs at a time;
+                // if the previous one is still busy, we skip this trigger.
+                if (currentCount % 100 == 0) {
+                    var scheduled = pipeline.submitExclusive(ImportStage.POSTPROCESS, () -> ExceptionUtils.tryCatchLog(
+                            () -> postProccessCorpus(corpus1, corpusConfigFinal, false),
+                            (ex) -> logger.error("Error postprocessing the current corpus with id " + corpus1.getId())));
+                    if (!scheduled) logger.info("Skipping the periodic corpus postprocessing, the previous one is still running.");
+                }
+            };
+            if (workQueue != null) {
+                workQueue.discover(inputFolderName);
+                workQueue.run(inputFolderName, visitor);
+            } else if (pipelineConfig.isLargestFirst())
+                ImportFiles.walkLargestFirst(inputFolderName, pipelineConfig.getReadBufferSize(), visitor);
+            else
+                ImportFiles.walk(inputFolderName, pipelineConfig.getReadBufferSize(), visitor);
+        } catch (IOException | UncheckedIOException ex) {
             logger.error("Error walking the import path: " + inputFolderName, ex);
+        } catch (DatabaseOperationException ex) {
+            logger.error("Error distributing the files of " + inputFolderName + " through the work table.", ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            logger.error("The import of " + inputFolderName + " was interrupted while submitting files.", ex);
         }
 
+        if (skippedCounter.get() > 0)
+            logger.info("Skipped " + skippedCounter.get() + " files that were already imported according to the import manifest.");
+
         // Wait for all tasks to complete
-        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        try {
+            pipeline.awaitCompletion();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while waiting for the import of " + inputFolderName + " to finish.", ex);
+        } finally {
+            pipeline.shutdown();
+            this.uceMetadataFilterRegistry.close();
+            metricsReporter.shutdown();
+        }
 
-        // Final corpus postprocessing
-        ExceptionUtils.tryCatchLog(
-                () -> postProccessCorpus(corpus1, corpusConfigFinal),
-                (ex) -> logger.error("Error in the final postprocessing of the current corpus with id " + corpus1.getId()));
+        // The gbif occurrences of the taxa were fetched in the background and may still be on their way.
+        try {
+            if (!gbifOccurrenceFetchQueue.awaitIdle())
+                logger.warn("Stopped waiting for the gbif occurrences of " + gbifOccurrenceFetchQueue.getOpenCount() + " taxa, a later import fetches them.");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while waiting for the gbif occurrences of " + inputFolderName + ".", ex);
+        }
+
+        // Final corpus postprocessing. In a distributed import, all instances only get here once every file is done,
+        // so the number 1 importer does it for all of them.
+        if (!pipelineConfig.isDistributed() || this.importerNumber == 1)
+            ExceptionUtils.tryCatchLog(
+                    () -> postProccessCorpus(corpus1, corpusConfigFinal, true),
+                    (ex) -> logger.error("Error in the final postprocessing of the current corpus with id " + corpus1.getId()));
 
+        reportImportMetrics();
+        // So the logs of the import are complete once it's reported as done.
+        importLogWriter.flush();
         logger.info("\n\n=================================\n Done with the corpus import.");
-        executor.shutdown();
+    }
+
+    /**
+     * Waits until the number 1 importer of this import stored its UCEImport with the target corpus and returns that corpus.
+     */
+    private Corpus awaitDistributedImportCorpus() throws InterruptedException, DatabaseOperationException {
+        logger.info("Waiting for the number 1 importer to set up the corpus of the import " + this.importId + "...");
+        while (true) {
+            // Until the number 1 importer stored it, there is no UCEImport at all, so failing here is expected.
+            var uceImport = ExceptionUtils.tryCatchLog(() -> db.getUceImportByImportId(this.importId),
+                    (ex) -> logger.debug("The UCEImport " + this.importId + " doesn't exist yet.", ex));
+            if (uceImport != null && uceImport.getTargetCorpusId() != null && uceImport.getTargetCorpusId() > 0)
+                return db.getCorpusById(uceImport.getTargetCorpusId());
+            Thread.sleep(2000);
+        }
     }
 
     /**
@@ -275,14 +499,18 @@ public class Importer {
      * @return
      */
     public Document XMIToDocument(InputStream inputStream, Corpus corpus, String filePath) {
+        JCas jCas = null;
         try {
-            var jCas = JCasFactory.createJCas();
+            jCas = getJCasPool().acquire();
             CasIOUtils.load(inputStream, null, jCas.getCas(), CasLoadMode.LENIENT);
 
             return XMIToDocument(jCas, corpus, filePath);
         } catch (Exception ex) {
             logger.error("Error while reading an annotated xmi file from stream to a cas and transforming it into a document:", ex);
             return null;
+        } finally {
+            // The document holds no references into the CAS, so it can be reused right away.
+            if (jCas != null) jCasPool.release(jCas);
         }
     }
 
@@ -290,27 +518,168 @@ public class Importer {
      * Converts an XMI to a Document by path
      */
     public Document XMIToDocument(String filename, Corpus corpus) {
-        try {
-            var jCas = JCasFactory.createJCas();
-            // Read in the contents of a single xmi cas
-            //var file = new GZIPInputStream(new FileInputStream(filename));
-            var file = new FileInputStream(filename);
+        return ExceptionUtils.tryCatchLog(
+                () -> XMIToDocument(ImportFile.ofFile(Path.of(filename), DEFAULT_READ_BUFFER_SIZE), corpus),
+                (ex) -> logger.error("Error while opening the annotated xmi file " + filename, ex));
+    }
+
+    /**
+     * Converts an importable UIMA file to a Document. The file may be compressed and/or lie within an archive.
+     */
+    public Document XMIToDocument(ImportFile importFile, Corpus corpus) {
+        return convertImportFile(importFile, corpus).document();
+    }
+
+    private CasConversion convertImportFile(ImportFile importFile, Corpus corpus) {
+        JCas jCas = null;
+        // The manifest remembers the hash of the file, which is taken while we parse it instead of reading it twice.
+        var digest = this.importManifest != null && !importFile.isArchiveEntry() ? ImportManifest.newDigest() : null;
+        // Read in the contents of a single xmi cas. Compressed files are decompressed while we stream them.
+        try (var inputStream = importFile.openStream(digest)) {
+            // Before we build a whole CAS, peek at the documentId and check if we already know that document.
+            // Binary CASes have no readable header, those are checked once they are loaded.
+            var documentId = importFile.isBinaryCas() || dryRun ? null : ExceptionUtils.tryCatchLog(
+                    () -> {
+                        try (var headerStream = importFile.openStream()) {
+                            return XmiHeaderScanner.scanDocumentId(headerStream);
+                        }
+                    },
+                    (ex) -> logger.warn("Couldn't pre-scan the documentId of " + importFile + ", parsing it fully instead.", ex));
+            if (documentId != null) {
+                var existingDoc = handleExistingDocument(corpus, documentId, importFile.toString());
+                if (existingDoc != null) {
+                    // Remember the file, so the next run doesn't even have to open it.
+                    recordInImportManifest(importFile, existingDoc, finishContentHash(inputStream, digest));
+                    return CasConversion.skipped();
+                }
+            }
+
+            jCas = getJCasPool().acquire();
             // https://uima.apache.org/d/uimaj-current/api/org/apache/uima/util/CasIOUtils.html
             // tsiInputStream: Optional stream for typesystem - only used if not null. (which it currently is)
-            CasIOUtils.load(file, null, jCas.getCas(), CasLoadMode.LENIENT);
+            // CasIOUtils detects the format by itself, so this loads XMIs as well as binary CASes. Binary CASes
+            // without an embedded type system are read with the type system of our pooled CAS.
+            var parseStart = System.nanoTime();
+            CasIOUtils.load(inputStream, null, jCas.getCas(), CasLoadMode.LENIENT);
+            metrics.record("parse", parseStart);
+            var contentHash = finishContentHash(inputStream, digest);
 
-            return XMIToDocument(jCas, corpus, filename);
+            // The pre-scan already made sure that the document is new, no need to ask the database again.
+            var conversion = convertCas(jCas, corpus, importFile.toString(), documentId);
+            if (conversion.document() != null) metrics.addDocumentParsed(importFile.getSize(), jCas.getAnnotationIndex().size());
+            return conversion.withContentHash(contentHash);
         } catch (Exception ex) {
             logger.error("Error while reading an annotated xmi file to a cas and transforming it into a document:", ex);
-            return null;
+            metrics.addDocumentFailed();
+            return CasConversion.failure();
+        } finally {
+            if (jCas != null) jCasPool.release(jCas);
+        }
+    }
+
+    /**
+     * Reads the rest of the file into the digest, since the parser may stop before the end, and returns the hash.
+     */
+    private static String finishContentHash(InputStream inputStream, MessageDigest digest) throws IOException {
+        if (digest == null) return null;
+        inputStream.transferTo(OutputStream.nullOutputStream());
+        return ImportManifest.formatHash(digest);
+    }
+
+    /**
+     * The outcome of converting a single file: the new document, nothing because the document already exists,
+     * or nothing because the conversion failed. The content hash of the file is kept for the import manifest.
+     */
+    private record CasConversion(Document document, boolean failed, String contentHash) {
+        private static CasConversion converted(Document document) {
+            return new CasConversion(document, false, null);
+        }
+
+        private static CasConversion skipped() {
+            return new CasConversion(null, false, null);
+        }
+
+        private static CasConversion failure() {
+            return new CasConversion(null, true, null);
+        }
+
+        private CasConversion withContentHash(String contentHash) {
+            return new CasConversion(document, failed, contentHash);
         }
     }
 
+    /**
+     * Checks whether a document with that documentId already exists in the corpus. If so, it is postprocessed
+     * in case that didn't happen yet and returned, so the caller can skip the document. Otherwise, null is returned.
+     */
+    private Document handleExistingDocument(Corpus corpus, String documentId, String filePath) throws DatabaseOperationException {
+        if (!db.documentExists(corpus.getId(), documentId)) return null;
+
+        logger.info("Document with id " + documentId + " already exists in the corpus " + corpus.getId() + ".");
+        logger.info("Checking if that document was also post-processed yet...");
+        var existingDoc = db.getDocumentByCorpusAndDocumentId(corpus.getId(), documentId);
+        if (!existingDoc.isPostProcessed()) {
+            logger.info("Not yet post-processed. Doing that now.");
+            postProccessDocument(existingDoc, gson.fromJson(corpus.getCorpusJsonConfig(), CorpusConfig.class), filePath);
+        }
+        logger.info("Done.");
+        return existingDoc;
+    }
+
+    /**
+     * The import manifest only knows files on disk. Entries of archives are always checked by their documentId.
+     */
+    private boolean isAlreadyImported(ImportFile importFile) {
+        if (this.importManifest == null || importFile.isArchiveEntry()) return false;
+        var imported = ExceptionUtils.tryCatchLog(() -> importManifest.isImported(importFile.getPath()),
+                (ex) -> logger.warn("Couldn't check the import manifest for " + importFile + ", importing it.", ex));
+        return imported != null && imported;
+    }
+
+    private void recordInImportManifest(ImportFile importFile, Document document, String contentHash) {
+        if (this.importManifest == null || importFile.isArchiveEntry()) return;
+        ExceptionUtils.tryCatchLog(() -> importManifest.record(importFile.getPath(), document, contentHash),
+                (ex) -> logger.warn("Couldn't record " + importFile + " in the import manifest.", ex));
+    }
+
+    private boolean hasCorpusTypeSystem() {
+        return this.path != null && Files.isRegularFile(Path.of(this.path, TYPESYSTEM_FILE_NAME));
+    }
+
+    /**
+     * Creates the JCasPool for this corpus. If the corpus brings its own typesystem.xml next to the corpusConfig.json,
+     * it is merged into the default type system once here, instead of being read from every (binary) CAS.
+     */
+    private JCasPool createJCasPool(int size) throws ResourceInitializationException {
+        if (!hasCorpusTypeSystem()) return new JCasPool(size);
+
+        var typeSystemPath = Path.of(this.path, TYPESYSTEM_FILE_NAME);
+        logger.info("Using the type system of the corpus at " + typeSystemPath);
+        return new JCasPool(size,
+                TypeSystemDescriptionFactory.createTypeSystemDescription(),
+                TypeSystemDescriptionFactory.createTypeSystemDescriptionFromPath(typeSystemPath.toUri().toString()));
+    }
+
+    /**
+     * Gets the JCasPool of this importer. If none was given or created through {@link #start(int)}, e.g. for single
+     * uploads, we fall back to a pool with a single CAS.
+     */
+    private synchronized JCasPool getJCasPool() throws ResourceInitializationException {
+        if (this.jCasPool == null) this.jCasPool = new JCasPool(1);
+        return this.jCasPool;
+    }
+
     /**
      * Convert a UIMA jCas to an OCRDocument
      */
     public Document XMIToDocument(JCas jCas, Corpus corpus, String filePath) {
+        return convertCas(jCas, corpus, filePath, null).document();
+    }
 
+    /**
+     * @param newDocumentId The documentId that is already known not to exist in the corpus, or null.
+     */
+    private CasConversion convertCas(JCas jCas, Corpus corpus, String filePath, String newDocumentId) {
         logger.info("=============================== Importing a new CAS as a Document. ===============================");
 
         // Read in the contents of a single xmi cas to see what's inside
@@ -327,8 +696,8 @@ public class Importer {
             // First, metadata
             var metadata = JCasUtil.selectSingle(jCas, DocumentMetaData.class);
             if (metadata == null) {
-                // If the metadata block is missing, something is off. In that case, return null
-                return null;
+                // If the metadata block is missing, something is off. In that case, there is no document
+                return CasConversion.failure();
             }
             var document = new Document(metadata.getLanguage(),
                     metadata.getDocumentTitle(),
@@ -338,22 +707,12 @@ public class Importer {
             logImportInfo("Importing " + document.getDocumentId(), LogStatus.CAS_IMPORT, filePath, 0);
             // We track how long each document import takes.
             var start = System.currentTimeMillis();
+            var extractStart = System.nanoTime();
 
             // Before we parse and add that document, lets check if a document with that id and in that
             // corpus already exists. If we created a new corpus, this will always be null.
-            var exists = db.documentExists(corpus.getId(), document.getDocumentId());
-            if (exists) {
-                logger.info("Document with id " + document.getDocumentId()
-                        + " already exists in the corpus " + corpus.getId() + ".");
-                logger.info("Checking if that document was also post-processed yet...");
-                var existingDoc = db.getDocumentByCorpusAndDocumentId(corpus.getId(), document.getDocumentId());
-                if (!existingDoc.isPostProcessed()) {
-                    logger.info("Not yet post-processed. Doing that now.");
-                    postProccessDocument(existingDoc, corpusConfig, filePath);
-                }
-                logger.info("Done.");
-                return null;
-            }
+            var knownAsNew = newDocumentId != null && newDocumentId.equals(document.getDocumentId());
+            if (!dryRun && !knownAsNew && handleExistingDocument(corpus, document.getDocumentId(), filePath) != null) return CasConversion.skipped();
 
             // Set the full text
             document.setFullText(jCas.getDocumentText());
@@ -363,57 +722,67 @@ public class Importer {
 
             // For now, we skip this. This doesn't relly improve anything and is very costly.
             //setCleanedFullText(document, jCas);
+
+            // The extractors only read the CAS and each one sets its own annotations of the document, so for large
+            // documents they run side by side. The pages come last, as they are assigned to the extracted annotations.
+            var extractors = new ArrayList<Runnable>();
             if (corpusConfig.getAnnotations().isUceMetadata())
-                ExceptionUtils.tryCatchLog(
+                extractors.add(metrics.timed("extract_uce_metadata", () -> ExceptionUtils.tryCatchLog(
                         () -> setUceMetadata(document, jCas, corpus.getId()),
-                        (ex) -> logImportWarn("This file should have contained UceMetadata annotations, but selecting them caused an error.", ex, filePath));
+                        (ex) -> logImportWarn("This file should have contained UceMetadata annotations, but selecting them caused an error.", ex, filePath))));
 
             if (corpusConfig.getAnnotations().isSentence())
-                ExceptionUtils.tryCatchLog(
+                extractors.add(metrics.timed("extract_sentences", () -> ExceptionUtils.tryCatchLog(
                         () -> setSentences(document, jCas),
-                        (ex) -> logImportWarn("This file should have contained sentence annotations, but selecting them caused an error.", ex, filePath));
+                        (ex) -> logImportWarn("This file should have contained sentence annotations, but selecting them caused an error.", ex, filePath))));
 
             if (corpusConfig.getAnnotations().isNamedEntity())
-                ExceptionUtils.tryCatchLog(
+                extractors.add(metrics.timed("extract_named_entities", () -> ExceptionUtils.tryCatchLog(
                         () -> setNamedEntities(document, jCas),
-                        (ex) -> logImportWarn("This file should have contained ner annotations, but selecting them caused an error.", ex, filePath));
+                        (ex) -> logImportWarn("This file should have contained ner annotations, but selecting them caused an error.", ex, filePath))));
 
             if (corpusConfig.getAnnotations().isLemma())
-                ExceptionUtils.tryCatchLog(
+                extractors.add(metrics.timed("extract_lemmata", () -> ExceptionUtils.tryCatchLog(
                         () -> setLemmata(document, jCas),
-                        (ex) -> logImportWarn("This file should have contained lemmata annotations, but selecting them caused an error.", ex, filePath));
+                        (ex) -> logImportWarn("This file should have contained lemmata annotations, but selecting them caused an error.", ex, filePath))));
 
             if (corpusConfig.getAnnotations().isSrLink())
-                ExceptionUtils.tryCatchLog(
+                extractors.add(metrics.timed("extract_semantic_roles", () -> ExceptionUtils.tryCatchLog(
                         () -> setSemanticRoleLabels(document, jCas),
-                        (ex) -> logImportWarn("This file should have contained SRL annotations, but selecting them caused an error.", ex, filePath));
+                        (ex) -> logImportWarn("This file should have contained SRL annotations, but selecting them caused an error.", ex, filePath))));
 
             if (corpusConfig.getAnnotations().isTime())
-                ExceptionUtils.tryCatchLog(
+                extractors.add(metrics.timed("extract_times", () -> ExceptionUtils.tryCatchLog(
                         () -> setTimes(document, jCas),
-                        (ex) -> logImportWarn("This file should have contained time annotations, but selecting them caused an error.", ex, filePath));
+                        (ex) -> logImportWarn("This file should have contained time annotations, but selecting them caused an error.", ex, filePath))));
 
             if (corpusConfig.getAnnotations().getTaxon().isAnnotated())
-                ExceptionUtils.tryCatchLog(
+                extractors.add(metrics.timed("extract_taxonomy", () -> ExceptionUtils.tryCatchLog(
                         () -> setTaxonomy(document, jCas, corpusConfig),
-                        (ex) -> logImportWarn("This file should have contained taxon annotations, but selecting them caused an error.", ex, filePath));
+                        (ex) -> logImportWarn("This file should have contained taxon annotations, but selecting them caused an error.", ex, filePath))));
 
             if (corpusConfig.getAnnotations().isWikipediaLink())
-                ExceptionUtils.tryCatchLog(
+                extractors.add(metrics.timed("extract_wiki_links", () -> ExceptionUtils.tryCatchLog(
                         () -> setWikiLinks(document, jCas),
-                        (ex) -> logImportWarn("This file should have contained wiki links annotations, but selecting them caused an error.", ex, filePath));
+                        (ex) -> logImportWarn("This file should have contained wiki links annotations, but selecting them caused an error.", ex, filePath))));
+
+            runExtractors(extractors, jCas, filePath);
 
+            var pagesStart = System.nanoTime();
             ExceptionUtils.tryCatchLog(
                     () -> setPages(document, jCas, corpusConfig),
                     (ex) -> logImportWarn("This file should have contained OCRPage annotations, but selecting them caused an error.", ex, filePath));
+            metrics.record("extract_pages", pagesStart);
+            metrics.record("extract", extractStart);
 
             var duration = System.currentTimeMillis() - start;
             logImportInfo("Successfully extracted all annotations from " + filePath, LogStatus.FINISHED, filePath, duration);
 
-            return document;
+            return CasConversion.converted(document);
         } catch (Exception ex) {
             logImportError("Unknown error while importing a CAS into a document. This shouldn't happen, as each operation has its own error handling.", ex, filePath);
-            return null;
+            metrics.addDocumentFailed();
+            return CasConversion.failure();
         } finally {
             logger.info("Finished with importing that CAS.\n\n\n");
         }
@@ -427,56 +796,43 @@ public class Importer {
         JCasUtil.select(jCas, org.texttechnologylab.annotation.uce.Metadata.class).forEach(t -> {
             var metadata = new UCEMetadata();
             metadata.setComment(t.getComment());
-            metadata.setValue(t.getValue());
-            metadata.setKey(t.getKey());
+            metadata.setKey(stringPool.intern(t.getKey()));
             metadata.setValueType(UCEMetadataValueType.valueOf(t.getValueType().toUpperCase()));
+            // Enum values are categories as well, all others are free text.
+            metadata.setValue(metadata.getValueType() == UCEMetadataValueType.ENUM ? stringPool.intern(t.getValue()) : t.getValue());
             data.add(metadata);
 
-            // Now check if we have added a new distinct metadata. If not, then cache it for filtering later.
-            // But we are not interested in filtering for JSON content. That's not feasible.
-            if (metadata.getValueType() == UCEMetadataValueType.JSON) return;
-            var possibleFilter = this.uceMetadataFilters
-                    .stream()
-                    .filter(f -> f.getKey().equals(t.getKey()) && metadata.getValueType() == metadata.getValueType())
-                    .findFirst();
-            // If it's empty, we don't have that metadata cached as a filter yet. So do it.
-            if (possibleFilter.isEmpty()) {
-                var newFilter = new UCEMetadataFilter(corpusId, metadata.getKey(), metadata.getValueType());
-                newFilter.addPossibleCategory(metadata.getValue());
-                synchronized (newFilter) {
-                    this.uceMetadataFilters.add(newFilter);
-                }
-                ExceptionUtils.tryCatchLog(
-                        () -> db.saveUCEMetadataFilter(newFilter),
-                        (ex) -> logger.error("Tried saving a new UCEMetadataFilter, but got an error: ", ex));
-            } else {
-                // If this filter already exists, then we need to check if it's an Enum filter. If yes, there is a chance
-                // that a new category to that enum must be added and stored. Let's check.
-                var existingFilter = possibleFilter.get();
-                if (existingFilter.getValueType() != UCEMetadataValueType.ENUM)
-                    return; // There is nothing to update for none enums.
-                // Again, thread safety. If this worker updates a filter category, we need the other to know.
-                synchronized (existingFilter) {
-                    if (existingFilter.getPossibleCategories().stream().noneMatch(c -> c.equals(metadata.getValue()))) {
-                        existingFilter.addPossibleCategory(metadata.getValue());
-                        ExceptionUtils.tryCatchLog(
-                                () -> db.saveOrUpdateUCEMetadataFilter(existingFilter),
-                                (ex) -> logger.error("Tried updating an existing UCEMetadataFilter, but got an error: ", ex));
-                    }
-                }
-            }
+            // Cache the distinct metadata as filters; the registry takes care of storing them.
+            uceMetadataFilterRegistry.register(corpusId, metadata.getKey(), metadata.getValueType(), metadata.getValue());
         });
         document.setUceMetadata(data);
         logger.info("Setting UCE Metadata done.");
     }
 
+    /**
+     * Runs the annotation extractors of a document. Documents with more annotations than the parallel extraction
+     * threshold run them concurrently, all others one after another, which is cheaper for the many small ones.
+     */
+    private void runExtractors(List<Runnable> extractors, JCas jCas, String filePath) {
+        var annotationCount = jCas.getAnnotationIndex().size();
+        if (extractionExecutor == null || parallelExtractionThreshold <= 0 || annotationCount < parallelExtractionThreshold) {
+            extractors.forEach(Runnable::run);
+            return;
+        }
+
+        logger.info("Extracting the " + annotationCount + " annotations of " + filePath + " in parallel.");
+        CompletableFuture.allOf(extractors.stream()
+                .map(extractor -> CompletableFuture.runAsync(extractor, extractionExecutor))
+                .toArray(CompletableFuture[]::new)).join();
+    }
+
     /**
      * Select and set possible metadata. Also adds Goethe Scraping if applicable
      */
     private void setMetadataTitleInfo(Document document, JCas jCas, CorpusConfig corpusConfig) {
         // See if we can get any more information from the goethe collections
         var metadataTitleInfo = new MetadataTitleInfo();
-        if (corpusConfig.getOther().isAvailableOnFrankfurtUniversityCollection()) {
+        if (corpusConfig.getOther().isAvailableOnFrankfurtUniversityCollection() && !dryRun) {
             metadataTitleInfo = ExceptionUtils.tryCatchLog(
                     () -> goetheUniversityService.scrapeDocumentTitleInfo(document.getDocumentId()),
                     (ex) -> logger.error("Error scraping the metadata info of the document with id: " + document.getDocumentId(), ex));
@@ -508,6 +864,14 @@ public class Importer {
         // Set the OCRpages
         if (corpusConfig.getAnnotations().isOCRPage()) {
             var pages = new ArrayList<Page>();
+            // The OCR elements of all pages are indexed in one go rather than selected page by page.
+            var annotations = corpusConfig.getAnnotations();
+            Map<OCRPage, List<OCRParagraph>> coveredParagraphs = annotations.isOCRParagraph()
+                    ? JCasUtil.indexCovered(jCas, OCRPage.class, OCRParagraph.class) : Map.of();
+            Map<OCRPage, List<OCRBlock>> coveredBlocks = annotations.isOCRBlock()
+                    ? JCasUtil.indexCovered(jCas, OCRPage.class, OCRBlock.class) : Map.of();
+            Map<OCRPage, List<OCRLine>> coveredLines = annotations.isOCRLine()
+                    ? JCasUtil.indexCovered(jCas, OCRPage.class, OCRLine.class) : Map.of();
             // We go through each page
             JCasUtil.select(jCas, OCRPage.class).forEach(p -> {
                 // New page
@@ -515,16 +879,15 @@ public class Importer {
                 page.setDocument(document);
                 page.setCoveredText(p.getCoveredText());
 
-                if (corpusConfig.getAnnotations().isOCRParagraph())
-                    page.setParagraphs(getCoveredParagraphs(p));
+                if (annotations.isOCRParagraph())
+                    page.setParagraphs(getCoveredParagraphs(coveredParagraphs.getOrDefault(p, List.of()), document.getFullText()));
 
-                if (corpusConfig.getAnnotations().isOCRBlock())
-                    page.setBlocks(getCoveredBlocks(p));
+                if (annotations.isOCRBlock())
+                    page.setBlocks(getCoveredBlocks(coveredBlocks.getOrDefault(p, List.of()), document.getFullText()));
 
-                if (corpusConfig.getAnnotations().isOCRLine())
-                    page.setLines(getCoveredLines(p));
+                if (annotations.isOCRLine())
+                    page.setLines(getCoveredLines(coveredLines.getOrDefault(p, List.of()), document.getFullText()));
 
-                updateAnnotationsWithPageId(document, page, false);
                 pages.add(page);
             });
             document.setPages(pages);
@@ -544,7 +907,6 @@ public class Importer {
                 page.setCoveredText(fullText.substring(i, pageEnd));
                 page.setDocument(document);
                 pageNumber += 1;
-                updateAnnotationsWithPageId(document, page, false);
 
                 pages.add(page);
             }
@@ -552,30 +914,22 @@ public class Importer {
             logger.info("Setting synthetic pages done.");
         }
 
-        // Since we have some errors in the annotation (mainly we have an offset in begin and end sometimes),
-        // we need to cleanup at the end so that every annotation that doesn't have a page (because of the error offset)
-        // is assigned to the last page.
-        updateAnnotationsWithPageId(document, document.getPages().getLast(), true);
+        updateAnnotationsWithPageId(document);
     }
 
-    private void updateAnnotationsWithPageId(Document document, Page page, boolean isLastPage) {
-        // Set the pages for the different annotations
-        for (var anno : document.getBiofidTaxons().stream().filter(t ->
-                (t.getBegin() >= page.getBegin() && t.getEnd() <= page.getEnd()) || (t.getPage() == null && isLastPage)).toList()) {
-            anno.setPage(page);
-        }
-        for (var anno : document.getTaxons().stream().filter(t ->
-                (t.getBegin() >= page.getBegin() && t.getEnd() <= page.getEnd()) || (t.getPage() == null && isLastPage)).toList()) {
-            anno.setPage(page);
-        }
-        for (var anno : document.getNamedEntities().stream().filter(t ->
-                (t.getBegin() >= page.getBegin() && t.getEnd() <= page.getEnd()) || (t.getPage() == null && isLastPage)).toList()) {
-            anno.setPage(page);
-        }
-        for (var anno : document.getTimes().stream().filter(t ->
-                (t.getBegin() >= page.getBegin() && t.getEnd() <= page.getEnd()) || (t.getPage() == null && isLastPage)).toList()) {
-            anno.setPage(page);
-        }
+    /**
+     * Assigns every annotation to the last page that covers it. Since we have some errors in the annotation
+     * (mainly we have an offset in begin and end sometimes), every annotation that isn't covered by any page
+     * (because of the error offset) is assigned to the last page.
+     */
+    private void updateAnnotationsWithPageId(Document document) {
+        var pageAssigner = new PageAssigner(document.getPages());
+        pageAssigner.assign(document.getBiofidTaxons(), BiofidTaxon::setPage);
+        pageAssigner.assign(document.getTaxons(), Taxon::setPage);
+        pageAssigner.assign(document.getNamedEntities(), NamedEntity::setPage);
+        pageAssigner.assign(document.getTimes(), Time::setPage);
+        pageAssigner.assign(document.getLemmas(), Lemma::setPage);
+        pageAssigner.assign(document.getSentences(), Sentence::setPage);
     }
 
     /**
@@ -605,6 +959,15 @@ public class Importer {
     private void setTaxonomy(Document document, JCas jCas, CorpusConfig corpusConfig) {
         var taxons = new ArrayList<Taxon>();
         var biofidTaxons = new ArrayList<BiofidTaxon>();
+        var isBiofidOnthologyAnnotated = corpusConfig.getAnnotations().getTaxon().isBiofidOnthologyAnnotated();
+
+        // The biofid ids of all taxa of the document are resolved up front, in as few sparql queries as possible.
+        var resolvedBiofidIds = isBiofidOnthologyAnnotated && !dryRun
+                ? biofidTaxonResolver.resolveAll(JCasUtil.select(jCas, org.texttechnologylab.annotation.type.Taxon.class).stream()
+                .filter(t -> t.getIdentifier() != null)
+                .flatMap(t -> splitBiofidIds(t.getIdentifier()).stream())
+                .collect(Collectors.toSet()))
+                : Map.<String, BiofidTaxonResolver.ResolvedBiofidId>of();
 
         JCasUtil.select(jCas, org.texttechnologylab.annotation.type.Taxon.class).forEach(t -> {
             var taxon = new Taxon(t.getBegin(), t.getEnd());
@@ -613,24 +976,18 @@ public class Importer {
             taxon.setCoveredText(t.getCoveredText());
             taxon.setIdentifier(t.getIdentifier());
             // We need to handle taxons specifically, depending on whether they have annotated identifiers.
-            if (corpusConfig.getAnnotations().getTaxon().isBiofidOnthologyAnnotated() && taxon.getIdentifier() != null && !taxon.getIdentifier().isEmpty()) {
-                // The recognized taxons should be split by a |
-                var occurrences = new ArrayList<GbifOccurrence>();
-                var splited = new ArrayList<String>();
-                // Sometimes they are delimitered by |, sometimes by space - who knows in this dump? :)
-                for (var split : taxon.getIdentifier().split("\\|")) {
-                    splited.addAll(Arrays.asList(split.split(" ")));
-                }
-
-                for (var potentialBiofidId : splited) {
+            if (isBiofidOnthologyAnnotated && taxon.getIdentifier() != null && !taxon.getIdentifier().isEmpty()) {
+                for (var potentialBiofidId : splitBiofidIds(taxon.getIdentifier())) {
                     // The biofid urls are like: https://www.biofid.de/bio-ontologies/gbif/10428508
                     // We need the last number in that string, have a lookup into our sparql database and from there fetch the
                     // correct TaxonId
                     if (potentialBiofidId.isEmpty()) continue;
 
                     // Before we do GbifOccurence stuff, we build specific BiofidTaxon objects if we can.
+                    var resolvedBiofidId = resolvedBiofidIds.get(potentialBiofidId.trim());
+                    if (resolvedBiofidId == null) continue;
                     var newBiofidTaxons = ExceptionUtils.tryCatchLog(
-                            () -> jenaSparqlService.queryBiofidTaxon(potentialBiofidId),
+                            () -> resolvedBiofidId.createBiofidTaxons(),
                             (ex) -> logger.error("Error building a BiofidTaxon object from a potential id.", ex));
                     if (newBiofidTaxons != null) {
                         for (var biofidTaxon : newBiofidTaxons) {
@@ -643,30 +1000,16 @@ public class Importer {
                         }
                     }
 
-                    var taxonId = ExceptionUtils.tryCatchLog(
-                            () -> jenaSparqlService.biofidIdUrlToGbifTaxonId(potentialBiofidId),
-                            (ex) -> logger.error("Error getting the taxonId of a biofid annotation while importing.", ex));
-                    if (taxonId == null || taxonId == -1) continue;
+                    var taxonId = resolvedBiofidId.gbifTaxonId();
+                    if (taxonId == -1) continue;
                     taxon.setGbifTaxonId(taxonId);
+                    taxon.setPrimaryBiofidOntologyIdentifier(potentialBiofidId);
 
-                    // Now check if we already have stored occurences for that taxon - we don't need to do that again then.
-                    // We need to check in the current loop and in the database.
-                    if (taxons.stream().anyMatch(ta -> ta.getGbifTaxonId() == taxonId)) break;
-                    var is = ExceptionUtils.tryCatchLog(() -> db.checkIfGbifOccurrencesExist(taxonId),
-                            (ex) -> logger.error("Error checking if taxon occurrence already exists.", ex));
-                    if (is == null || is) break;
-
-                    // Otherwise, fetch new occurrences.
-                    var potentialOccurrences = ExceptionUtils.tryCatchLog(
-                            () -> gbifService.scrapeGbifOccurrence(taxonId),
-                            (ex) -> logger.error("Error scraping the gbif occurrence of taxonId: " + taxonId, ex));
-                    if (potentialOccurrences != null && !potentialOccurrences.isEmpty()) {
-                        occurrences.addAll(potentialOccurrences);
-                        taxon.setPrimaryBiofidOntologyIdentifier(potentialBiofidId);
-                        break;
-                    }
+                    // The occurrences are fetched and stored in the background, at most once per taxon. They are
+                    // linked to the taxon by its gbif taxon id, not by the document.
+                    gbifOccurrenceFetchQueue.enqueue(taxonId);
+                    break;
                 }
-                taxon.setGbifOccurrences(occurrences);
             }
             taxons.add(taxon);
         });
@@ -675,6 +1018,20 @@ public class Importer {
         logger.info("Setting Taxons done.");
     }
 
+    /**
+     * The recognized taxons should be split by a |, but sometimes they are delimitered by |, sometimes by space -
+     * who knows in this dump? :)
+     */
+    private static List<String> splitBiofidIds(String identifier) {
+        var splited = new ArrayList<String>();
+        for (var split : identifier.split("\\|")) {
+            for (var id : split.split(" ")) {
+                if (!id.isEmpty()) splited.add(id);
+            }
+        }
+        return splited;
+    }
+
     /**
      * Selects and sets the times to the document.
      */
@@ -708,7 +1065,7 @@ public class Importer {
             var srLink = new org.texttechnologylab.models.corpus.SrLink();
             var figure = a.getFigure();
             var ground = a.getGround();
-            srLink.setRelationType(a.getRel_type());
+            srLink.setRelationType(stringPool.intern(a.getRel_type()));
 
             srLink.setFigureBegin(figure.getBegin());
             srLink.setFigureEnd(figure.getEnd());
@@ -730,39 +1087,42 @@ public class Importer {
     private void setLemmata(Document document, JCas jCas) {
         // Set the lemmas
         var lemmas = new ArrayList<org.texttechnologylab.models.corpus.Lemma>();
+        // Index the POS and morphology under each lemma once, instead of seeking them per lemma.
+        var coveredPos = JCasUtil.indexCovered(jCas, de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Lemma.class, POS.class);
+        var coveredMorphs = JCasUtil.indexCovered(jCas, de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Lemma.class, MorphologicalFeatures.class);
         JCasUtil.select(jCas, de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Lemma.class).forEach(l -> {
             var lemma = new org.texttechnologylab.models.corpus.Lemma(l.getBegin(), l.getEnd());
             lemma.setDocument(document);
             lemma.setCoveredText(l.getCoveredText());
             lemma.setValue(l.getValue());
 
-            var potentialPos = JCasUtil.selectCovered(POS.class, l).stream().findFirst();
+            var potentialPos = coveredPos.getOrDefault(l, List.of()).stream().findFirst();
             if (potentialPos.isPresent()) {
                 var pos = potentialPos.get();
-                lemma.setPosValue(pos.getPosValue());
-                lemma.setCoarseValue(pos.getCoarseValue());
+                lemma.setPosValue(stringPool.intern(pos.getPosValue()));
+                lemma.setCoarseValue(stringPool.intern(pos.getCoarseValue()));
             }
 
-            var potentialMorph = JCasUtil.selectCovered(MorphologicalFeatures.class, l).stream().findFirst();
+            var potentialMorph = coveredMorphs.getOrDefault(l, List.of()).stream().findFirst();
             if (potentialMorph.isPresent()) {
                 var morph = potentialMorph.get();
-                lemma.setAnimacy(morph.getAnimacy());
-                lemma.setAspect(morph.getAspect());
-                lemma.setCasee(morph.getCase());
-                lemma.setDefiniteness(morph.getDefiniteness());
-                lemma.setDegree(morph.getDegree());
-                lemma.setGender(morph.getGender());
-                lemma.setMood(morph.getMood());
-                lemma.setNegative(morph.getNegative());
-                lemma.setNumber(morph.getNumber());
-                lemma.setNumberType(morph.getNumType());
-                lemma.setPerson(morph.getPerson());
-                lemma.setPossessive(morph.getPossessive());
-                lemma.setPronType(morph.getPronType());
-                lemma.setReflex(morph.getReflex());
-                lemma.setTense(morph.getTense());
-                lemma.setVerbForm(morph.getVerbForm());
-                lemma.setVoice(morph.getVoice());
+                lemma.setAnimacy(stringPool.intern(morph.getAnimacy()));
+                lemma.setAspect(stringPool.intern(morph.getAspect()));
+                lemma.setCasee(stringPool.intern(morph.getCase()));
+                lemma.setDefiniteness(stringPool.intern(morph.getDefiniteness()));
+                lemma.setDegree(stringPool.intern(morph.getDegree()));
+                lemma.setGender(stringPool.intern(morph.getGender()));
+                lemma.setMood(stringPool.intern(morph.getMood()));
+                lemma.setNegative(stringPool.intern(morph.getNegative()));
+                lemma.setNumber(stringPool.intern(morph.getNumber()));
+                lemma.setNumberType(stringPool.intern(morph.getNumType()));
+                lemma.setPerson(stringPool.intern(morph.getPerson()));
+                lemma.setPossessive(stringPool.intern(morph.getPossessive()));
+                lemma.setPronType(stringPool.intern(morph.getPronType()));
+                lemma.setReflex(stringPool.intern(morph.getReflex()));
+                lemma.setTense(stringPool.intern(morph.getTense()));
+                lemma.setVerbForm(stringPool.intern(morph.getVerbForm()));
+                lemma.setVoice(stringPool.intern(morph.getVoice()));
             }
 
             lemmas.add(lemma);
@@ -798,13 +1158,20 @@ public class Importer {
     }
 
     /**
-     * Selects and sets the sentences to a document
+     * Selects and sets the sentences to a document. Unless configured otherwise, they only keep their offsets
+     * and derive their covered text from the full text of the document.
      */
     private void setSentences(Document document, JCas jCas) {
         // Set the sentences
         document.setSentences(JCasUtil.select(jCas, de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence.class)
                 .stream()
-                .map(s -> new org.texttechnologylab.models.corpus.Sentence(s.getBegin(), s.getEnd(), s.getCoveredText()))
+                .map(s -> {
+                    if (!ANNOTATION_OFFSETS_ONLY)
+                        return new org.texttechnologylab.models.corpus.Sentence(s.getBegin(), s.getEnd(), s.getCoveredText());
+                    var sentence = new org.texttechnologylab.models.corpus.Sentence(s.getBegin(), s.getEnd());
+                    sentence.setDocumentText(document.getFullText());
+                    return sentence;
+                })
                 .toList());
         logger.info("Setting sentences done.");
     }
@@ -816,12 +1183,13 @@ public class Importer {
     @Obsolete
     private void setCleanedFullText(Document document, JCas jCas) {
         var cleanedText = new StringJoiner(" ");
+        var coveredAnomaliesByToken = JCasUtil.indexCovered(jCas, Token.class, Anomaly.class);
         JCasUtil.select(jCas, Token.class).forEach(t -> {
             // We don't want any tokens with suspicious chars here.
             if (t instanceof OCRToken ocr && ocr.getSuspiciousChars() > 0) {
                 return;
             }
-            var coveredAnomalies = JCasUtil.selectCovered(Anomaly.class, t).size();
+            var coveredAnomalies = coveredAnomaliesByToken.getOrDefault(t, List.of()).size();
             if (coveredAnomalies == 0) cleanedText.add(t.getCoveredText());
         });
         document.setFullTextCleaned(cleanedText.toString());
@@ -831,80 +1199,46 @@ public class Importer {
      * Apply any postprocessing once the corpus is finished calculating. This will be called even
      * when the corpus import didn't finish due to an error. We still postprocess what we have.
      */
-    private void postProccessCorpus(Corpus corpus, CorpusConfig corpusConfig) {
+    private void postProccessCorpus(Corpus corpus, CorpusConfig corpusConfig, boolean isFinalRun) {
         logger.info("Postprocessing the Corpus " + corpus.getName());
 
         // Calculate the tsne reductions of the whole corpus and finally the tsne plot
         if (corpusConfig.getOther().isEnableEmbeddings()) {
             logger.info("Embeddings...");
 
-            // The corpus can be gigantic and we cant pass hundreds of thousand of embeddings into
-            // a rest API and perform reductions on them. Instead, we sample them.
-            var corpusDocuments = ExceptionUtils.tryCatchLog(() -> db.getNonePostprocessedDocumentsByCorpusId(corpus.getId()),
-                    (ex) -> logger.error("Error while fetching none postprocessed documents of corpus with id " + corpus.getId(), ex));
-            if (corpusDocuments == null) return;
-
-            Collections.shuffle(corpusDocuments); // We want random samples of size CHUNKSIZE
-            var chunked = ListUtils.partitionList(corpusDocuments, 100);
-
-            for (var documents : chunked) {
-                // Get the complete list of document chunk embeddings of all documents
-                var docChunkEmbeddings = documents.stream()
-                        .flatMap(d -> ExceptionUtils.tryCatchLog(
-                                () -> ragService.getDocumentChunkEmbeddingsOfDocument(d.getId()).stream(),
-                                (ex) -> logger.error("Error getting the document chunk embeddings of document " + d.getId(), ex)))
-                        .filter(Objects::nonNull)
-                        .toList();
-
-                // Now, from these chunks - generate a 2D and 3D tsne reduction embedding and store it
-                // with the single document embedding
-                var reducedEmbeddingDto = ExceptionUtils.tryCatchLog(
-                        () -> ragService.getEmbeddingDimensionReductions(
-                                docChunkEmbeddings.stream().map(DocumentChunkEmbedding::getEmbedding).toList()),
-                        (ex) -> logger.error("Error getting embedding dimension reductions in post processing a corpus.", ex));
-
-                if (reducedEmbeddingDto == null || reducedEmbeddingDto.getTsne2D() == null) continue;
-                // Store the tsne reduction in each chunk - this is basically now a 2D and 3D coordinate
-                for (var i = 0; i < reducedEmbeddingDto.getTsne2D().length; i++) {
-                    docChunkEmbeddings.get(i).setTsne2D(reducedEmbeddingDto.getTsne2D()[i]);
-                    docChunkEmbeddings.get(i).setTsne3D(reducedEmbeddingDto.getTsne3D()[i]);
-                }
-                // Update the changes (Could be a bulk Update... let's see :-)
-                docChunkEmbeddings.forEach(de -> ExceptionUtils.tryCatchLog(
-                        () -> ragService.updateDocumentChunkEmbedding(de),
-                        (ex) -> logger.error("Error updating and saving a document chunk embedding.", ex)));
-
-                // And calculate a reduced embedding for the whole document as well!
-                for (var document : documents) {
-                    var documentEmbedding = ExceptionUtils.tryCatchLog(
-                            () -> ragService.getDocumentEmbeddingOfDocument(document.getId()),
-                            (ex) -> logger.error("Error getting the document embeddings of document: " + document.getId(), ex));
-                    if (documentEmbedding == null) continue;
-                    var chunkEmbeddingsOfDocument = docChunkEmbeddings
-                            .stream()
-                            .filter(e -> e.getDocument_id() == document.getId())
-                            .toList();
-
-                    // And mean pool the tsne chunk embeddings for the whole document
-                    documentEmbedding.setTsne2d(EmbeddingUtils.meanPooling(chunkEmbeddingsOfDocument
-                            .stream()
-                            .map(DocumentChunkEmbedding::getTsne2D)
-                            .toList()));
-                    documentEmbedding.setTsne3d(EmbeddingUtils.meanPooling(chunkEmbeddingsOfDocument
-                            .stream()
-                            .map(DocumentChunkEmbedding::getTsne3D)
-                            .toList()));
-                    // Mark it as fully post processed
-                    document.setPostProcessed(true);
-                    ExceptionUtils.tryCatchLog(() -> db.updateDocument(document),
-                            (ex) -> logger.error("Error updating the document while post processing corpus. Postprocessing continues", ex));
-
-                    // Update the document embedding
-                    ExceptionUtils.tryCatchLog(
-                            () -> ragService.updateDocumentEmbedding(documentEmbedding),
-                            (ex) -> logger.error("Error updating and saving a document embedding.", ex));
+            // Each run only claims the documents after the persisted watermark of the corpus, so a run doesn't get more
+            // expensive the larger the corpus is, and runs of other threads or importer instances never get the same documents.
+            var claimed = 0;
+            while (true) {
+                var documentIds = ExceptionUtils.tryCatchLog(
+                        () -> db.claimDocumentIdsForCorpusPostProcessing(corpus.getId(), POSTPROCESSING_CHUNK_SIZE),
+                        (ex) -> logger.error("Error while claiming documents to postprocess of corpus with id " + corpus.getId(), ex));
+                if (documentIds == null || documentIds.isEmpty()) break;
+                claimed += documentIds.size();
+                var chunkStart = System.nanoTime();
+                postProccessCorpusChunk(documentIds);
+                metrics.record("postprocess_corpus_chunk", chunkStart);
+            }
+
+            // The watermark may have passed documents that weren't ready yet or whose chunk failed. Every run retries a
+            // chunk of those, so they aren't lost if the final run never happens; the final run retries all of them.
+            // The chunks rotate through the skipped documents, so ones that keep failing don't block the others.
+            var retryAfterId = isFinalRun ? 0 : skippedRetryCursor.get();
+            var retryLimit = isFinalRun ? 0 : POSTPROCESSING_CHUNK_SIZE;
+            var skippedIds = ExceptionUtils.tryCatchLog(
+                    () -> db.getSkippedNonePostprocessedDocumentIds(corpus.getId(), retryAfterId, retryLimit),
+                    (ex) -> logger.error("Error while fetching the skipped documents of corpus with id " + corpus.getId(), ex));
+            if (skippedIds != null) {
+                // Once the end is reached, the next run starts over with the lowest ids.
+                if (!isFinalRun) skippedRetryCursor.set(skippedIds.size() < retryLimit ? 0 : skippedIds.getLast());
+                claimed += skippedIds.size();
+                for (var documentIds : ListUtils.partitionList(skippedIds, POSTPROCESSING_CHUNK_SIZE)) {
+                    var chunkStart = System.nanoTime();
+                    postProccessCorpusChunk(documentIds);
+                    metrics.record("postprocess_corpus_chunk", chunkStart);
                 }
             }
+            logger.info("Postprocessed " + claimed + " documents of the corpus " + corpus.getName() + ".");
 
             // Update: we used to calculate a tsne plot here, but we replace this in the future. This didnt work well
             // anyways.
@@ -935,6 +1269,74 @@ public class Importer {
         logger.info("Done with the corpus postprocessing.");
     }
 
+    /**
+     * Reduces the chunk embeddings of the given documents to tsne coordinates and mean pools them into the
+     * document embeddings. The documents are a sample of the corpus of at most POSTPROCESSING_CHUNK_SIZE.
+     */
+    private void postProccessCorpusChunk(List<Long> documentIds) {
+        // Get the complete list of document chunk embeddings of all documents
+        var docChunkEmbeddings = ExceptionUtils.tryCatchLog(
+                () -> ragService.getDocumentChunkEmbeddingsOfDocuments(documentIds),
+                (ex) -> logger.error("Error getting the document chunk embeddings of a chunk of documents.", ex));
+        if (docChunkEmbeddings == null || docChunkEmbeddings.isEmpty()) return;
+
+        // Now, from these chunks - generate a 2D and 3D tsne reduction embedding and store it
+        // with the single document embedding
+        var reducedEmbeddingDto = ExceptionUtils.tryCatchLog(
+                () -> ragService.getEmbeddingDimensionReductions(
+                        docChunkEmbeddings.stream().map(DocumentChunkEmbedding::getEmbedding).toList()),
+                (ex) -> logger.error("Error getting embedding dimension reductions in post processing a corpus.", ex));
+
+        if (reducedEmbeddingDto == null || reducedEmbeddingDto.getTsne2D() == null) return;
+        // Store the tsne reduction in each chunk - this is basically now a 2D and 3D coordinate
+        for (var i = 0; i < reducedEmbeddingDto.getTsne2D().length; i++) {
+            docChunkEmbeddings.get(i).setTsne2D(reducedEmbeddingDto.getTsne2D()[i]);
+            docChunkEmbeddings.get(i).setTsne3D(reducedEmbeddingDto.getTsne3D()[i]);
+        }
+        // Update the changes in bulk
+        ExceptionUtils.tryCatchLog(
+                () -> ragService.updateDocumentChunkEmbeddingsTsne(docChunkEmbeddings),
+                (ex) -> logger.error("Error updating the tsne reductions of the document chunk embeddings.", ex));
+
+        // And calculate a reduced embedding for the whole document as well!
+        var documentEmbeddings = ExceptionUtils.tryCatchLog(
+                () -> ragService.getManyDocumentEmbeddingsOfDocuments(documentIds),
+                (ex) -> logger.error("Error getting the document embeddings of a chunk of documents.", ex));
+        if (documentEmbeddings == null) return;
+        var documentEmbeddingsById = new HashMap<Long, DocumentEmbedding>();
+        documentEmbeddings.forEach(e -> documentEmbeddingsById.put(e.getDocument_id(), e));
+        var chunkEmbeddingsByDocument = docChunkEmbeddings.stream()
+                .collect(Collectors.groupingBy(DocumentChunkEmbedding::getDocument_id));
+
+        var updatedDocumentEmbeddings = new ArrayList<DocumentEmbedding>();
+        for (var documentId : documentIds) {
+            var documentEmbedding = documentEmbeddingsById.get(documentId);
+            if (documentEmbedding == null) continue;
+            var chunkEmbeddingsOfDocument = chunkEmbeddingsByDocument.getOrDefault(documentId, List.of());
+
+            // And mean pool the tsne chunk embeddings for the whole document
+            documentEmbedding.setTsne2d(EmbeddingUtils.meanPooling(chunkEmbeddingsOfDocument
+                    .stream()
+                    .map(DocumentChunkEmbedding::getTsne2D)
+                    .toList()));
+            documentEmbedding.setTsne3d(EmbeddingUtils.meanPooling(chunkEmbeddingsOfDocument
+                    .stream()
+                    .map(DocumentChunkEmbedding::getTsne3D)
+                    .toList()));
+            updatedDocumentEmbeddings.add(documentEmbedding);
+        }
+
+        // Update the document embeddings in bulk
+        ExceptionUtils.tryCatchLog(
+                () -> ragService.updateDocumentEmbeddingsTsne(updatedDocumentEmbeddings),
+                (ex) -> logger.error("Error updating the tsne reductions of the document embeddings.", ex));
+
+        // Mark them as fully post processed
+        var postProcessedIds = updatedDocumentEmbeddings.stream().map(DocumentEmbedding::getDocument_id).toList();
+        ExceptionUtils.tryCatchLog(() -> db.markDocumentsAsPostProcessed(postProcessedIds),
+                (ex) -> logger.error("Error marking the documents as postprocessed while post processing corpus. Postprocessing continues", ex));
+    }
+
     /**
      * Here we apply any post processing of a document that isn't DUUI and needs the document to be stored once like
      * the rag vector embeddings
@@ -952,6 +1354,7 @@ public class Importer {
                     () -> ragService.documentHasDocumentChunkEmbeddings(document.getId()),
                     (ex) -> logImportError("Error while checking if a document already has DocumentChunkEmbeddings.", ex, filePath));
             if (docHasChunkEmbeddings != null && !docHasChunkEmbeddings) {
+                var chunkEmbeddingsStart = System.nanoTime();
                 // Build the chunks, which are the most crucial embeddings
                 var documentChunkEmbeddings = ExceptionUtils.tryCatchLog(
                         () -> ragService.getCompleteEmbeddingChunksFromDocument(document),
@@ -959,12 +1362,10 @@ public class Importer {
 
                 // Store the chunks
                 if (documentChunkEmbeddings != null)
-                    for (var docEmbedding : documentChunkEmbeddings) {
-                        ExceptionUtils.tryCatchLog(
-                                () -> ragService.saveDocumentChunkEmbedding(docEmbedding),
-                                (ex) -> logImportError("Error saving a document chunk embeddings.", ex, filePath)
-                        );
-                    }
+                    ExceptionUtils.tryCatchLog(
+                            () -> ragService.saveDocumentChunkEmbeddings(documentChunkEmbeddings),
+                            (ex) -> logImportError("Error saving the document chunk embeddings.", ex, filePath));
+                metrics.record("postprocess_chunk_embeddings", chunkEmbeddingsStart);
             }
 
             // Document Embedding
@@ -972,6 +1373,7 @@ public class Importer {
                     () -> ragService.documentHasDocumentEmbedding(document.getId()),
                     (ex) -> logImportError("Error while checking if a document already has a DocumentEmbedding.", ex, filePath));
             if (docHasEmbedding != null && !docHasEmbedding) {
+                var documentEmbeddingStart = System.nanoTime();
                 // Build a single document embeddings for the whole text
                 var documentEmbedding = ExceptionUtils.tryCatchLog(
                         () -> ragService.getCompleteEmbeddingFromDocument(document),
@@ -982,6 +1384,7 @@ public class Importer {
                     ExceptionUtils.tryCatchLog(
                             () -> ragService.saveDocumentEmbedding(documentEmbedding),
                             (ex) -> logImportError("Error saving a document embedding.", ex, filePath));
+                metrics.record("postprocess_document_embedding", documentEmbeddingStart);
             }
         }
 
@@ -993,6 +1396,7 @@ public class Importer {
                 // If this page already has a topic dist, continue.
                 if (page.getPageTopicDistribution() != null) continue;
 
+                var pageTopicsStart = System.nanoTime();
                 var topicDistribution = ExceptionUtils.tryCatchLog(
                         () -> ragService.getTextTopicDistribution(PageTopicDistribution.class, page.getCoveredText(document.getFullText())),
                         (ex) -> logImportError("Error getting the PageTopicDistribution - the postprocessing continues. Document id: " + document.getId(), ex, filePath));
@@ -1006,10 +1410,12 @@ public class Importer {
                 // Store it in the db
                 ExceptionUtils.tryCatchLog(() -> db.savePageTopicDistribution(page),
                         (ex) -> logImportError("Error storing the page topic distribution - the postprocessing continues.", ex, filePath));
+                metrics.record("postprocess_page_topics", pageTopicsStart);
             }
 
             // And the document topic dist if this wasn't added before.
             if (document.getDocumentTopicDistribution() == null) {
+                var documentTopicsStart = System.nanoTime();
                 var documentTopicDistribution = ExceptionUtils.tryCatchLog(
                         () -> ragService.getTextTopicDistribution(DocumentTopicDistribution.class, document.getFullText()),
                         (ex) -> logImportError("Error getting the DocumentTopicDistribution - the postprocessing ends now. Document id: " + document.getId(), ex, filePath));
@@ -1021,6 +1427,7 @@ public class Importer {
                 // Store it
                 ExceptionUtils.tryCatchLog(() -> db.saveDocumentTopicDistribution(document),
                         (ex) -> logImportError("Error storing the document topic distribution - the postprocessing ends now.", ex, filePath));
+                metrics.record("postprocess_document_topics", documentTopicsStart);
             }
         }
 
@@ -1028,19 +1435,19 @@ public class Importer {
     }
 
     /**
-     * Gets all covered lines from a OCR page in a cas
+     * Converts the lines covered by a OCR page in a cas
      */
-    private List<Line> getCoveredLines(OCRPage page) {
+    private List<Line> getCoveredLines(List<OCRLine> coveredLines, String documentText) {
         // Paragraphs
         var lines = new ArrayList<Line>();
-        // Get all covered by this. This can probably be done in one go, but oh well
-        JCasUtil.selectCovered(OCRLine.class, page).forEach(pg -> {
+        coveredLines.forEach(pg -> {
             var line = new Line(pg.getBegin(), pg.getEnd());
             line.setBaseline(pg.getBaseline());
             line.setBottom(pg.getBottom());
             line.setLeft(pg.getLeft());
             line.setTop(pg.getTop());
             line.setRight(pg.getRight());
+            line.setDocumentText(documentText);
 
             lines.add(line);
         });
@@ -1048,35 +1455,35 @@ public class Importer {
     }
 
     /**
-     * Gets all covered blocks from a OCR page in a cas
+     * Converts the blocks covered by a OCR page in a cas
      */
-    private List<Block> getCoveredBlocks(OCRPage page) {
+    private List<Block> getCoveredBlocks(List<OCRBlock> coveredBlocks, String documentText) {
         // Paragraphs
         var blocks = new ArrayList<Block>();
-        // Get all covered by this. This can probably be done in one go, but oh well
-        JCasUtil.selectCovered(OCRBlock.class, page).forEach(pg -> {
+        coveredBlocks.forEach(pg -> {
             var block = new Block(pg.getBegin(), pg.getEnd());
             block.setBlockType(pg.getBlockType());
+            block.setDocumentText(documentText);
             blocks.add(block);
         });
         return blocks;
     }
 
     /**
-     * Gets all covered paragraphs from a OCR page in a cas
+     * Converts the paragraphs covered by a OCR page in a cas
      */
-    private List<Paragraph> getCoveredParagraphs(OCRPage page) {
+    private List<Paragraph> getCoveredParagraphs(List<OCRParagraph> coveredParagraphs, String documentText) {
         // Paragraphs
         var paragraphs = new ArrayList<Paragraph>();
-        // Get all covered by this. This can probably be done in one go, but oh well
-        JCasUtil.selectCovered(OCRParagraph.class, page).forEach(pg -> {
+        coveredParagraphs.forEach(pg -> {
             var paragraph = new Paragraph(pg.getBegin(), pg.getEnd());
             paragraph.setAlign(pg.getAlign());
             paragraph.setLeftIndent(pg.getLeftIndent());
             paragraph.setLineSpacing(pg.getLineSpacing());
             paragraph.setRightIndent(pg.getRightIndent());
             paragraph.setStartIndent(pg.getStartIndent());
-            paragraph.setCoveredText(pg.getCoveredText());
+            if (ANNOTATION_OFFSETS_ONLY) paragraph.setDocumentText(documentText);
+            else paragraph.setCoveredText(pg.getCoveredText());
 
             paragraphs.add(paragraph);
         });
@@ -1084,12 +1491,35 @@ public class Importer {
     }
 
     /**
-     * Tries to store a import log; if fails, gives a warning but otherwise keeps running.
+     * Logs a summary of the import metrics and adds what happened since the last report to the counters of the UCEImport.
      */
-    private void tryStoreUCEImportLog(ImportLog importLog) {
+    private synchronized void reportImportMetrics() {
+        logger.info(metrics.getSummary());
+        var stored = metrics.getDocumentsStored();
+        var failed = metrics.getDocumentsFailed();
+        var postProcessed = metrics.getDocumentsPostProcessed();
+        var bytes = metrics.getBytesRead();
+        if (stored == reportedStored && failed == reportedFailed && postProcessed == reportedPostProcessed && bytes == reportedBytes)
+            return;
+        // Every instance of a distributed import adds its own share, so the counters are incremented rather than set.
         ExceptionUtils.tryCatchLog(
-                () -> db.saveOrUpdateImportLog(importLog),
-                (ex) -> logger.warn("Couldn't store a UCEImport log... operation continues.", ex));
+                () -> {
+                    db.addUceImportCounters(this.importId, stored - reportedStored, failed - reportedFailed,
+                            postProcessed - reportedPostProcessed, bytes - reportedBytes);
+                    reportedStored = stored;
+                    reportedFailed = failed;
+                    reportedPostProcessed = postProcessed;
+                    reportedBytes = bytes;
+                },
+                (ex) -> logger.warn("Couldn't add the import metrics to the UCEImport " + this.importId + ", trying again with the next report.", ex));
+    }
+
+    /**
+     * Hands a import log to the writer, which stores it in the background; the import never waits on it.
+     */
+    private void tryStoreUCEImportLog(ImportLog importLog) {
+        if (dryRun) return;
+        importLogWriter.append(importLog);
     }
 
     /**
@@ -0,0 +1,115 @@
+package org.texttechnologylab.importer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.uima.cas.SerialFormat;
+import org.apache.uima.util.CasIOUtils;
+import org.apache.uima.util.CasLoadMode;
+import org.apache.uima.util.TypeSystemUtil;
+import org.texttechnologylab.utils.JCasPool;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Converts the UIMA files of a corpus folder into compressed binary CASes (form 6), which load several times faster
+ * than XMI. The result is again an importable corpus folder: the corpusConfig.json is copied, the type system
+ * is written to a typesystem.xml and each file of the input folder becomes a .bcas at the same relative path.
+ */
+public class BinaryCasConverter {
+    private static final Logger logger = LogManager.getLogger(BinaryCasConverter.class);
+
+    private final int threads;
+    private final int bufferSize;
+
+    public BinaryCasConverter(int threads, int bufferSize) {
+        this.threads = Math.max(threads, 1);
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Converts the corpus at sourceFolder into targetFolder. Returns the amount of converted files.
+     */
+    public int convert(Path sourceFolder, Path targetFolder) throws Exception {
+        var sourceInput = sourceFolder.resolve("input");
+        var targetInput = targetFolder.resolve("input");
+        Files.createDirectories(targetInput);
+
+        var corpusConfig = sourceFolder.resolve("corpusConfig.json");
+        if (Files.exists(corpusConfig))
+            Files.copy(corpusConfig, targetFolder.resolve("corpusConfig.json"), StandardCopyOption.REPLACE_EXISTING);
+
+        var jCasPool = new JCasPool(threads);
+        writeTypeSystem(jCasPool, targetFolder.resolve("typesystem.xml"));
+
+        // Same as the import pipeline: the walk blocks once enough files are queued, so archives aren't read ahead.
+        var executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+        var converted = new AtomicInteger(0);
+        var failed = new AtomicInteger(0);
+        try {
+            ImportFiles.walk(sourceInput, bufferSize, importFile -> executor.execute(() -> {
+                var target = targetInput.resolve(getTargetName(sourceInput, importFile));
+                try {
+                    convertFile(jCasPool, importFile, target);
+                    var count = converted.incrementAndGet();
+                    if (count % 100 == 0) logger.info("Converted " + count + " files to binary CAS.");
+                } catch (Exception ex) {
+                    failed.incrementAndGet();
+                    logger.error("Couldn't convert " + importFile + " to a binary CAS.", ex);
+                }
+            }));
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+
+        logger.info("Converted " + converted.get() + " files to binary CAS in " + targetFolder + ", " + failed.get() + " failed.");
+        return converted.get();
+    }
+
+    private void convertFile(JCasPool jCasPool, ImportFile importFile, Path target) throws Exception {
+        var jCas = jCasPool.acquire();
+        try (var inputStream = importFile.openStream()) {
+            CasIOUtils.load(inputStream, null, jCas.getCas(), CasLoadMode.LENIENT);
+
+            Files.createDirectories(target.getParent());
+            try (var outputStream = new BufferedOutputStream(Files.newOutputStream(target), bufferSize)) {
+                // Form 6 with the type system embedded, so every file can also be loaded on its own.
+                CasIOUtils.save(jCas.getCas(), outputStream, SerialFormat.COMPRESSED_FILTERED_TSI);
+            }
+        } finally {
+            jCasPool.release(jCas);
+        }
+    }
+
+    private void writeTypeSystem(JCasPool jCasPool, Path target) throws Exception {
+        var jCas = jCasPool.acquire();
+        try (var outputStream = Files.newOutputStream(target)) {
+            TypeSystemUtil.typeSystem2TypeSystemDescription(jCas.getTypeSystem()).toXML(outputStream);
+        } finally {
+            jCasPool.release(jCas);
+        }
+    }
+
+    /**
+     * The relative path of the binary CAS. Archive entries are placed in a folder named after their archive.
+     */
+    private static String getTargetName(Path sourceInput, ImportFile importFile) {
+        var relativePath = sourceInput.relativize(importFile.getPath()).toString();
+        if (importFile.isArchiveEntry()) {
+            var archiveFolder = relativePath.replaceAll("(\\.tar)?\\.[^./\\\\]+$", "");
+            relativePath = archiveFolder + "/" + importFile.getEntryName();
+        }
+        return stripUimaEnding(relativePath) + ImportFiles.BINARY_CAS_ENDING;
+    }
+
+    private static String stripUimaEnding(String name) {
+        return name.replaceAll("(?i)\\.(xmi(\\.(gz|zst|xz))?|bcas)$", "");
+    }
+}
@@ -0,0 +1,169 @@
+package org.texttechnologylab.importer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.context.ApplicationContext;
+import org.texttechnologylab.Importer;
+import org.texttechnologylab.exceptions.ExceptionUtils;
+import org.texttechnologylab.models.imp.ImportStatus;
+import org.texttechnologylab.models.imp.UCEImport;
+import org.texttechnologylab.services.HttpService;
+import org.texttechnologylab.services.PostgresqlDataInterface_Impl;
+import org.texttechnologylab.utils.JCasPool;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Imports several corpora at once, e.g. all folders of an -importDir. All corpora share one set of
+ * {@link ImportWorkers}, so the thread and memory budget stays the same as for a single corpus. Each corpus
+ * still gets its own UCEImport and its own final corpus postprocessing.
+ * <p>
+ * The largest corpus is started first, so it doesn't end up as the long tail. The remaining ones follow
+ * smallest-first, so many small corpora are done early. Every corpus may only use its share of the in-flight budget,
+ * so the large ones can't starve the small ones.
+ * <p>
+ * With a distributed import id, several importer instances run the same schedule and split the files of
+ * each corpus between them through a {@link DistributedWorkQueue}.
+ */
+public class CorpusImportScheduler {
+    private static final Logger logger = LogManager.getLogger(CorpusImportScheduler.class);
+
+    private final ApplicationContext context;
+    private final PostgresqlDataInterface_Impl db;
+    private final ImportPipelineConfig pipelineConfig;
+    private final int maxConcurrentCorpora;
+    private final int importerNumber;
+    private final String distributedImportId;
+
+    public CorpusImportScheduler(ApplicationContext context,
+                                 ImportPipelineConfig pipelineConfig,
+                                 int maxConcurrentCorpora,
+                                 int importerNumber) {
+        this(context, pipelineConfig, maxConcurrentCorpora, importerNumber, null);
+    }
+
+    /**
+     * A scheduler whose instance is one of several that share the given import id. The import id of each corpus
+     * is derived from it, so all instances end up at the same UCEImport and work table of a corpus.
+     */
+    public CorpusImportScheduler(ApplicationContext context,
+                                 ImportPipelineConfig pipelineConfig,
+                                 int maxConcurrentCorpora,
+                                 int importerNumber,
+                                 String distributedImportId) {
+        this.context = context;
+        this.db = context.getBean(PostgresqlDataInterface_Impl.class);
+        this.pipelineConfig = pipelineConfig;
+        this.maxConcurrentCorpora = Math.max(maxConcurrentCorpora, 1);
+        this.importerNumber = importerNumber;
+        this.distributedImportId = distributedImportId;
+    }
+
+    /**
+     * Imports all given corpus folders and blocks until every one of them is done.
+     */
+    public void importAll(List<String> corpusPaths) throws InterruptedException {
+        if (corpusPaths.isEmpty()) return;
+        var orderedPaths = orderBySize(corpusPaths);
+        var concurrentCorpora = Math.min(maxConcurrentCorpora, orderedPaths.size());
+        var maxInFlightPerCorpus = Math.max(pipelineConfig.getMaxInFlight() / Math.max(concurrentCorpora, 1), 1);
+        logger.info("Importing " + orderedPaths.size() + " corpora, " + concurrentCorpora + " at a time with up to "
+                + maxInFlightPerCorpus + " files in flight each.");
+
+        var workers = new ImportWorkers(pipelineConfig);
+        // All corpora without their own type system can share the CASes as well.
+        var jCasPool = ExceptionUtils.tryCatchLog(
+                () -> new JCasPool(Math.max(pipelineConfig.getParseThreads(), 1)),
+                (ex) -> logger.error("Couldn't create the shared JCasPool - each corpus will create its own.", ex));
+
+        // These threads only walk the corpora and wait on the shared workers, so they are cheap.
+        var corpusExecutor = Executors.newFixedThreadPool(concurrentCorpora);
+        try {
+            for (var path : orderedPaths) {
+                corpusExecutor.execute(() -> importCorpus(path, workers, maxInFlightPerCorpus, jCasPool));
+            }
+        } finally {
+            corpusExecutor.shutdown();
+            corpusExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            workers.shutdown();
+        }
+
+        context.getBean(HttpService.class).getHostStats()
+                .forEach((host, stats) -> logger.info("Outbound calls to " + host + ": " + stats));
+    }
+
+    private void importCorpus(String path, ImportWorkers workers, int maxInFlight, JCasPool jCasPool) {
+        // Each corpus has its own import id and with that, its own UCEImport and logs.
+        var importId = getImportId(path);
+        var importer = new Importer(context, path, importerNumber, importId, jCasPool);
+
+        // If this is the number 1 importer, he will create a Database entry for this import.
+        // A distributed import that is restarted keeps its existing one.
+        UCEImport uceImport = null;
+        if (importerNumber == 1 && distributedImportId != null)
+            uceImport = ExceptionUtils.tryCatchLog(() -> db.getUceImportByImportId(importId),
+                    (ex) -> logger.debug("There is no UCEImport " + importId + " yet, creating it.", ex));
+        if (importerNumber == 1 && uceImport == null) {
+            uceImport = new UCEImport(importId, path, ImportStatus.STARTING);
+            var fileCount = ExceptionUtils.tryCatchLog(importer::getXMICountInPath,
+                    (ex) -> logger.warn("There was an IO error counting the importable UIMA files - the import will probably fail at some point.", ex));
+            uceImport.setTotalDocuments(fileCount == null ? -1 : fileCount);
+            final var uceImportFinal = uceImport;
+            ExceptionUtils.tryCatchLog(() -> db.saveOrUpdateUceImport(uceImportFinal),
+                    (ex) -> logger.error("Couldn't store the UCEImport of " + path, ex));
+        }
+
+        var status = ImportStatus.FINISHED;
+        try {
+            importer.start(pipelineConfig, workers, maxInFlight);
+        } catch (Exception ex) {
+            status = ImportStatus.ERROR;
+            logger.error("The import of the corpus at " + path + " failed.", ex);
+        }
+
+        if (uceImport != null) {
+            final var finalStatus = status;
+            ExceptionUtils.tryCatchLog(() -> {
+                        var storedImport = db.getUceImportByImportId(importId);
+                        storedImport.setStatus(finalStatus);
+                        db.saveOrUpdateUceImport(storedImport);
+                    },
+                    (ex) -> logger.error("Couldn't update the status of the UCEImport of " + path, ex));
+        }
+    }
+
+    /**
+     * A random import id, or in a distributed import one that is the same for the corpus on every instance.
+     * The folder name is used instead of the full path, since the instances may mount the corpora elsewhere.
+     */
+    private String getImportId(String path) {
+        if (distributedImportId == null) return UUID.randomUUID().toString();
+        var corpusName = Path.of(path).getFileName().toString();
+        return UUID.nameUUIDFromBytes((distributedImportId + "/" + corpusName).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    /**
+     * Largest corpus first, then the rest smallest-first.
+     */
+    private List<String> orderBySize(List<String> corpusPaths) {
+        var sizes = new HashMap<String, Long>();
+        for (var path : corpusPaths) {
+            var size = ExceptionUtils.tryCatchLog(() -> ImportFiles.totalSize(Path.of(path, "input")),
+                    (ex) -> logger.warn("Couldn't determine the size of the corpus at " + path, ex));
+            sizes.put(path, size == null ? 0L : size);
+        }
+
+        var ordered = new ArrayList<>(corpusPaths);
+        ordered.sort(Comparator.comparingLong(sizes::get));
+        if (ordered.size() > 1) ordered.addFirst(ordered.removeLast());
+        return ordered;
+    }
+}
@@ -0,0 +1,156 @@
+package org.texttechnologylab.importer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.texttechnologylab.exceptions.DatabaseOperationException;
+import org.texttechnologylab.exceptions.ExceptionUtils;
+import org.texttechnologylab.models.imp.ImportWorkItem;
+import org.texttechnologylab.models.imp.ImportWorkStatus;
+import org.texttechnologylab.services.DataInterface;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits the files of an import between several importer instances, on one machine or on many, through a
+ * work table in the shared database. Every instance lists the input folder into the table (inserting is
+ * idempotent, so it doesn't matter who is first) and then claims small batches of it, largest files first.
+ * <p>
+ * A claimed file is leased to its instance, which renews the lease with a heartbeat as long as it's alive.
+ * If an instance dies, its leases expire and the files are claimed by another instance. Files are stored
+ * relative to the input folder, so the instances may mount the corpus at different paths.
+ */
+public class DistributedWorkQueue {
+    private static final Logger logger = LogManager.getLogger(DistributedWorkQueue.class);
+
+    private final DataInterface db;
+    private final String importId;
+    private final ImportPipelineConfig config;
+    private final ConcurrentHashMap<Path, ClaimedItem> claimedItems = new ConcurrentHashMap<>();
+
+    public DistributedWorkQueue(DataInterface db, String importId, ImportPipelineConfig config) {
+        this.db = db;
+        this.importId = importId;
+        this.config = config;
+    }
+
+    /**
+     * Lists the input folder into the work table. Files another instance already added are skipped.
+     */
+    public void discover(Path inputFolder) throws IOException, DatabaseOperationException {
+        var workItems = new ArrayList<ImportWorkItem>();
+        for (var entry : ImportFiles.listImportable(inputFolder).entrySet()) {
+            var relativePath = inputFolder.relativize(entry.getKey()).toString().replace('\\', '/');
+            workItems.add(new ImportWorkItem(importId, relativePath, entry.getValue()));
+        }
+        db.insertImportWorkItems(workItems);
+        logger.info("Added " + workItems.size() + " files of " + inputFolder + " to the distributed import " + importId + ".");
+    }
+
+    /**
+     * Claims batches of files and hands them to the visitor until no file of the import is left open. Once
+     * there is nothing to claim, but other instances still hold files, this keeps polling, so their files
+     * are taken over should their leases expire. Every visited file has to be reported back through
+     * {@link #complete(ImportFile, boolean)}.
+     */
+    public void run(Path inputFolder, ImportFiles.ImportFileVisitor visitor) throws InterruptedException, DatabaseOperationException {
+        var heartbeat = startHeartbeat();
+        var pollMillis = Math.max(Math.min(config.getLeaseMillis() / 4, 10_000), 1000);
+        try {
+            while (true) {
+                var batch = db.claimImportWorkItems(importId, config.getInstanceId(),
+                        config.getClaimBatchSize(), config.getLeaseMillis(), config.getMaxClaimAttempts());
+                if (batch.isEmpty()) {
+                    if (db.countOpenImportWorkItems(importId) == 0) break;
+                    Thread.sleep(pollMillis);
+                    continue;
+                }
+
+                logger.info("Instance " + config.getInstanceId() + " claimed " + batch.size() + " files of the import " + importId + ".");
+                for (var workItem : batch) {
+                    var filePath = inputFolder.resolve(workItem.getFilePath());
+                    if (workItem.getAttempts() > 1)
+                        logger.info("Taking over " + filePath + " of an instance whose lease expired, attempt " + workItem.getAttempts() + ".");
+
+                    var claimedItem = new ClaimedItem(workItem.getId());
+                    claimedItems.put(filePath, claimedItem);
+                    try {
+                        ImportFiles.visit(filePath, config.getReadBufferSize(), importFile -> {
+                            claimedItem.pending.incrementAndGet();
+                            try {
+                                visitor.visit(importFile);
+                            } catch (InterruptedException | RuntimeException ex) {
+                                // The file never made it into the pipeline, so it will never be reported back.
+                                claimedItem.failed.set(true);
+                                claimedItem.pending.decrementAndGet();
+                                throw ex;
+                            }
+                        });
+                    } catch (IOException ex) {
+                        logger.error("Couldn't read the claimed file " + filePath, ex);
+                        claimedItem.failed.set(true);
+                    } catch (RuntimeException ex) {
+                        logger.error("Couldn't hand the claimed file " + filePath + " to the import.", ex);
+                        claimedItem.failed.set(true);
+                    } finally {
+                        // Also when interrupted, so the item doesn't stay claimed while the heartbeat keeps its lease alive.
+                        claimedItem.walked.set(true);
+                        tryFinish(filePath, claimedItem);
+                    }
+                }
+            }
+        } finally {
+            heartbeat.shutdownNow();
+        }
+    }
+
+    /**
+     * Reports a visited file as done. Once all files of a claimed archive are done, it's marked as done as well.
+     */
+    public void complete(ImportFile importFile, boolean success) {
+        var claimedItem = claimedItems.get(importFile.getPath());
+        if (claimedItem == null) return;
+        if (!success) claimedItem.failed.set(true);
+        claimedItem.pending.decrementAndGet();
+        tryFinish(importFile.getPath(), claimedItem);
+    }
+
+    private void tryFinish(Path filePath, ClaimedItem claimedItem) {
+        if (!claimedItem.walked.get() || claimedItem.pending.get() > 0) return;
+        // Only one of the threads reporting the last file may store the final status.
+        if (!claimedItems.remove(filePath, claimedItem)) return;
+
+        var status = claimedItem.failed.get() ? ImportWorkStatus.FAILED : ImportWorkStatus.DONE;
+        ExceptionUtils.tryCatchLog(() -> db.updateImportWorkItemStatus(claimedItem.id, status),
+                (ex) -> logger.error("Couldn't store the status of " + filePath + " in the work table - its lease will expire and it gets imported again.", ex));
+    }
+
+    private ScheduledExecutorService startHeartbeat() {
+        var heartbeat = Executors.newSingleThreadScheduledExecutor();
+        var interval = Math.max(config.getLeaseMillis() / 3, 1000);
+        heartbeat.scheduleAtFixedRate(() -> ExceptionUtils.tryCatchLog(
+                        () -> db.renewImportWorkItemLeases(importId, config.getInstanceId(), config.getLeaseMillis()),
+                        (ex) -> logger.warn("Couldn't renew the leases of instance " + config.getInstanceId() + " - other instances may take over its files.", ex)),
+                interval, interval, TimeUnit.MILLISECONDS);
+        return heartbeat;
+    }
+
+    private static class ClaimedItem {
+        private final long id;
+        // The files of the item that were handed to the visitor, but aren't done yet.
+        private final AtomicInteger pending = new AtomicInteger(0);
+        private final AtomicBoolean walked = new AtomicBoolean(false);
+        private final AtomicBoolean failed = new AtomicBoolean(false);
+
+        private ClaimedItem(long id) {
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package org.texttechnologylab.importer;
+
+import com.google.gson.Gson;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.uima.fit.factory.TypeSystemDescriptionFactory;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.texttechnologylab.Importer;
+import org.texttechnologylab.config.CorpusConfig;
+import org.texttechnologylab.models.corpus.Corpus;
+import org.texttechnologylab.utils.JCasPool;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how fast this machine parses and extracts a corpus, without a database, the RAG service or any other
+ * remote service. The files are discovered, loaded into CASes and converted into in-memory documents with every
+ * annotation the corpusConfig.json asks for, through the same pipeline as a real import - they just aren't stored.
+ * Used to size the import nodes, see the -dryRun flag of the importer.
+ */
+public class ImportBenchmark {
+    private static final Logger logger = LogManager.getLogger(ImportBenchmark.class);
+    private static final Gson gson = new Gson();
+    private static final long HEAP_SAMPLE_INTERVAL_MILLIS = 50;
+
+    private final ImportPipelineConfig pipelineConfig;
+
+    public ImportBenchmark(ImportPipelineConfig pipelineConfig) {
+        this.pipelineConfig = pipelineConfig;
+    }
+
+    /**
+     * Converts every importable file of the corpus at corpusPath and logs the throughput, GC time and peak heap.
+     */
+    public void run(Path corpusPath) throws IOException, InterruptedException, ResourceInitializationException {
+        CorpusConfig corpusConfig;
+        try (var reader = new FileReader(corpusPath.resolve("corpusConfig.json").toFile())) {
+            corpusConfig = gson.fromJson(reader, CorpusConfig.class);
+        }
+        // The corpus only lives in memory. Its id of 0 is never looked up.
+        var corpus = new Corpus();
+        corpus.setName(corpusConfig.getName());
+        corpus.setLanguage(corpusConfig.getLanguage());
+        corpus.setAuthor(corpusConfig.getAuthor());
+        corpus.setCorpusJsonConfig(gson.toJson(corpusConfig));
+
+        var metrics = new ImportMetrics("dry-run");
+        metrics.setCorpusName(corpus.getName());
+        var pipeline = new ImportPipeline(pipelineConfig);
+        var importer = new Importer(createJCasPool(corpusPath), pipeline.getExecutor(ImportStage.EXTRACT),
+                pipelineConfig.getParallelExtractionThreshold(), metrics);
+        logger.info("Dry run of the corpus at " + corpusPath + " with " + pipelineConfig);
+
+        var files = new AtomicInteger(0);
+        var peakHeap = new AtomicLong(0);
+        var memory = ManagementFactory.getMemoryMXBean();
+        var heapSampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "uce-benchmark-heap");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heapSampler.scheduleAtFixedRate(() -> peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max),
+                0, HEAP_SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        var gcTimeBefore = getGcTimeMillis();
+        var gcCountBefore = getGcCount();
+        var start = System.nanoTime();
+
+        try {
+            ImportFiles.ImportFileVisitor visitor = importFile -> {
+                files.incrementAndGet();
+                pipeline.submit(importFile.estimateMemory(pipelineConfig.getExpansionFactor()), p -> CompletableFuture.supplyAsync(
+                        () -> importer.XMIToDocument(importFile, corpus), p.getExecutor(ImportStage.PARSE)));
+            };
+            var inputFolder = corpusPath.resolve("input");
+            if (pipelineConfig.isLargestFirst())
+                ImportFiles.walkLargestFirst(inputFolder, pipelineConfig.getReadBufferSize(), visitor);
+            else
+                ImportFiles.walk(inputFolder, pipelineConfig.getReadBufferSize(), visitor);
+            pipeline.awaitCompletion();
+        } finally {
+            pipeline.shutdown();
+            heapSampler.shutdown();
+        }
+
+        var seconds = Math.max((System.nanoTime() - start) / 1_000_000_000.0, 0.001);
+        var documents = metrics.getDocumentsParsed();
+        logger.info(String.format(Locale.ROOT, """
+
+                        =================================
+                         Dry run of %s done.
+                         Files:        %d (%d documents, %d failed)
+                         Time:         %.1fs with %d parse threads
+                         Throughput:   %.2f docs/s, %.0f annotations/s, %.2f MB/s
+                         GC:           %d collections, %.1fs (%.1f%% of the time)
+                         Peak heap:    %d MB of %d MB max (sampled every %dms)
+                        =================================""",
+                corpus.getName(), files.get(), documents, metrics.getDocumentsFailed(),
+                seconds, pipelineConfig.getParseThreads(),
+                documents / seconds, metrics.getAnnotationsRead() / seconds, metrics.getBytesRead() / seconds / (1024 * 1024),
+                getGcCount() - gcCountBefore, (getGcTimeMillis() - gcTimeBefore) / 1000.0, (getGcTimeMillis() - gcTimeBefore) / 10.0 / seconds,
+                peakHeap.get() / (1024 * 1024), memory.getHeapMemoryUsage().getMax() / (1024 * 1024), HEAP_SAMPLE_INTERVAL_MILLIS));
+        // The latencies of the single extractors.
+        logger.info(metrics.getSummary());
+    }
+
+    private JCasPool createJCasPool(Path corpusPath) throws ResourceInitializationException {
+        var size = Math.max(pipelineConfig.getParseThreads(), 1);
+        var typeSystemPath = corpusPath.resolve(Importer.TYPESYSTEM_FILE_NAME);
+        if (!Files.isRegularFile(typeSystemPath)) return new JCasPool(size);
+        return new JCasPool(size,
+                TypeSystemDescriptionFactory.createTypeSystemDescription(),
+                TypeSystemDescriptionFactory.createTypeSystemDescriptionFromPath(typeSystemPath.toUri().toString()));
+    }
+
+    private static long getGcTimeMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime).filter(time -> time > 0).sum();
+    }
+
+    private static long getGcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionCount).filter(count -> count > 0).sum();
+    }
+}
@@ -0,0 +1,137 @@
+package org.texttechnologylab.importer;
+
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A single importable UIMA file, an XMI or a binary CAS. That is either a file on disk or an entry of an
+ * archive, whose content was already read while walking the archive. Compressed files (.gz, .zst, .xz)
+ * are decompressed while they are streamed, so they never have to be extracted.
+ */
+public class ImportFile {
+    private static final int COMPRESSION_RATIO_ESTIMATE = 6;
+
+    private final Path path;
+    private final String entryName;
+    private final byte[] content;
+    private final long size;
+    private final int bufferSize;
+
+    private ImportFile(Path path, String entryName, byte[] content, long size, int bufferSize) {
+        this.path = path;
+        this.entryName = entryName;
+        this.content = content;
+        this.size = size;
+        this.bufferSize = bufferSize;
+    }
+
+    public static ImportFile ofFile(Path path, int bufferSize) throws IOException {
+        return new ImportFile(path, null, null, Files.size(path), bufferSize);
+    }
+
+    public static ImportFile ofArchiveEntry(Path archivePath, String entryName, byte[] content, int bufferSize) {
+        return new ImportFile(archivePath, entryName, content, content.length, bufferSize);
+    }
+
+    /**
+     * Opens a new, already decompressed stream of the UIMA file. Each call starts at the beginning again.
+     */
+    public InputStream openStream() throws IOException {
+        return openStream(null);
+    }
+
+    /**
+     * Like {@link #openStream()}, but every byte read from the (compressed) file also goes into the given digest,
+     * if there is one. Only once the stream was read to its end, the digest covers the whole file.
+     */
+    public InputStream openStream(MessageDigest digest) throws IOException {
+        InputStream raw = content == null
+                ? Files.newInputStream(path)
+                : new ByteArrayInputStream(content);
+        if (digest != null) raw = new DigestInputStream(raw, digest);
+        return decompress(new BufferedInputStream(raw, bufferSize), getFileName(), bufferSize);
+    }
+
+    /**
+     * Wraps the stream into the decompressor that matches the ending of the name, if any.
+     */
+    public static InputStream decompress(InputStream inputStream, String name, int bufferSize) throws IOException {
+        var lowerName = name.toLowerCase();
+        if (lowerName.endsWith(".gz") || lowerName.endsWith(".tgz")) return new GZIPInputStream(inputStream, bufferSize);
+        if (lowerName.endsWith(".zst")) return new ZstdCompressorInputStream(inputStream);
+        if (lowerName.endsWith(".xz")) return new XZCompressorInputStream(inputStream);
+        return inputStream;
+    }
+
+    /**
+     * The file on disk. For archive entries, this is the archive.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Whether this is a binary serialized CAS (e.g. form 6) instead of an XMI.
+     */
+    public boolean isBinaryCas() {
+        return getFileName().toLowerCase().endsWith(ImportFiles.BINARY_CAS_ENDING);
+    }
+
+    public boolean isArchiveEntry() {
+        return entryName != null;
+    }
+
+    /**
+     * The path of the entry within its archive or null, if this isn't an archive entry.
+     */
+    public String getEntryName() {
+        return entryName;
+    }
+
+    /**
+     * The name of the file itself, without the folders it lies in.
+     */
+    public String getFileName() {
+        var name = isArchiveEntry() ? entryName : path.getFileName().toString();
+        return name.substring(name.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * The (compressed) size of the file in bytes.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Estimates how much heap this file takes up while it is imported. Compressed files and binary CASes are
+     * assumed to be {@value #COMPRESSION_RATIO_ESTIMATE} times smaller than the XMI they hold.
+     */
+    public long estimateMemory(double expansionFactor) {
+        var uncompressedSize = isCompressed() ? size * COMPRESSION_RATIO_ESTIMATE : size;
+        return (long) (uncompressedSize * expansionFactor);
+    }
+
+    private boolean isCompressed() {
+        var lowerName = getFileName().toLowerCase();
+        return isBinaryCas() || lowerName.endsWith(".gz") || lowerName.endsWith(".zst") || lowerName.endsWith(".xz");
+    }
+
+    /**
+     * A readable location of the file for the logs, e.g. "corpus.tar.gz!/docs/doc_1.xmi".
+     */
+    @Override
+    public String toString() {
+        return isArchiveEntry() ? path + "!/" + entryName : path.toString();
+    }
+}
@@ -0,0 +1,198 @@
+package org.texttechnologylab.importer;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the importable UIMA files within an input folder. Next to plain .xmi files, these are compressed
+ * XMIs (.xmi.gz, .xmi.zst, .xmi.xz), binary CASes (.bcas) and zip or tar archives (optionally compressed)
+ * that hold any of those.
+ */
+public class ImportFiles {
+    private static final Logger logger = LogManager.getLogger(ImportFiles.class);
+
+    public static final String BINARY_CAS_ENDING = ".bcas";
+    private static final List<String> UIMA_ENDINGS = List.of(".xmi", ".xmi.gz", ".xmi.zst", ".xmi.xz", BINARY_CAS_ENDING);
+    private static final List<String> ARCHIVE_ENDINGS = List.of(".zip", ".tar", ".tar.gz", ".tgz", ".tar.zst", ".tar.xz");
+
+    @FunctionalInterface
+    public interface ImportFileVisitor {
+        void visit(ImportFile file) throws InterruptedException;
+    }
+
+    public static boolean isUimaFile(String name) {
+        var lowerName = name.toLowerCase();
+        return UIMA_ENDINGS.stream().anyMatch(lowerName::endsWith);
+    }
+
+    public static boolean isArchive(String name) {
+        var lowerName = name.toLowerCase();
+        return ARCHIVE_ENDINGS.stream().anyMatch(lowerName::endsWith);
+    }
+
+    /**
+     * Recursively walks the folder and hands every importable file to the visitor. The walk is lazy, so if the
+     * visitor blocks, e.g. because the import pipeline is full, no further files or archive entries are read.
+     * Archive entries are read into memory one by one, since an archive can only be read sequentially.
+     */
+    public static void walk(Path folder, int bufferSize, ImportFileVisitor visitor) throws IOException, InterruptedException {
+        try (var fileStream = Files.walk(folder)) {
+            var fileIterator = fileStream.filter(Files::isRegularFile).iterator();
+            while (fileIterator.hasNext()) {
+                var filePath = fileIterator.next();
+                var name = filePath.getFileName().toString();
+                if (isUimaFile(name)) visitor.visit(ImportFile.ofFile(filePath, bufferSize));
+                else if (isArchive(name)) walkArchive(filePath, bufferSize, visitor);
+            }
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    /**
+     * Like {@link #walk(Path, int, ImportFileVisitor)}, but the files are first listed with their sizes and then
+     * handed to the visitor largest-first. This way, a huge file starts early instead of being the last one
+     * that runs while all other threads are idle. Archives can only be read sequentially, so they follow
+     * afterwards, largest archive first.
+     */
+    public static void walkLargestFirst(Path folder, int bufferSize, ImportFileVisitor visitor) throws IOException, InterruptedException {
+        var files = new ArrayList<ImportFile>();
+        var archives = new ArrayList<Path>();
+        try (var fileStream = Files.walk(folder)) {
+            var fileIterator = fileStream.filter(Files::isRegularFile).iterator();
+            while (fileIterator.hasNext()) {
+                var filePath = fileIterator.next();
+                var name = filePath.getFileName().toString();
+                if (isUimaFile(name)) files.add(ImportFile.ofFile(filePath, bufferSize));
+                else if (isArchive(name)) archives.add(filePath);
+            }
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        logger.info("Found " + files.size() + " UIMA files and " + archives.size() + " archives, dispatching them largest-first.");
+
+        files.sort(Comparator.comparingLong(ImportFile::getSize).reversed());
+        for (var file : files) visitor.visit(file);
+
+        var archiveSizes = new HashMap<Path, Long>();
+        for (var archive : archives) archiveSizes.put(archive, Files.size(archive));
+        archives.sort(Comparator.comparingLong((Path archive) -> archiveSizes.get(archive)).reversed());
+        for (var archive : archives) walkArchive(archive, bufferSize, visitor);
+    }
+
+    /**
+     * Lists the importable files and archives in the folder with their sizes, without opening any of them.
+     * These are the units that several importer instances split between them.
+     */
+    public static Map<Path, Long> listImportable(Path folder) throws IOException {
+        var importable = new LinkedHashMap<Path, Long>();
+        try (var fileStream = Files.walk(folder)) {
+            var fileIterator = fileStream.filter(Files::isRegularFile).iterator();
+            while (fileIterator.hasNext()) {
+                var filePath = fileIterator.next();
+                var name = filePath.getFileName().toString();
+                if (isUimaFile(name) || isArchive(name)) importable.put(filePath, Files.size(filePath));
+            }
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        return importable;
+    }
+
+    /**
+     * Hands a single file to the visitor, or all UIMA files within it if it's an archive.
+     */
+    public static void visit(Path filePath, int bufferSize, ImportFileVisitor visitor) throws IOException, InterruptedException {
+        var name = filePath.getFileName().toString();
+        if (isUimaFile(name)) visitor.visit(ImportFile.ofFile(filePath, bufferSize));
+        else if (isArchive(name)) walkArchive(filePath, bufferSize, visitor);
+    }
+
+    /**
+     * Counts the importable files in the folder. Archives have to be read for this, but their entries
+     * are skipped without being buffered.
+     */
+    public static int count(Path folder, int bufferSize) throws IOException {
+        var count = 0;
+        try (var fileStream = Files.walk(folder)) {
+            var fileIterator = fileStream.filter(Files::isRegularFile).iterator();
+            while (fileIterator.hasNext()) {
+                var filePath = fileIterator.next();
+                var name = filePath.getFileName().toString();
+                if (isUimaFile(name)) count++;
+                else if (isArchive(name)) {
+                    try (var archive = openArchive(filePath, bufferSize)) {
+                        ArchiveEntry entry;
+                        while ((entry = archive.getNextEntry()) != null) {
+                            if (!entry.isDirectory() && isUimaFile(entry.getName())) count++;
+                        }
+                    }
+                }
+            }
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        return count;
+    }
+
+    /**
+     * The summed up size of all importable files and archives in the folder in bytes, without opening any of them.
+     */
+    public static long totalSize(Path folder) throws IOException {
+        var size = 0L;
+        try (var fileStream = Files.walk(folder)) {
+            var fileIterator = fileStream.filter(Files::isRegularFile).iterator();
+            while (fileIterator.hasNext()) {
+                var filePath = fileIterator.next();
+                var name = filePath.getFileName().toString();
+                if (isUimaFile(name) || isArchive(name)) size += Files.size(filePath);
+            }
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        return size;
+    }
+
+    private static void walkArchive(Path archivePath, int bufferSize, ImportFileVisitor visitor) throws IOException, InterruptedException {
+        logger.info("Importing the UIMA files within the archive " + archivePath);
+        try (var archive = openArchive(archivePath, bufferSize)) {
+            ArchiveEntry entry;
+            while ((entry = archive.getNextEntry()) != null) {
+                if (entry.isDirectory() || !isUimaFile(entry.getName())) continue;
+                if (!archive.canReadEntryData(entry)) {
+                    logger.warn("Can't read the entry " + entry.getName() + " of " + archivePath + " (e.g. encrypted), skipping it.");
+                    continue;
+                }
+                visitor.visit(ImportFile.ofArchiveEntry(archivePath, entry.getName(), archive.readAllBytes(), bufferSize));
+            }
+        }
+    }
+
+    private static ArchiveInputStream<?> openArchive(Path archivePath, int bufferSize) throws IOException {
+        var name = archivePath.getFileName().toString();
+        var inputStream = new BufferedInputStream(Files.newInputStream(archivePath), bufferSize);
+        try {
+            if (name.toLowerCase().endsWith(".zip")) return new ZipArchiveInputStream(inputStream);
+            return new TarArchiveInputStream(ImportFile.decompress(inputStream, name, bufferSize));
+        } catch (IOException ex) {
+            inputStream.close();
+            throw ex;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package org.texttechnologylab.importer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.texttechnologylab.exceptions.DatabaseOperationException;
+import org.texttechnologylab.models.corpus.Document;
+import org.texttechnologylab.models.imp.ImportManifestEntry;
+import org.texttechnologylab.services.DataInterface;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The files that were already imported into a corpus. It is loaded once at the start of an import, so checking
+ * a file is a map lookup and a stat of the file. Only if the size matches but the modification time doesn't,
+ * e.g. because the corpus was copied, the content hash is compared.
+ */
+public class ImportManifest {
+    private static final Logger logger = LogManager.getLogger(ImportManifest.class);
+
+    private final DataInterface db;
+    private final long corpusId;
+    private final Map<String, ImportManifestEntry> entries = new ConcurrentHashMap<>();
+
+    public ImportManifest(DataInterface db, long corpusId) throws DatabaseOperationException {
+        this.db = db;
+        this.corpusId = corpusId;
+        for (var entry : db.getImportManifestEntriesByCorpusId(corpusId)) entries.put(entry.getFilePath(), entry);
+        logger.info("Loaded the import manifest of corpus " + corpusId + " with " + entries.size() + " files.");
+    }
+
+    /**
+     * Checks whether the given file was already imported into the corpus, without parsing it.
+     */
+    public boolean isImported(Path file) throws IOException {
+        var entry = entries.get(toKey(file));
+        if (entry == null) return false;
+
+        var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        if (attributes.size() != entry.getFileSize()) return false;
+        if (attributes.lastModifiedTime().toMillis() == entry.getLastModified()) return true;
+        return entry.getContentHash() != null && entry.getContentHash().equals(hashFile(file));
+    }
+
+    /**
+     * Records that the given file was stored as the given document. The content hash is taken while the file is
+     * parsed anyway, see {@link #newDigest()}, so recording doesn't read the file a second time. Without a hash,
+     * a file whose modification time changed is parsed again by the next import.
+     */
+    public void record(Path file, Document document, String contentHash) throws IOException, DatabaseOperationException {
+        var key = toKey(file);
+        var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        var entry = entries.getOrDefault(key, new ImportManifestEntry());
+        entry.setCorpusId(corpusId);
+        entry.setFilePath(key);
+        entry.setFileSize(attributes.size());
+        entry.setLastModified(attributes.lastModifiedTime().toMillis());
+        entry.setContentHash(contentHash);
+        entry.setDocumentId(document.getDocumentId());
+        entry.setDocumentDbId(document.getId());
+        db.saveOrUpdateImportManifestEntry(entry);
+        entries.put(key, entry);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static String toKey(Path file) {
+        return file.toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * The SHA-256 of the file's content as hex.
+     */
+    public static String hashFile(Path file) throws IOException {
+        var digest = newDigest();
+        try (var inputStream = new DigestInputStream(Files.newInputStream(file), digest)) {
+            inputStream.transferTo(OutputStream.nullOutputStream());
+        }
+        return formatHash(digest);
+    }
+
+    /**
+     * A new digest for the content hash of a file, to be fed with every byte of the file as it is read.
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            // Every JVM has to support SHA-256.
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * The content hash from a digest that was fed with the whole file.
+     */
+    public static String formatHash(MessageDigest digest) {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
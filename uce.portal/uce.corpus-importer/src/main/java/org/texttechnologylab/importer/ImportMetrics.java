@@ -0,0 +1,261 @@
+package org.texttechnologylab.importer;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * The throughput and the latencies of the stages of a single import, so a slow import shows whether it waits on
+ * parsing, the database, the embeddings or anything else. Every stage, e.g. "parse", "extract_lemmata" or
+ * "postprocess_document_topics", has its own latency histogram. Recording is lock free and cheap enough to be
+ * done for every document. The metrics are logged as summary lines, added to the UCEImport and, if the
+ * {@link ImportMetricsServer} runs, exposed in the Prometheus text format.
+ */
+public class ImportMetrics {
+    // Every import of this process, for the ImportMetricsServer. Imports are never removed, so their final numbers stay visible.
+    private static final Set<ImportMetrics> ACTIVE = ConcurrentHashMap.newKeySet();
+    // The upper bounds of the histogram buckets in seconds. The last bucket is +Inf.
+    private static final double[] BUCKETS = {0.001, 0.005, 0.01, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 300};
+
+    private final String importId;
+    private final long startedAt = System.nanoTime();
+    private final LongAdder documentsParsed = new LongAdder();
+    private final LongAdder documentsStored = new LongAdder();
+    private final LongAdder documentsPostProcessed = new LongAdder();
+    private final LongAdder documentsFailed = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder annotationsRead = new LongAdder();
+    private final ConcurrentHashMap<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, IntSupplier> gauges = new ConcurrentHashMap<>();
+    private volatile String corpusName;
+
+    public ImportMetrics(String importId) {
+        this.importId = importId;
+    }
+
+    /**
+     * Makes the metrics available to the {@link ImportMetricsServer}.
+     */
+    public ImportMetrics register() {
+        ACTIVE.add(this);
+        return this;
+    }
+
+    public static Set<ImportMetrics> getRegistered() {
+        return ACTIVE;
+    }
+
+    /**
+     * Records the latency of a stage that started at the given {@link System#nanoTime()}.
+     */
+    public void record(String stage, long startNanos) {
+        latencies.computeIfAbsent(stage, s -> new LatencyHistogram()).record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Wraps the task, so every run of it is recorded as the given stage.
+     */
+    public Runnable timed(String stage, Runnable task) {
+        return () -> {
+            var start = System.nanoTime();
+            try {
+                task.run();
+            } finally {
+                record(stage, start);
+            }
+        };
+    }
+
+    /**
+     * A value that is read whenever the metrics are reported, like the depth of a queue.
+     */
+    public void registerGauge(String name, IntSupplier gauge) {
+        gauges.put(name, gauge);
+    }
+
+    public void addDocumentParsed(long bytes, long annotations) {
+        documentsParsed.increment();
+        bytesRead.add(bytes);
+        annotationsRead.add(annotations);
+    }
+
+    public void addDocumentStored() {
+        documentsStored.increment();
+    }
+
+    public void addDocumentPostProcessed() {
+        documentsPostProcessed.increment();
+    }
+
+    public void addDocumentFailed() {
+        documentsFailed.increment();
+    }
+
+    public String getImportId() {
+        return importId;
+    }
+
+    public String getCorpusName() {
+        return corpusName;
+    }
+
+    public void setCorpusName(String corpusName) {
+        this.corpusName = corpusName;
+    }
+
+    public long getDocumentsParsed() {
+        return documentsParsed.sum();
+    }
+
+    public long getDocumentsStored() {
+        return documentsStored.sum();
+    }
+
+    public long getDocumentsPostProcessed() {
+        return documentsPostProcessed.sum();
+    }
+
+    public long getDocumentsFailed() {
+        return documentsFailed.sum();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    public long getAnnotationsRead() {
+        return annotationsRead.sum();
+    }
+
+    public double getElapsedSeconds() {
+        return (System.nanoTime() - startedAt) / 1_000_000_000.0;
+    }
+
+    /**
+     * A single line with the throughput since the start, the gauges and the latencies of all stages.
+     */
+    public String getSummary() {
+        var elapsed = Math.max(getElapsedSeconds(), 0.001);
+        var summary = new StringBuilder(String.format(Locale.ROOT,
+                "Import %s: %d parsed, %d stored, %d postprocessed, %d failed in %.0fs | %.2f docs/s, %.2f MB/s, %.0f annotations/s",
+                importId, getDocumentsParsed(), getDocumentsStored(), getDocumentsPostProcessed(), getDocumentsFailed(), elapsed,
+                getDocumentsStored() / elapsed, getBytesRead() / elapsed / (1024 * 1024), getAnnotationsRead() / elapsed));
+        if (!gauges.isEmpty()) {
+            summary.append(" |");
+            new TreeMap<>(gauges).forEach((name, gauge) -> summary.append(' ').append(name).append('=').append(gauge.getAsInt()));
+        }
+        new TreeMap<>(latencies).forEach((stage, histogram) -> summary.append(String.format(Locale.ROOT,
+                " | %s n=%d avg=%.0fms p95<=%s", stage, histogram.getCount(),
+                histogram.getCount() == 0 ? 0.0 : histogram.getSumNanos() / 1_000_000.0 / histogram.getCount(),
+                formatBucket(histogram.getQuantileBucket(0.95)))));
+        return summary.toString();
+    }
+
+    /**
+     * Appends the metrics in the Prometheus text format, labelled with the import id.
+     */
+    public static void writePrometheus(StringBuilder out, Iterable<ImportMetrics> imports) {
+        out.append("# TYPE uce_import_documents_total counter\n");
+        for (var metrics : imports) {
+            metrics.writeSample(out, "uce_import_documents_total", "state=\"parsed\"", metrics.getDocumentsParsed());
+            metrics.writeSample(out, "uce_import_documents_total", "state=\"stored\"", metrics.getDocumentsStored());
+            metrics.writeSample(out, "uce_import_documents_total", "state=\"postprocessed\"", metrics.getDocumentsPostProcessed());
+            metrics.writeSample(out, "uce_import_documents_total", "state=\"failed\"", metrics.getDocumentsFailed());
+        }
+        out.append("# TYPE uce_import_read_bytes_total counter\n");
+        for (var metrics : imports) metrics.writeSample(out, "uce_import_read_bytes_total", null, metrics.getBytesRead());
+        out.append("# TYPE uce_import_annotations_total counter\n");
+        for (var metrics : imports) metrics.writeSample(out, "uce_import_annotations_total", null, metrics.getAnnotationsRead());
+        out.append("# TYPE uce_import_elapsed_seconds gauge\n");
+        for (var metrics : imports) metrics.writeSample(out, "uce_import_elapsed_seconds", null, metrics.getElapsedSeconds());
+        out.append("# TYPE uce_import_gauge gauge\n");
+        for (var metrics : imports) {
+            new TreeMap<>(metrics.gauges).forEach((name, gauge) ->
+                    metrics.writeSample(out, "uce_import_gauge", "name=\"" + escape(name) + "\"", gauge.getAsInt()));
+        }
+        out.append("# TYPE uce_import_stage_seconds histogram\n");
+        for (var metrics : imports) {
+            new TreeMap<>(metrics.latencies).forEach((stage, histogram) -> {
+                var stageLabel = "stage=\"" + escape(stage) + "\"";
+                var cumulative = 0L;
+                for (var i = 0; i <= BUCKETS.length; i++) {
+                    cumulative += histogram.buckets[i].sum();
+                    var bound = i < BUCKETS.length ? String.valueOf(BUCKETS[i]) : "+Inf";
+                    metrics.writeSample(out, "uce_import_stage_seconds_bucket", stageLabel + ",le=\"" + bound + "\"", cumulative);
+                }
+                metrics.writeSample(out, "uce_import_stage_seconds_sum", stageLabel, histogram.getSumNanos() / 1_000_000_000.0);
+                metrics.writeSample(out, "uce_import_stage_seconds_count", stageLabel, histogram.getCount());
+            });
+        }
+    }
+
+    private void writeSample(StringBuilder out, String name, String labels, Number value) {
+        out.append(name).append("{import_id=\"").append(escape(importId)).append('"');
+        if (corpusName != null) out.append(",corpus=\"").append(escape(corpusName)).append('"');
+        if (labels != null) out.append(',').append(labels);
+        out.append("} ").append(value).append('\n');
+    }
+
+    private static String escape(String value) {
+        if (value == null) return "";
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String formatBucket(int bucket) {
+        if (bucket >= BUCKETS.length) return "+Inf";
+        var seconds = BUCKETS[bucket];
+        return seconds < 1 ? Math.round(seconds * 1000) + "ms" : (seconds % 1 == 0 ? String.valueOf((long) seconds) : String.valueOf(seconds)) + "s";
+    }
+
+    /**
+     * Counts the latencies into fixed buckets. Precise enough to tell a 10ms from a 1s stage, at the cost of a few adders.
+     */
+    private static class LatencyHistogram {
+        private final LongAdder[] buckets = new LongAdder[BUCKETS.length + 1];
+        private final LongAdder sumNanos = new LongAdder();
+
+        private LatencyHistogram() {
+            for (var i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+        }
+
+        private void record(long nanos) {
+            var seconds = nanos / 1_000_000_000.0;
+            var bucket = 0;
+            while (bucket < BUCKETS.length && seconds > BUCKETS[bucket]) bucket++;
+            buckets[bucket].increment();
+            sumNanos.add(nanos);
+        }
+
+        private long getCount() {
+            var count = 0L;
+            for (var bucket : buckets) count += bucket.sum();
+            return count;
+        }
+
+        private long getSumNanos() {
+            return sumNanos.sum();
+        }
+
+        /**
+         * The bucket the given quantile of the recorded latencies falls into.
+         */
+        private int getQuantileBucket(double quantile) {
+            var counts = new long[buckets.length];
+            var total = 0L;
+            for (var i = 0; i < buckets.length; i++) {
+                counts[i] = buckets[i].sum();
+                total += counts[i];
+            }
+            var threshold = (long) Math.ceil(total * quantile);
+            var cumulative = 0L;
+            for (var i = 0; i < counts.length; i++) {
+                cumulative += counts[i];
+                if (cumulative >= threshold && cumulative > 0) return i;
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package org.texttechnologylab.importer;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the {@link ImportMetrics} of all imports of this process at /metrics in the Prometheus text format.
+ * Only started when the importer is given a -metricsPort.
+ */
+public class ImportMetricsServer {
+    private static final Logger logger = LogManager.getLogger(ImportMetricsServer.class);
+
+    private final HttpServer server;
+
+    public ImportMetricsServer(int port) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.server.createContext("/metrics", exchange -> {
+            try (exchange) {
+                var out = new StringBuilder();
+                ImportMetrics.writePrometheus(out, new ArrayList<>(ImportMetrics.getRegistered()));
+                var body = out.toString().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+        });
+        // Scrapes are rare and cheap, a single thread is plenty.
+        this.server.setExecutor(Executors.newSingleThreadExecutor(runnable -> {
+            var thread = new Thread(runnable, "uce-import-metrics");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    public void start() {
+        server.start();
+        logger.info("Serving the import metrics at http://localhost:" + server.getAddress().getPort() + "/metrics");
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+}
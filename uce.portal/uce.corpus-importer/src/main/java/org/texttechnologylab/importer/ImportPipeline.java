@@ -0,0 +1,140 @@
+package org.texttechnologylab.importer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * A bounded, staged producer/consumer pipeline for the import. The producer (the directory walk) blocks in
+ * {@link #submit(Function)} as soon as {@code maxInFlight} tasks are queued or running, so memory stays
+ * flat no matter how many files a corpus has. Each {@link ImportStage} has its own pool and queue, so e.g.
+ * slow RAG calls of the postprocessing never block the parsing threads.
+ * <p>
+ * The pools are held by {@link ImportWorkers}, which several pipelines may share. Then every pipeline
+ * additionally holds its own, smaller in-flight limit, so one large corpus can't take the whole budget.
+ */
+public class ImportPipeline {
+    private static final Logger logger = LogManager.getLogger(ImportPipeline.class);
+
+    private final ImportWorkers workers;
+    private final boolean ownsWorkers;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final AtomicBoolean exclusiveTaskRunning = new AtomicBoolean(false);
+
+    public ImportPipeline(ImportPipelineConfig config) {
+        this(new ImportWorkers(config), config.getMaxInFlight(), true);
+    }
+
+    /**
+     * Creates a pipeline on top of shared workers, with at most maxInFlight tasks of its own at a time.
+     */
+    public ImportPipeline(ImportWorkers workers, int maxInFlight) {
+        this(workers, maxInFlight, false);
+    }
+
+    private ImportPipeline(ImportWorkers workers, int maxInFlight, boolean ownsWorkers) {
+        this.workers = workers;
+        this.ownsWorkers = ownsWorkers;
+        this.maxInFlight = Math.max(Math.min(maxInFlight, workers.getMaxInFlight()), 1);
+        this.inFlight = new Semaphore(this.maxInFlight);
+    }
+
+    /**
+     * Gets the executor of the given stage. Task chains should hop onto these, e.g. via
+     * {@code supplyAsync(..., getExecutor(ImportStage.PARSE)).thenApplyAsync(..., getExecutor(ImportStage.PERSIST))}.
+     */
+    public Executor getExecutor(ImportStage stage) {
+        return workers.getExecutor(stage);
+    }
+
+    /**
+     * Submits a task chain into the pipeline. Blocks until there is a free slot, both in this pipeline and in
+     * the shared workers. The slot is freed once the future returned by the task completes, regardless of whether it failed.
+     */
+    public void submit(Function<ImportPipeline, CompletableFuture<?>> task) throws InterruptedException {
+        submit(0, task);
+    }
+
+    /**
+     * Like {@link #submit(Function)}, but the task is additionally only admitted once its estimated memory
+     * fits into the memory budget of the workers.
+     */
+    public void submit(long estimatedMemory, Function<ImportPipeline, CompletableFuture<?>> task) throws InterruptedException {
+        var memoryAdmission = workers.getMemoryAdmission();
+        inFlight.acquire();
+        try {
+            workers.acquire();
+            try {
+                memoryAdmission.acquire(estimatedMemory);
+            } catch (InterruptedException ex) {
+                workers.release();
+                throw ex;
+            }
+        } catch (InterruptedException ex) {
+            inFlight.release();
+            throw ex;
+        }
+        try {
+            task.apply(this).whenComplete((result, ex) -> {
+                if (ex != null) logger.error("A task of the import pipeline failed.", ex);
+                memoryAdmission.release(estimatedMemory);
+                workers.release();
+                inFlight.release();
+            });
+        } catch (Exception ex) {
+            memoryAdmission.release(estimatedMemory);
+            workers.release();
+            inFlight.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Submits a task of which at most one may run at a time, like the periodic corpus postprocessing.
+     * If such a task is already running, the call is skipped and false is returned.
+     */
+    public boolean submitExclusive(ImportStage stage, Runnable task) throws InterruptedException {
+        if (!exclusiveTaskRunning.compareAndSet(false, true)) return false;
+        try {
+            submit(pipeline -> CompletableFuture.runAsync(task, pipeline.getExecutor(stage))
+                    .whenComplete((result, ex) -> exclusiveTaskRunning.set(false)));
+        } catch (Exception ex) {
+            exclusiveTaskRunning.set(false);
+            throw ex;
+        }
+        return true;
+    }
+
+    /**
+     * Blocks until every task submitted to this pipeline has finished.
+     */
+    public void awaitCompletion() throws InterruptedException {
+        inFlight.acquire(maxInFlight);
+        inFlight.release(maxInFlight);
+    }
+
+    /**
+     * The amount of tasks of this pipeline that are currently queued or running.
+     */
+    public int getInFlightCount() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    /**
+     * The amount of tasks waiting in the queue of the given stage. Virtual thread stages have no queue.
+     */
+    public int getQueueDepth(ImportStage stage) {
+        return workers.getQueueDepth(stage);
+    }
+
+    /**
+     * Shuts down the stage pools, unless they are shared with other pipelines.
+     */
+    public void shutdown() {
+        if (ownsWorkers) workers.shutdown();
+    }
+}
@@ -0,0 +1,186 @@
+package org.texttechnologylab.importer;
+
+/**
+ * The sizing of the import pipeline and its stages.
+ */
+public class ImportPipelineConfig {
+    private int parseThreads = Runtime.getRuntime().availableProcessors();
+    private int persistThreads = 1;
+    // A value of 0 or less means the postprocessing runs on virtual threads.
+    private int postProcessThreads = 0;
+    private int maxInFlight = 4;
+    // The buffer used for reading (and decompressing) the UIMA files. Large buffers pay off on network storage.
+    private int readBufferSize = 1024 * 1024;
+    // Files are dispatched largest-first, so a huge file doesn't end up as the last one running.
+    private boolean largestFirst = true;
+    // The estimated memory of all files in flight may not exceed this. 0 or less means 60% of the max heap.
+    private long memoryBudget = 0;
+    // How much heap a file takes up while it is imported, relative to its (uncompressed) size.
+    private double expansionFactor = 3.0;
+    // Set when several importer instances split the import between them. Null means this instance imports everything.
+    private String instanceId = null;
+    // How many files an instance claims from the shared work table at once.
+    private int claimBatchSize = 8;
+    // A claimed file is handed to another instance if its lease isn't renewed within this time.
+    private long leaseMillis = 5 * 60 * 1000;
+    // How often a file may be claimed before it's given up on, e.g. because it crashes every instance.
+    private int maxClaimAttempts = 3;
+    // Documents with at least this many annotations extract them with several threads. 0 or less disables it.
+    private int parallelExtractionThreshold = 250_000;
+    // How often a summary of the import metrics is logged and added to the UCEImport. 0 or less only reports at the end.
+    private long metricsReportIntervalMillis = 30_000;
+
+    public ImportPipelineConfig() {
+    }
+
+    /**
+     * Sizes all stages by the single -numThreads parameter, as was done before there were stages.
+     */
+    public ImportPipelineConfig(int numThreads) {
+        this.parseThreads = numThreads;
+        this.persistThreads = numThreads;
+        this.maxInFlight = numThreads * 4;
+    }
+
+    public int getParseThreads() {
+        return parseThreads;
+    }
+
+    public void setParseThreads(int parseThreads) {
+        this.parseThreads = parseThreads;
+    }
+
+    public int getPersistThreads() {
+        return persistThreads;
+    }
+
+    public void setPersistThreads(int persistThreads) {
+        this.persistThreads = persistThreads;
+    }
+
+    public int getPostProcessThreads() {
+        return postProcessThreads;
+    }
+
+    public void setPostProcessThreads(int postProcessThreads) {
+        this.postProcessThreads = postProcessThreads;
+    }
+
+    public boolean isPostProcessOnVirtualThreads() {
+        return postProcessThreads <= 0;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public int getReadBufferSize() {
+        return readBufferSize;
+    }
+
+    public void setReadBufferSize(int readBufferSize) {
+        this.readBufferSize = readBufferSize;
+    }
+
+    public boolean isLargestFirst() {
+        return largestFirst;
+    }
+
+    public void setLargestFirst(boolean largestFirst) {
+        this.largestFirst = largestFirst;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * The memory budget in bytes, with the default resolved against the max heap of this JVM.
+     */
+    public long getEffectiveMemoryBudget() {
+        if (memoryBudget > 0) return memoryBudget;
+        return (long) (Runtime.getRuntime().maxMemory() * 0.6);
+    }
+
+    public double getExpansionFactor() {
+        return expansionFactor;
+    }
+
+    public void setExpansionFactor(double expansionFactor) {
+        this.expansionFactor = expansionFactor;
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    public void setInstanceId(String instanceId) {
+        this.instanceId = instanceId;
+    }
+
+    public boolean isDistributed() {
+        return instanceId != null;
+    }
+
+    public int getClaimBatchSize() {
+        return claimBatchSize;
+    }
+
+    public void setClaimBatchSize(int claimBatchSize) {
+        this.claimBatchSize = claimBatchSize;
+    }
+
+    public long getLeaseMillis() {
+        return leaseMillis;
+    }
+
+    public void setLeaseMillis(long leaseMillis) {
+        this.leaseMillis = leaseMillis;
+    }
+
+    public int getMaxClaimAttempts() {
+        return maxClaimAttempts;
+    }
+
+    public void setMaxClaimAttempts(int maxClaimAttempts) {
+        this.maxClaimAttempts = maxClaimAttempts;
+    }
+
+    public int getParallelExtractionThreshold() {
+        return parallelExtractionThreshold;
+    }
+
+    public void setParallelExtractionThreshold(int parallelExtractionThreshold) {
+        this.parallelExtractionThreshold = parallelExtractionThreshold;
+    }
+
+    public long getMetricsReportIntervalMillis() {
+        return metricsReportIntervalMillis;
+    }
+
+    public void setMetricsReportIntervalMillis(long metricsReportIntervalMillis) {
+        this.metricsReportIntervalMillis = metricsReportIntervalMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "parse=" + parseThreads +
+                ", persist=" + persistThreads +
+                ", postprocess=" + (isPostProcessOnVirtualThreads() ? "virtual" : postProcessThreads) +
+                ", maxInFlight=" + maxInFlight +
+                ", readBuffer=" + readBufferSize / 1024 + "KB" +
+                ", largestFirst=" + largestFirst +
+                ", memoryBudget=" + getEffectiveMemoryBudget() / (1024 * 1024) + "MB" +
+                ", expansionFactor=" + expansionFactor +
+                ", parallelExtraction=" + (parallelExtractionThreshold > 0 ? ">=" + parallelExtractionThreshold + " annotations" : "off") +
+                (isDistributed() ? ", instance=" + instanceId + ", claimBatch=" + claimBatchSize + ", lease=" + leaseMillis / 1000 + "s" : "");
+    }
+}
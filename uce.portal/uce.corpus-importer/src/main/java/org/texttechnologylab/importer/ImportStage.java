@@ -0,0 +1,15 @@
+package org.texttechnologylab.importer;
+
+/**
+ * The stages of the import. Each of them stresses a different resource and hence runs on its own pool.
+ */
+public enum ImportStage {
+    // CPU bound: reading the XMI into a CAS and extracting the annotations.
+    PARSE,
+    // CPU bound: the annotation extractors of a single large document, which run side by side.
+    EXTRACT,
+    // DB bound: storing the extracted document.
+    PERSIST,
+    // Mostly HTTP bound: embeddings, topic distributions and the like.
+    POSTPROCESS
+}
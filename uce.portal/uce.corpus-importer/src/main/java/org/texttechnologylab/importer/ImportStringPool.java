@@ -0,0 +1,41 @@
+package org.texttechnologylab.importer;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Deduplicates the categorical values of the annotations of an import, like POS tags, morphological features,
+ * relation types or metadata keys. Each CAS creates its own string instance for every one of them, so millions of
+ * annotations carry millions of copies of a few hundred distinct values. Pooling them keeps one instance per value
+ * for as long as the import runs. Safe to use from all extraction threads at once.
+ */
+public class ImportStringPool {
+    // Categorical values are few. Should a field turn out not to be, we stop pooling instead of growing forever.
+    public static final int DEFAULT_MAX_SIZE = 100_000;
+
+    private final ConcurrentHashMap<String, String> pool = new ConcurrentHashMap<>();
+    private final int maxSize;
+
+    public ImportStringPool() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public ImportStringPool(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the pooled instance that equals the given value, which is the value itself the first time it's seen.
+     */
+    public String intern(String value) {
+        if (value == null) return null;
+        var pooled = pool.get(value);
+        if (pooled != null) return pooled;
+        if (pool.size() >= maxSize) return value;
+        pooled = pool.putIfAbsent(value, value);
+        return pooled == null ? value : pooled;
+    }
+
+    public int size() {
+        return pool.size();
+    }
+}
@@ -0,0 +1,84 @@
+package org.texttechnologylab.importer;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * The stage pools and the global in-flight and memory budget of an import. A single {@link ImportPipeline}
+ * owns its workers, but when several corpora are imported at once, they all share one instance, so the
+ * machine isn't oversubscribed no matter how many corpora run in parallel.
+ */
+public class ImportWorkers {
+    private final Map<ImportStage, ExecutorService> executors = new EnumMap<>(ImportStage.class);
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final MemoryAdmissionController memoryAdmission;
+
+    public ImportWorkers(ImportPipelineConfig config) {
+        this.maxInFlight = Math.max(config.getMaxInFlight(), 1);
+        this.memoryAdmission = new MemoryAdmissionController(config.getEffectiveMemoryBudget());
+        // Fair, so a corpus waiting for a slot gets the next free one and isn't starved by a large corpus.
+        this.inFlight = new Semaphore(this.maxInFlight, true);
+
+        executors.put(ImportStage.PARSE, createBoundedExecutor(config.getParseThreads()));
+        // A parse task waits on its extractors, so they can't share its bounded pool without risking a deadlock.
+        executors.put(ImportStage.EXTRACT, Executors.newWorkStealingPool(Math.max(config.getParseThreads(), 1)));
+        executors.put(ImportStage.PERSIST, createBoundedExecutor(config.getPersistThreads()));
+        // The postprocessing mostly waits on remote services, so cheap virtual threads fit best there.
+        executors.put(ImportStage.POSTPROCESS, config.isPostProcessOnVirtualThreads()
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : createBoundedExecutor(config.getPostProcessThreads()));
+    }
+
+    /**
+     * The semaphore already bounds the amount of tasks in the pipeline, so no stage queue can grow beyond that.
+     */
+    private ThreadPoolExecutor createBoundedExecutor(int threads) {
+        var poolSize = Math.max(threads, 1);
+        return new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(this.maxInFlight));
+    }
+
+    public Executor getExecutor(ImportStage stage) {
+        return executors.get(stage);
+    }
+
+    void acquire() throws InterruptedException {
+        inFlight.acquire();
+    }
+
+    void release() {
+        inFlight.release();
+    }
+
+    /**
+     * The memory budget shared by all pipelines on these workers.
+     */
+    public MemoryAdmissionController getMemoryAdmission() {
+        return memoryAdmission;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * The amount of tasks of all corpora that are currently queued or running.
+     */
+    public int getInFlightCount() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    /**
+     * The amount of tasks waiting in the queue of the given stage. Virtual thread stages have no queue.
+     */
+    public int getQueueDepth(ImportStage stage) {
+        if (executors.get(stage) instanceof ThreadPoolExecutor pool) return pool.getQueue().size();
+        return 0;
+    }
+
+    public void shutdown() {
+        executors.values().forEach(ExecutorService::shutdown);
+    }
+}
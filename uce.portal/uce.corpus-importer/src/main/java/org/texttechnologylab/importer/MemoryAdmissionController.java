@@ -0,0 +1,51 @@
+package org.texttechnologylab.importer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Limits the estimated memory of all files that are in the import at the same time. A file is only admitted
+ * if its estimate still fits into the budget, otherwise the caller waits until enough other files are done.
+ * A single file that is larger than the whole budget is admitted once nothing else is in flight, so it
+ * still gets imported, just on its own.
+ */
+public class MemoryAdmissionController {
+    private static final Logger logger = LogManager.getLogger(MemoryAdmissionController.class);
+
+    private final long budget;
+    private long inUse = 0;
+
+    public MemoryAdmissionController(long budget) {
+        this.budget = Math.max(budget, 1);
+    }
+
+    /**
+     * Blocks until the given amount of bytes fits into the budget and then reserves them.
+     */
+    public synchronized void acquire(long bytes) throws InterruptedException {
+        if (bytes <= 0) return;
+        var waiting = false;
+        while (inUse > 0 && inUse + bytes > budget) {
+            if (!waiting) {
+                logger.info("Waiting with a file of an estimated " + bytes / (1024 * 1024) + "MB until there is enough memory for it.");
+                waiting = true;
+            }
+            wait();
+        }
+        inUse += bytes;
+    }
+
+    public synchronized void release(long bytes) {
+        if (bytes <= 0) return;
+        inUse = Math.max(inUse - bytes, 0);
+        notifyAll();
+    }
+
+    public synchronized long getInUse() {
+        return inUse;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+}
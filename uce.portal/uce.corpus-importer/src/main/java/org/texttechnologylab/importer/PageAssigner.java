@@ -0,0 +1,68 @@
+package org.texttechnologylab.importer;
+
+import org.texttechnologylab.models.UIMAAnnotation;
+import org.texttechnologylab.models.corpus.Page;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Assigns the annotations of a document to its pages in a single sweep over both, sorted by begin, instead of
+ * filtering every annotation once per page. An annotation belongs to the last page (in document order) that
+ * completely covers it. Annotations that no page covers, mostly due to offset errors in the annotation, are
+ * assigned to the last page.
+ */
+public class PageAssigner {
+    private final List<Page> pages;
+    private final Integer[] pageOrder;
+
+    public PageAssigner(List<Page> pages) {
+        this.pages = pages;
+        // The indices of the pages sorted by their begin; the index itself decides between overlapping pages.
+        this.pageOrder = new Integer[pages.size()];
+        for (var i = 0; i < pageOrder.length; i++) pageOrder[i] = i;
+        Arrays.sort(pageOrder, Comparator.comparingInt(i -> pages.get(i).getBegin()));
+    }
+
+    public <T extends UIMAAnnotation> void assign(List<T> annotations, BiConsumer<T, Page> setPage) {
+        if (annotations == null || annotations.isEmpty() || pages.isEmpty()) return;
+
+        var sorted = new ArrayList<>(annotations);
+        sorted.sort(Comparator.comparingInt(UIMAAnnotation::getBegin));
+        var lastPage = pages.getLast();
+
+        // The pages that begin before the current annotation, by their end. For every end, only the highest page
+        // index matters. Pages ending before the current annotation begins can't cover any of the later ones.
+        var openPages = new TreeMap<Integer, Integer>();
+        var nextPage = 0;
+        for (var annotation : sorted) {
+            while (nextPage < pageOrder.length && pages.get(pageOrder[nextPage]).getBegin() <= annotation.getBegin()) {
+                var index = pageOrder[nextPage++];
+                openPages.merge(pages.get(index).getEnd(), index, Math::max);
+            }
+
+            // A broken annotation that ends before it begins may still be covered by a page we'd drop, so it's looked up directly.
+            if (annotation.getEnd() < annotation.getBegin()) {
+                setPage.accept(annotation, findCoveringPage(annotation, lastPage));
+                continue;
+            }
+            openPages.headMap(annotation.getBegin(), false).clear();
+
+            var best = -1;
+            for (var index : openPages.tailMap(annotation.getEnd(), true).values()) best = Math.max(best, index);
+            setPage.accept(annotation, best == -1 ? lastPage : pages.get(best));
+        }
+    }
+
+    private Page findCoveringPage(UIMAAnnotation annotation, Page fallback) {
+        for (var i = pages.size() - 1; i >= 0; i--) {
+            var page = pages.get(i);
+            if (annotation.getBegin() >= page.getBegin() && annotation.getEnd() <= page.getEnd()) return page;
+        }
+        return fallback;
+    }
+}
@@ -0,0 +1,147 @@
+package org.texttechnologylab.importer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.texttechnologylab.exceptions.ExceptionUtils;
+import org.texttechnologylab.models.corpus.UCEMetadataFilter;
+import org.texttechnologylab.models.corpus.UCEMetadataValueType;
+import org.texttechnologylab.services.PostgresqlDataInterface_Impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The UCEMetadataFilters of the corpora an importer imports into, keyed by corpus, key and value type. Every
+ * metadata annotation is registered here; the possible categories of enum filters are merged without locking
+ * the other filters. New and changed filters are stored in batches, periodically and on {@link #flush()}.
+ */
+public class UCEMetadataFilterRegistry {
+    private static final Logger logger = LogManager.getLogger(UCEMetadataFilterRegistry.class);
+
+    private final PostgresqlDataInterface_Impl db;
+    private final ConcurrentHashMap<FilterKey, FilterEntry> filters = new ConcurrentHashMap<>();
+    private ScheduledExecutorService flushScheduler;
+
+    public UCEMetadataFilterRegistry(PostgresqlDataInterface_Impl db) {
+        this.db = db;
+    }
+
+    /**
+     * Adds the already stored filters, e.g. when importing into an existing corpus.
+     */
+    public void load(List<UCEMetadataFilter> storedFilters) {
+        if (storedFilters == null) return;
+        for (var filter : storedFilters) {
+            var entry = new FilterEntry(filter);
+            if (filter.getValueType() == UCEMetadataValueType.ENUM) {
+                for (var category : filter.getPossibleCategories()) {
+                    if (!category.isBlank()) entry.addCategory(category);
+                }
+            }
+            // The stored filter is the source of truth, so it isn't dirty.
+            entry.dirty.set(false);
+            filters.putIfAbsent(new FilterKey(filter.getCorpusId(), filter.getKey(), filter.getValueType()), entry);
+        }
+    }
+
+    /**
+     * Registers a metadata value. Creates the filter if it doesn't exist yet and adds the value as a category to enum
+     * filters. We are not interested in filtering for JSON content, that's not feasible.
+     */
+    public void register(long corpusId, String key, UCEMetadataValueType valueType, String value) {
+        if (valueType == UCEMetadataValueType.JSON) return;
+        var entry = filters.computeIfAbsent(new FilterKey(corpusId, key, valueType),
+                k -> new FilterEntry(new UCEMetadataFilter(corpusId, key, valueType)));
+        if (valueType == UCEMetadataValueType.ENUM && value != null && !value.isBlank()) entry.addCategory(value);
+    }
+
+    /**
+     * Stores all new and changed filters every intervalMillis until {@link #close()}.
+     */
+    public synchronized void startPeriodicFlush(long intervalMillis) {
+        if (flushScheduler != null) return;
+        flushScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "uce-metadata-filter-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushScheduler.scheduleWithFixedDelay(this::flush, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stores all new and changed filters in one transaction. If that fails, they are tried again with the next flush.
+     */
+    public synchronized void flush() {
+        var changed = new ArrayList<FilterEntry>();
+        for (var entry : filters.values()) {
+            if (entry.dirty.compareAndSet(true, false)) changed.add(entry);
+        }
+        if (changed.isEmpty()) return;
+
+        var changedFilters = new ArrayList<UCEMetadataFilter>();
+        for (var entry : changed) {
+            if (entry.filter.getValueType() == UCEMetadataValueType.ENUM) {
+                synchronized (entry.categoryOrder) {
+                    entry.filter.setPossibleCategories(new ArrayList<>(entry.categoryOrder));
+                }
+            }
+            changedFilters.add(entry.filter);
+        }
+        ExceptionUtils.tryCatchLog(
+                () -> {
+                    db.saveOrUpdateUCEMetadataFilters(changedFilters);
+                    logger.info("Stored " + changedFilters.size() + " new or changed UCEMetadataFilters.");
+                },
+                (ex) -> {
+                    logger.error("Error storing " + changedFilters.size() + " UCEMetadataFilters, retrying with the next flush.", ex);
+                    changed.forEach(entry -> entry.dirty.set(true));
+                });
+    }
+
+    /**
+     * Stops the periodic flush and stores what's left.
+     */
+    public void close() {
+        synchronized (this) {
+            if (flushScheduler != null) {
+                flushScheduler.shutdown();
+                flushScheduler = null;
+            }
+        }
+        flush();
+    }
+
+    public int size() {
+        return filters.size();
+    }
+
+    private record FilterKey(long corpusId, String key, UCEMetadataValueType valueType) {
+    }
+
+    private static class FilterEntry {
+        private final UCEMetadataFilter filter;
+        // Checked on every metadata annotation, so known categories are found without taking a lock.
+        private final Set<String> categories = ConcurrentHashMap.newKeySet();
+        // The categories in the order they were found in, for the dropdown in the UI.
+        private final List<String> categoryOrder = new ArrayList<>();
+        private final AtomicBoolean dirty = new AtomicBoolean(true);
+
+        private FilterEntry(UCEMetadataFilter filter) {
+            this.filter = filter;
+        }
+
+        private void addCategory(String category) {
+            if (!categories.add(category)) return;
+            synchronized (categoryOrder) {
+                categoryOrder.add(category);
+            }
+            dirty.set(true);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.texttechnologylab.importer;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Pulls the documentId out of an XMI's DocumentMetaData without building a CAS. The XMI is read as a plain
+ * stream of XML events, and we stop as soon as the DocumentMetaData element was seen - which DKPro
+ * writes as one of the first elements.
+ */
+public class XmiHeaderScanner {
+    private static final String DOCUMENT_META_DATA = "DocumentMetaData";
+    private static final String DOCUMENT_ID = "documentId";
+
+    private static final XMLInputFactory xmlInputFactory = createXmlInputFactory();
+
+    private static XMLInputFactory createXmlInputFactory() {
+        var factory = XMLInputFactory.newFactory();
+        // We only need the elements, never any external entities.
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        return factory;
+    }
+
+    /**
+     * Returns the documentId of the XMI at the given path or null, if it has no DocumentMetaData.
+     */
+    public static String scanDocumentId(Path xmiPath) throws IOException, XMLStreamException {
+        try (var inputStream = Files.newInputStream(xmiPath)) {
+            return scanDocumentId(inputStream);
+        }
+    }
+
+    /**
+     * Returns the documentId of the XMI in the given stream or null, if it has no DocumentMetaData.
+     * The stream is only read up to the DocumentMetaData element and isn't closed.
+     */
+    public static String scanDocumentId(InputStream inputStream) throws XMLStreamException {
+        var reader = xmlInputFactory.createXMLStreamReader(inputStream);
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) continue;
+                if (!DOCUMENT_META_DATA.equals(reader.getLocalName())) continue;
+
+                for (var i = 0; i < reader.getAttributeCount(); i++) {
+                    if (DOCUMENT_ID.equals(reader.getAttributeLocalName(i))) return reader.getAttributeValue(i);
+                }
+                return null;
+            }
+            return null;
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package org.texttechnologylab.importer;
+
+import junit.framework.TestCase;
+import org.texttechnologylab.models.imp.ImportWorkItem;
+import org.texttechnologylab.models.imp.ImportWorkStatus;
+import org.texttechnologylab.services.DataInterface;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * The bookkeeping of the claimed files against an in-memory work table. The leasing itself is done by the
+ * SQL of the data interface and needs a PostgreSQL to be tested.
+ */
+public class DistributedWorkQueueTest extends TestCase {
+    private static final String IMPORT_ID = "import-1";
+
+    private Path inputFolder;
+    private WorkTable table;
+    private DistributedWorkQueue workQueue;
+
+    @Override
+    protected void setUp() throws Exception {
+        inputFolder = Files.createTempDirectory("uce-work-queue");
+        table = new WorkTable();
+        var config = new ImportPipelineConfig();
+        config.setInstanceId("instance-1");
+        config.setLeaseMillis(4000);
+        workQueue = new DistributedWorkQueue(table.asDataInterface(), IMPORT_ID, config);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try (var files = Files.walk(inputFolder)) {
+            for (var file : files.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(file);
+        }
+    }
+
+    public void testDiscoverStoresRelativePaths() throws Exception {
+        createFile("a.xmi");
+        createFile("sub/b.xmi.gz");
+        createFile("notes.txt");
+
+        workQueue.discover(inputFolder);
+
+        assertEquals(List.of("a.xmi", "sub/b.xmi.gz"), table.items.values().stream().map(ImportWorkItem::getFilePath).sorted().toList());
+    }
+
+    public void testReportedOutcomesAreStored() throws Exception {
+        createFile("good.xmi");
+        createFile("bad.xmi");
+        workQueue.discover(inputFolder);
+
+        workQueue.run(inputFolder, importFile -> workQueue.complete(importFile, importFile.getFileName().startsWith("good")));
+
+        assertEquals(ImportWorkStatus.DONE, table.statusOf("good.xmi"));
+        assertEquals(ImportWorkStatus.FAILED, table.statusOf("bad.xmi"));
+    }
+
+    public void testThrowingVisitorDoesNotLeaveTheFileClaimed() throws Exception {
+        createFile("a.xmi");
+        createFile("b.xmi");
+        workQueue.discover(inputFolder);
+
+        workQueue.run(inputFolder, importFile -> {
+            if (importFile.getFileName().equals("a.xmi")) throw new IllegalStateException("The pipeline is shut down.");
+            workQueue.complete(importFile, true);
+        });
+
+        assertEquals(ImportWorkStatus.FAILED, table.statusOf("a.xmi"));
+        assertEquals(ImportWorkStatus.DONE, table.statusOf("b.xmi"));
+    }
+
+    public void testArchiveIsDoneOnceAllOfItsFilesAre() throws Exception {
+        createZip("corpus.zip", "one.xmi", "two.xmi", "three.xmi", "readme.md");
+        workQueue.discover(inputFolder);
+
+        // The files are reported back later from another thread, like the import pipeline does.
+        var visited = new LinkedBlockingQueue<ImportFile>();
+        var run = CompletableFuture.runAsync(() -> {
+            try {
+                workQueue.run(inputFolder, visited::put);
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+
+        var files = List.of(take(visited), take(visited), take(visited));
+        assertEquals(List.of("one.xmi", "two.xmi", "three.xmi"), files.stream().map(ImportFile::getFileName).toList());
+
+        workQueue.complete(files.get(0), true);
+        workQueue.complete(files.get(1), true);
+        assertEquals(ImportWorkStatus.CLAIMED, table.statusOf("corpus.zip"));
+        assertFalse(run.isDone());
+
+        workQueue.complete(files.get(2), true);
+        run.get(10, TimeUnit.SECONDS);
+        assertEquals(ImportWorkStatus.DONE, table.statusOf("corpus.zip"));
+        assertTrue(visited.isEmpty());
+    }
+
+    public void testArchiveFailsIfOneOfItsFilesDoes() throws Exception {
+        createZip("corpus.zip", "one.xmi", "two.xmi");
+        workQueue.discover(inputFolder);
+
+        workQueue.run(inputFolder, importFile -> workQueue.complete(importFile, !importFile.getFileName().equals("one.xmi")));
+
+        assertEquals(ImportWorkStatus.FAILED, table.statusOf("corpus.zip"));
+    }
+
+    private void createFile(String name) throws IOException {
+        var file = inputFolder.resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, "<xmi/>");
+    }
+
+    private void createZip(String name, String... entries) throws IOException {
+        try (var zip = new ZipOutputStream(Files.newOutputStream(inputFolder.resolve(name)))) {
+            for (var entry : entries) {
+                zip.putNextEntry(new ZipEntry(entry));
+                zip.write("<xmi/>".getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+    }
+
+    private static ImportFile take(LinkedBlockingQueue<ImportFile> visited) throws InterruptedException {
+        var importFile = visited.poll(10, TimeUnit.SECONDS);
+        assertNotNull("The archive wasn't walked.", importFile);
+        return importFile;
+    }
+
+    /**
+     * The work table of a single import, claimed the way the data interface does it: open or expired items,
+     * largest first, until they were claimed too often.
+     */
+    private static class WorkTable {
+        private final Map<Long, ImportWorkItem> items = new LinkedHashMap<>();
+
+        private synchronized Object handle(String method, Object[] args) {
+            switch (method) {
+                case "insertImportWorkItems" -> {
+                    for (var item : (List<?>) args[0]) {
+                        var workItem = (ImportWorkItem) item;
+                        if (items.values().stream().anyMatch(i -> i.getFilePath().equals(workItem.getFilePath()))) continue;
+                        workItem.setId(items.size() + 1);
+                        workItem.setStatus(ImportWorkStatus.PENDING);
+                        items.put(workItem.getId(), workItem);
+                    }
+                    return null;
+                }
+                case "claimImportWorkItems" -> {
+                    var now = System.currentTimeMillis();
+                    var claimable = items.values().stream()
+                            .filter(i -> i.getStatus() == ImportWorkStatus.PENDING
+                                    || (i.getStatus() == ImportWorkStatus.CLAIMED && i.getLeaseUntil() < now))
+                            .filter(i -> i.getAttempts() < (int) args[4])
+                            .sorted(Comparator.comparingLong(ImportWorkItem::getFileSize).reversed())
+                            .limit((int) args[2])
+                            .toList();
+                    for (var item : claimable) {
+                        item.setStatus(ImportWorkStatus.CLAIMED);
+                        item.setClaimedBy((String) args[1]);
+                        item.setLeaseUntil(now + (long) args[3]);
+                        item.setAttempts(item.getAttempts() + 1);
+                    }
+                    return claimable;
+                }
+                case "renewImportWorkItemLeases" -> {
+                    for (var item : items.values()) {
+                        if (item.getStatus() == ImportWorkStatus.CLAIMED && args[1].equals(item.getClaimedBy()))
+                            item.setLeaseUntil(System.currentTimeMillis() + (long) args[2]);
+                    }
+                    return null;
+                }
+                case "updateImportWorkItemStatus" -> {
+                    items.get((long) args[0]).setStatus((ImportWorkStatus) args[1]);
+                    return null;
+                }
+                case "countOpenImportWorkItems" -> {
+                    return (int) items.values().stream()
+                            .filter(i -> i.getStatus() == ImportWorkStatus.PENDING || i.getStatus() == ImportWorkStatus.CLAIMED)
+                            .count();
+                }
+                default -> throw new UnsupportedOperationException(method);
+            }
+        }
+
+        private synchronized ImportWorkStatus statusOf(String filePath) {
+            return items.values().stream().filter(i -> i.getFilePath().equals(filePath)).findFirst().orElseThrow().getStatus();
+        }
+
+        private DataInterface asDataInterface() {
+            return (DataInterface) Proxy.newProxyInstance(DataInterface.class.getClassLoader(), new Class<?>[]{DataInterface.class},
+                    (proxy, method, args) -> switch (method.getName()) {
+                        case "toString" -> "DistributedWorkQueueTest.db";
+                        case "hashCode" -> System.identityHashCode(proxy);
+                        case "equals" -> proxy == args[0];
+                        default -> handle(method.getName(), args);
+                    });
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package org.texttechnologylab.importer;
+
+import junit.framework.TestCase;
+import org.texttechnologylab.models.corpus.Document;
+import org.texttechnologylab.models.imp.ImportManifestEntry;
+import org.texttechnologylab.services.DataInterface;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+public class ImportManifestTest extends TestCase {
+    private static final long CORPUS_ID = 7;
+
+    private Path directory;
+    // What the fake database holds, shared between the manifests of one test like the table is between imports.
+    private List<ImportManifestEntry> table;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("uce-manifest");
+        table = new ArrayList<>();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try (var files = Files.walk(directory)) {
+            for (var file : files.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(file);
+        }
+    }
+
+    public void testUnknownFileIsNotImported() throws Exception {
+        var manifest = new ImportManifest(createDb(), CORPUS_ID);
+        assertFalse(manifest.isImported(createFile("a.xmi", "<xmi/>")));
+        assertEquals(0, manifest.size());
+    }
+
+    public void testRecordedFileIsImported() throws Exception {
+        var file = createFile("a.xmi", "<xmi/>");
+        var manifest = new ImportManifest(createDb(), CORPUS_ID);
+        manifest.record(file, new Document("de", "A", "a.xmi", CORPUS_ID), ImportManifest.hashFile(file));
+
+        assertTrue(manifest.isImported(file));
+        assertEquals(1, table.size());
+        var entry = table.getFirst();
+        assertEquals(CORPUS_ID, entry.getCorpusId());
+        assertEquals("a.xmi", entry.getDocumentId());
+        assertEquals(ImportManifest.hashFile(file), entry.getContentHash());
+    }
+
+    public void testUnchangedFileIsSkippedByTheNextImport() throws Exception {
+        var file = createFile("a.xmi", "<xmi/>");
+        new ImportManifest(createDb(), CORPUS_ID).record(file, new Document("de", "A", "a.xmi", CORPUS_ID), ImportManifest.hashFile(file));
+
+        var nextImport = new ImportManifest(createDb(), CORPUS_ID);
+        assertEquals(1, nextImport.size());
+        assertTrue(nextImport.isImported(file));
+        // The path is the key, no matter how the file is referenced.
+        assertTrue(nextImport.isImported(directory.resolve(".").resolve("a.xmi")));
+    }
+
+    public void testChangedSizeIsNotImported() throws Exception {
+        var file = createFile("a.xmi", "<xmi/>");
+        var manifest = new ImportManifest(createDb(), CORPUS_ID);
+        manifest.record(file, new Document("de", "A", "a.xmi", CORPUS_ID), ImportManifest.hashFile(file));
+
+        var lastModified = Files.getLastModifiedTime(file);
+        Files.writeString(file, "<xmi>changed</xmi>");
+        // Even with the old modification time, the size gives the change away.
+        Files.setLastModifiedTime(file, lastModified);
+        assertFalse(manifest.isImported(file));
+    }
+
+    public void testCopiedFileWithTheSameContentIsImported() throws Exception {
+        var file = createFile("a.xmi", "<xmi/>");
+        var manifest = new ImportManifest(createDb(), CORPUS_ID);
+        manifest.record(file, new Document("de", "A", "a.xmi", CORPUS_ID), ImportManifest.hashFile(file));
+
+        touch(file);
+        assertTrue(manifest.isImported(file));
+    }
+
+    public void testSameSizeWithOtherContentIsNotImported() throws Exception {
+        var file = createFile("a.xmi", "<xmi a='1'/>");
+        var manifest = new ImportManifest(createDb(), CORPUS_ID);
+        manifest.record(file, new Document("de", "A", "a.xmi", CORPUS_ID), ImportManifest.hashFile(file));
+
+        Files.writeString(file, "<xmi a='2'/>");
+        touch(file);
+        assertFalse(manifest.isImported(file));
+    }
+
+    public void testRecordingAgainUpdatesTheEntry() throws Exception {
+        var file = createFile("a.xmi", "<xmi a='1'/>");
+        var manifest = new ImportManifest(createDb(), CORPUS_ID);
+        manifest.record(file, new Document("de", "A", "a.xmi", CORPUS_ID), ImportManifest.hashFile(file));
+
+        Files.writeString(file, "<xmi a='22'/>");
+        assertFalse(manifest.isImported(file));
+        manifest.record(file, new Document("de", "A", "a.xmi", CORPUS_ID), ImportManifest.hashFile(file));
+
+        assertTrue(manifest.isImported(file));
+        assertEquals(1, manifest.size());
+        assertSame(table.get(0), table.get(1));
+        assertEquals(ImportManifest.hashFile(file), table.getLast().getContentHash());
+    }
+
+    public void testHashTakenWhileReadingMatchesTheFile() throws Exception {
+        var file = directory.resolve("a.xmi.gz");
+        try (var outputStream = new GZIPOutputStream(Files.newOutputStream(file))) {
+            outputStream.write("<xmi>Ein Text</xmi>".getBytes(StandardCharsets.UTF_8));
+        }
+
+        var digest = ImportManifest.newDigest();
+        try (var inputStream = ImportFile.ofFile(file, 4).openStream(digest)) {
+            // Like a parser that stops early, the rest is read only to complete the hash.
+            assertEquals('<', inputStream.read());
+            inputStream.transferTo(OutputStream.nullOutputStream());
+        }
+        assertEquals(ImportManifest.hashFile(file), ImportManifest.formatHash(digest));
+    }
+
+    private Path createFile(String name, String content) throws IOException {
+        return Files.writeString(directory.resolve(name), content);
+    }
+
+    private static void touch(Path file) throws IOException {
+        var lastModified = Files.getLastModifiedTime(file).toMillis();
+        Files.setLastModifiedTime(file, FileTime.fromMillis(lastModified + 60_000));
+    }
+
+    /**
+     * A database that only knows the manifest table, which is all the manifest may touch.
+     */
+    private DataInterface createDb() {
+        return (DataInterface) Proxy.newProxyInstance(DataInterface.class.getClassLoader(), new Class<?>[]{DataInterface.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getImportManifestEntriesByCorpusId" ->
+                            table.stream().filter(e -> e.getCorpusId() == (long) args[0]).distinct().toList();
+                    case "saveOrUpdateImportManifestEntry" -> {
+                        table.add((ImportManifestEntry) args[0]);
+                        yield null;
+                    }
+                    case "toString" -> "ImportManifestTest.db";
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
@@ -0,0 +1,64 @@
+package org.texttechnologylab.importer;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+
+public class ImportStringPoolTest extends TestCase {
+
+    public void testEqualValuesShareOneInstance() {
+        var pool = new ImportStringPool();
+        var first = new String("NOUN");
+        var second = new String("NOUN");
+
+        assertSame(first, pool.intern(first));
+        assertSame(first, pool.intern(second));
+        assertEquals("VERB", pool.intern("VERB"));
+        assertEquals(2, pool.size());
+    }
+
+    public void testNullIsPassedThrough() {
+        var pool = new ImportStringPool();
+        assertNull(pool.intern(null));
+        assertEquals(0, pool.size());
+    }
+
+    public void testStopsGrowingAtTheMaxSize() {
+        var pool = new ImportStringPool(2);
+        var nom = pool.intern(new String("Nom"));
+        pool.intern("Acc");
+
+        // Beyond the limit, new values aren't pooled anymore, but the pooled ones still are.
+        var dat = new String("Dat");
+        assertSame(dat, pool.intern(dat));
+        assertNotSame(dat, pool.intern(new String("Dat")));
+        assertSame(nom, pool.intern(new String("Nom")));
+        assertEquals(2, pool.size());
+    }
+
+    public void testConcurrentInterningYieldsOneInstance() throws Exception {
+        var pool = new ImportStringPool();
+        // By identity, not equality: every thread must get the very same instance.
+        var instances = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<String, Boolean>()));
+        var executor = Executors.newFixedThreadPool(8);
+        try {
+            var futures = new ArrayList<CompletableFuture<Void>>();
+            for (var thread = 0; thread < 8; thread++) {
+                futures.add(CompletableFuture.runAsync(() -> {
+                    for (var i = 0; i < 10_000; i++) {
+                        instances.add(pool.intern(new String("Fem")));
+                    }
+                }, executor));
+            }
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get();
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, instances.size());
+        assertEquals(1, pool.size());
+    }
+}
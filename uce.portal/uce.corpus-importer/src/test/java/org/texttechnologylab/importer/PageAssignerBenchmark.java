@@ -0,0 +1,93 @@
+package org.texttechnologylab.importer;
+
+import junit.framework.TestCase;
+import org.texttechnologylab.models.corpus.NamedEntity;
+import org.texttechnologylab.models.corpus.Page;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Times the sweep of the {@link PageAssigner} against the former per-page filtering on a synthetic OCR volume of
+ * 2,000 pages and 200k annotations and fails if a single annotation ends up on another page. The name keeps it
+ * out of the regular test run, start it on purpose:
+ * <pre>
+ * mvn -pl uce.corpus-importer test -Dtest=PageAssignerBenchmark
+ * java -cp ... org.texttechnologylab.importer.PageAssignerBenchmark [pages] [annotations]
+ * </pre>
+ */
+public class PageAssignerBenchmark extends TestCase {
+    private static final int PAGES = 2000;
+    private static final int ANNOTATIONS = 200_000;
+
+    public static void main(String[] args) {
+        var pageCount = args.length > 0 ? Integer.parseInt(args[0]) : PAGES;
+        var annotationCount = args.length > 1 ? Integer.parseInt(args[1]) : ANNOTATIONS;
+        var mismatches = run(pageCount, annotationCount);
+        if (mismatches > 0) System.exit(1);
+    }
+
+    public void testSweepAgainstThePerPageFiltering() {
+        assertEquals("Annotations on another page than before", 0, run(PAGES, ANNOTATIONS));
+    }
+
+    private static int run(int pageCount, int annotationCount) {
+        var random = new Random(42);
+
+        // Pages of varying length, some of them overlapping their predecessor like broken OCR output does.
+        var pages = new ArrayList<Page>();
+        var position = 0;
+        for (var i = 0; i < pageCount; i++) {
+            var begin = i > 0 && random.nextInt(20) == 0 ? Math.max(0, position - random.nextInt(200)) : position;
+            var end = begin + 1000 + random.nextInt(4000);
+            pages.add(new Page(begin, end, i + 1, "page_" + (i + 1)));
+            position = end;
+        }
+
+        // Mostly small annotations; some cross a page boundary, lie beyond the text or have broken offsets.
+        var offsets = new int[annotationCount][];
+        for (var i = 0; i < annotationCount; i++) {
+            var begin = random.nextInt(position + 500);
+            var end = switch (random.nextInt(50)) {
+                case 0 -> begin + 2000 + random.nextInt(5000);
+                case 1 -> Math.max(0, begin - random.nextInt(10));
+                default -> begin + 1 + random.nextInt(30);
+            };
+            offsets[i] = new int[]{begin, end};
+        }
+
+        // The first rounds only warm up the JIT, the last one is measured.
+        long perPageMillis = 0, sweepMillis = 0;
+        var mismatches = 0;
+        for (var round = 0; round < 3; round++) {
+            var expected = createAnnotations(offsets);
+            var actual = createAnnotations(offsets);
+
+            var start = System.nanoTime();
+            PageAssignerTest.assignLikeBefore(pages, expected);
+            perPageMillis = (System.nanoTime() - start) / 1_000_000;
+
+            start = System.nanoTime();
+            new PageAssigner(pages).assign(actual, NamedEntity::setPage);
+            sweepMillis = (System.nanoTime() - start) / 1_000_000;
+
+            mismatches = 0;
+            for (var i = 0; i < annotationCount; i++) {
+                if (expected.get(i).getPage() != actual.get(i).getPage()) mismatches++;
+            }
+        }
+
+        System.out.println(pageCount + " pages, " + annotationCount + " annotations");
+        System.out.println("per page filtering: " + perPageMillis + "ms");
+        System.out.println("sweep:              " + sweepMillis + "ms");
+        System.out.println("mismatches:         " + mismatches);
+        return mismatches;
+    }
+
+    private static List<NamedEntity> createAnnotations(int[][] offsets) {
+        var annotations = new ArrayList<NamedEntity>(offsets.length);
+        for (var offset : offsets) annotations.add(new NamedEntity(offset[0], offset[1]));
+        return annotations;
+    }
+}
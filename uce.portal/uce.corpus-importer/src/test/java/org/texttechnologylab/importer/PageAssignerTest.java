@@ -0,0 +1,134 @@
+package org.texttechnologylab.importer;
+
+import junit.framework.TestCase;
+import org.texttechnologylab.models.corpus.NamedEntity;
+import org.texttechnologylab.models.corpus.Page;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The sweep of the {@link PageAssigner} has to assign every annotation to the same page as the former filtering,
+ * which went through the pages in order, assigned every annotation a page covers to it and put the rest on the last page.
+ */
+public class PageAssignerTest extends TestCase {
+
+    public void testBoundariesGapsAndOverlaps() {
+        var pages = List.of(
+                new Page(0, 100, 1, "p1"),
+                new Page(100, 200, 2, "p2"),
+                // Overlaps its predecessor like broken OCR output does.
+                new Page(190, 300, 3, "p3"),
+                // There's a gap between 300 and 350 that no page covers.
+                new Page(350, 400, 4, "p4"));
+
+        var annotations = createAnnotations(new int[][]{
+                {0, 100},   // exactly the first page
+                {0, 0},     // empty, at the very beginning
+                {100, 100}, // empty, on the border of the first two pages
+                {99, 101},  // crosses the border of the first two pages
+                {100, 150}, // begins with the second page
+                {150, 200}, // ends with the second page
+                {190, 200}, // covered by the second and third page
+                {195, 250}, // only in the third page, although it begins in the second
+                {300, 300}, // the end of the third page
+                {310, 320}, // in the gap
+                {290, 360}, // from the third page over the gap into the fourth
+                {350, 400}, // exactly the last page
+                {399, 450}, // beyond the end of the text
+                {150, 140}, // broken, ends before it begins
+                {320, 310}, // broken and in the gap
+        });
+
+        var expected = createAnnotations(annotations);
+        assignLikeBefore(pages, expected);
+        new PageAssigner(pages).assign(annotations, NamedEntity::setPage);
+
+        var expectedPages = new int[]{1, 1, 2, 4, 2, 2, 3, 3, 3, 4, 4, 4, 4, 2, 4};
+        for (var i = 0; i < annotations.size(); i++) {
+            assertSame("Annotation " + i + " differs from the former assignment", expected.get(i).getPage(), annotations.get(i).getPage());
+            assertEquals("Annotation " + i + " is on the wrong page", expectedPages[i], annotations.get(i).getPage().getPageNumber());
+        }
+    }
+
+    public void testUnsortedAnnotations() {
+        var pages = List.of(new Page(0, 10, 1, "p1"), new Page(10, 20, 2, "p2"), new Page(20, 30, 3, "p3"));
+        var annotations = createAnnotations(new int[][]{{25, 28}, {2, 5}, {12, 18}, {5, 25}, {0, 10}});
+        var expected = createAnnotations(annotations);
+
+        assignLikeBefore(pages, expected);
+        new PageAssigner(pages).assign(annotations, NamedEntity::setPage);
+
+        for (var i = 0; i < annotations.size(); i++)
+            assertSame("Annotation " + i + " differs from the former assignment", expected.get(i).getPage(), annotations.get(i).getPage());
+    }
+
+    public void testRandomVolumeMatchesTheFormerAssignment() {
+        var random = new Random(42);
+        var pages = new ArrayList<Page>();
+        var position = 0;
+        for (var i = 0; i < 200; i++) {
+            var begin = i > 0 && random.nextInt(20) == 0 ? Math.max(0, position - random.nextInt(200)) : position;
+            var end = begin + 100 + random.nextInt(400);
+            pages.add(new Page(begin, end, i + 1, "p" + (i + 1)));
+            // Every now and then, a gap between two pages.
+            position = end + (random.nextInt(30) == 0 ? random.nextInt(50) : 0);
+        }
+
+        var annotations = new ArrayList<NamedEntity>();
+        for (var i = 0; i < 20_000; i++) {
+            var begin = random.nextInt(position + 500);
+            var end = switch (random.nextInt(50)) {
+                case 0 -> begin + 200 + random.nextInt(500);
+                case 1 -> Math.max(0, begin - random.nextInt(10));
+                default -> begin + random.nextInt(30);
+            };
+            annotations.add(new NamedEntity(begin, end));
+        }
+        var expected = createAnnotations(annotations);
+
+        assignLikeBefore(pages, expected);
+        new PageAssigner(pages).assign(annotations, NamedEntity::setPage);
+
+        for (var i = 0; i < annotations.size(); i++) {
+            var annotation = annotations.get(i);
+            assertSame("Annotation [" + annotation.getBegin() + ", " + annotation.getEnd() + "] differs from the former assignment",
+                    expected.get(i).getPage(), annotation.getPage());
+        }
+    }
+
+    public void testNothingToAssign() {
+        var annotations = createAnnotations(new int[][]{{0, 10}});
+        new PageAssigner(List.of()).assign(annotations, NamedEntity::setPage);
+        assertNull(annotations.getFirst().getPage());
+
+        new PageAssigner(List.of(new Page(0, 10, 1, "p1"))).assign(new ArrayList<NamedEntity>(), NamedEntity::setPage);
+    }
+
+    private static List<NamedEntity> createAnnotations(int[][] offsets) {
+        var annotations = new ArrayList<NamedEntity>();
+        for (var offset : offsets) annotations.add(new NamedEntity(offset[0], offset[1]));
+        return annotations;
+    }
+
+    private static List<NamedEntity> createAnnotations(List<NamedEntity> copyOf) {
+        var annotations = new ArrayList<NamedEntity>();
+        for (var annotation : copyOf) annotations.add(new NamedEntity(annotation.getBegin(), annotation.getEnd()));
+        return annotations;
+    }
+
+    /**
+     * The assignment as the importer did it before, filtering all annotations once per page.
+     */
+    static void assignLikeBefore(List<Page> pages, List<NamedEntity> annotations) {
+        for (var i = 0; i < pages.size(); i++) {
+            var page = pages.get(i);
+            var isLastPage = i == pages.size() - 1;
+            for (var annotation : annotations.stream().filter(t ->
+                    (t.getBegin() >= page.getBegin() && t.getEnd() <= page.getEnd()) || (t.getPage() == null && isLastPage)).toList()) {
+                annotation.setPage(page);
+            }
+        }
+    }
+}
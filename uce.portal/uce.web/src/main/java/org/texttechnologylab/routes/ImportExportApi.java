@@ -7,6 +7,7 @@ import org.texttechnologylab.Importer;
 import org.texttechnologylab.exceptions.DatabaseOperationException;
 import org.texttechnologylab.exceptions.ExceptionUtils;
 import org.texttechnologylab.services.PostgresqlDataInterface_Impl;
+import org.texttechnologylab.utils.JCasPool;
 import spark.Route;
 
 import java.nio.charset.StandardCharsets;
@@ -16,12 +17,17 @@ public class ImportExportApi {
 
     private PostgresqlDataInterface_Impl db;
     private ApplicationContext serviceContext;
+    private JCasPool jCasPool;
 
     private static final Logger logger = LogManager.getLogger(PostgresqlDataInterface_Impl.class);
 
     public ImportExportApi(ApplicationContext serviceContext) {
         this.serviceContext = serviceContext;
         this.db = serviceContext.getBean(PostgresqlDataInterface_Impl.class);
+        // Uploads share one pool of CASes instead of creating a new one per uploaded file.
+        this.jCasPool = ExceptionUtils.tryCatchLog(
+                () -> new JCasPool(Runtime.getRuntime().availableProcessors()),
+                (ex) -> logger.error("Couldn't create the JCasPool for uploads - each upload will create its own CAS.", ex));
     }
 
     public Route uploadUIMA = ((request, response) -> {
@@ -39,7 +45,7 @@ public class ImportExportApi {
             if (corpus == null)
                 return "Corpus with id " + corpusId + " wasn't found in the database; can't upload document.";
 
-            var importer = new Importer(this.serviceContext);
+            var importer = new Importer(this.serviceContext, this.jCasPool);
             try (var input = request.raw().getPart("file").getInputStream()) {
                 // Import the doc in the background
                 var importFuture = CompletableFuture.runAsync(() -> {